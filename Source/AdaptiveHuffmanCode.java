@@ -0,0 +1,263 @@
+package huffmanencoding;
+
+/**
+ * AdaptiveHuffmanCode encodes and decodes letters in a single pass with no
+ * frequency table, using the FGK algorithm.  The Huffman tree starts with only
+ * the not-yet-transmitted (NYT) node and is updated after every symbol, so that
+ * an encoder and a decoder that have seen the same symbols always hold the same
+ * tree.  The first time a letter is seen it is sent as the code of the NYT node
+ * followed by the letter's index in RAW_BITS bits.
+ *
+ * The code changes as it is used, so one object encodes and a separate object
+ * decodes, and lines must be decoded in the order they were encoded.
+ *
+ * Nodes are kept in arrays indexed by their FGK node number.  Node numbers rise
+ * with weight, the root has the highest number, and the two children of a node
+ * have neighbouring numbers, which is the sibling property that keeps the tree a
+ * Huffman tree.
+ *
+ * @author W. Sam Arrington
+ */
+public final class AdaptiveHuffmanCode implements LineCoder {
+
+    /**
+     * Number of keys, the letters A to Z.
+     */
+    public static final int SYMBOLS = 26;
+
+    /**
+     * Bits used to send the index of a key the first time it is seen.
+     */
+    public static final int RAW_BITS = 5;
+
+    private static final int NODES = 2 * SYMBOLS + 1;
+
+    // Weights are long so a stream of any length never overflows the root
+    private final long[] weight = new long[NODES];
+    private final int[] parent = new int[NODES];
+    private final int[] left = new int[NODES];
+    private final int[] right = new int[NODES];
+
+    // Key index of each leaf, -1 for internal nodes and the NYT node
+    private final int[] symbol = new int[NODES];
+
+    // Leaf of each key index, -1 if the key has not been seen
+    private final int[] leafOf = new int[SYMBOLS];
+
+    private final int root = NODES - 1;
+    private int nyt;
+
+    // Holds the path of one code while it is reversed
+    private final char[] path = new char[NODES];
+
+    /**
+     * Creates an adaptive code that has seen no symbols.
+     */
+    public AdaptiveHuffmanCode(){
+        reset();
+    }
+
+    /**
+     * Forgets every symbol seen, returning the tree to the NYT node alone.
+     */
+    public void reset(){
+
+        for (int n = 0; n < NODES; n++){
+            weight[n] = 0;
+            parent[n] = -1;
+            left[n] = -1;
+            right[n] = -1;
+            symbol[n] = -1;
+        }
+        for (int s = 0; s < SYMBOLS; s++){
+            leafOf[s] = -1;
+        }
+        nyt = root;
+    }
+
+    /**
+     * Takes a plain text and encodes it, updating the code after each letter
+     * @param clearLine String of plain text
+     * @return encoded version of input text
+     */
+    @Override
+    public String encodeLine(String clearLine){
+
+        StringBuilder encodeText = new StringBuilder();
+        for (int i = 0; i < clearLine.length(); i++){
+            char key = clearLine.charAt(i);
+            if (key >= 'a' && key <= 'z'){
+                key -= 'a' - 'A';
+            }else if (key < 'A' || key > 'Z'){
+                continue;
+            }
+
+            int s = key - 'A';
+            if (leafOf[s] >= 0){
+                appendPath(leafOf[s], encodeText);
+            }else{
+                appendPath(nyt, encodeText);
+                for (int b = RAW_BITS - 1; b >= 0; b--){
+                    encodeText.append((char) ('0' + ((s >>> b) & 1)));
+                }
+            }
+            update(s);
+        }
+        return encodeText.toString();
+    }
+
+    /**
+     * Decodes a line of encoded text, updating the code after each letter.
+     * Bits of a code left incomplete at the end of the line are ignored.
+     * @param code encoded text
+     * @return decoded text
+     */
+    @Override
+    public String decodeLine(String code){
+
+        StringBuilder clearText = new StringBuilder();
+        int i = 0;
+        while (i < code.length()){
+
+            // Walks down from the root to a leaf
+            int node = root;
+            while (left[node] >= 0 && i < code.length()){
+                char bit = code.charAt(i++);
+                if (bit == '0'){
+                    node = left[node];
+                }else if (bit == '1'){
+                    node = right[node];
+                }else{
+                    return("Not a valid code.  Only 1s or 0s allowed.");
+                }
+            }
+            if (left[node] >= 0){
+                break;
+            }
+
+            int s = symbol[node];
+            if (node == nyt){
+                if (code.length() - i < RAW_BITS){
+                    break;
+                }
+                s = 0;
+                for (int b = 0; b < RAW_BITS; b++){
+                    char bit = code.charAt(i++);
+                    if (bit != '0' && bit != '1'){
+                        return("Not a valid code.  Only 1s or 0s allowed.");
+                    }
+                    s = (s << 1) | (bit - '0');
+                }
+                if (s >= SYMBOLS || leafOf[s] >= 0){
+                    return("Not a valid code.  Only 1s or 0s allowed.");
+                }
+            }
+            clearText.append((char) ('A' + s));
+            update(s);
+        }
+        return clearText.toString();
+    }
+
+    /**
+     * Makes a list of the current code of each key seen so far, in key order,
+     * in the form 'A = 010'.
+     * @return the list
+     */
+    public String getEncode(){
+
+        String newLine = System.getProperty("line.separator");
+        StringBuilder encode = new StringBuilder();
+        for (int s = 0; s < SYMBOLS; s++){
+            if (leafOf[s] >= 0){
+                encode.append((char) ('A' + s)).append(" = ");
+                appendPath(leafOf[s], encode);
+                encode.append(newLine);
+            }
+        }
+        return encode.toString();
+    }
+
+    /**
+     * Appends the code of a node, the path to it from the root.
+     */
+    private void appendPath(int node, StringBuilder out){
+
+        int length = 0;
+        for (int n = node; n != root; n = parent[n]){
+            path[length++] = left[parent[n]] == n ? '0' : '1';
+        }
+        while (length > 0){
+            out.append(path[--length]);
+        }
+    }
+
+    /**
+     * Counts one more of a key and restores the sibling property.  A new key
+     * splits the NYT node into a new NYT node and a leaf for the key.  Each node
+     * on the way to the root is then swapped with the highest numbered node of
+     * the same weight, unless that is its parent, before its weight goes up.
+     */
+    private void update(int s){
+
+        int node = leafOf[s];
+        if (node < 0){
+            int oldNyt = nyt;
+            nyt = oldNyt - 2;
+            node = oldNyt - 1;
+            left[oldNyt] = nyt;
+            right[oldNyt] = node;
+            parent[nyt] = oldNyt;
+            parent[node] = oldNyt;
+            symbol[node] = s;
+            leafOf[s] = node;
+        }
+
+        while (node >= 0){
+            int leader = node;
+            while (leader < root && weight[leader + 1] == weight[node]){
+                leader++;
+            }
+            if (leader != node && leader != parent[node]){
+                swap(node, leader);
+                node = leader;
+            }
+            weight[node]++;
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Swaps the subtrees at two node numbers of equal weight.  Each number keeps
+     * its place under its parent and the subtrees trade places.
+     */
+    private void swap(int a, int b){
+
+        int temp = left[a];
+        left[a] = left[b];
+        left[b] = temp;
+        temp = right[a];
+        right[a] = right[b];
+        right[b] = temp;
+        temp = symbol[a];
+        symbol[a] = symbol[b];
+        symbol[b] = temp;
+
+        relink(a);
+        relink(b);
+    }
+
+    /**
+     * Points the children, key or NYT marker of a node number back at it.
+     */
+    private void relink(int node){
+
+        if (left[node] >= 0){
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+        }else if (symbol[node] >= 0){
+            leafOf[symbol[node]] = node;
+        }else{
+            nyt = node;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package huffmanencoding;
+
+/**
+ * Alphabet decides which key each byte or character of the input is coded as,
+ * through a lookup table made once, so filtering the input is a single array
+ * load per symbol rather than a regular expression and a case conversion.
+ * LETTERS is the alphabet of the text codes: letters in upper case, every
+ * other character dropped.  BYTES codes every byte value as its own key.
+ *
+ * @author W. Sam Arrington
+ */
+public enum Alphabet {
+
+    /**
+     * Letters A to Z, lowercase letters treated as uppercase, everything else
+     * dropped, the same as HuffmanCode.encodeLine has always done.
+     */
+    LETTERS(false),
+
+    /**
+     * Every byte value 0 to 255 is its own key and nothing is dropped.
+     */
+    BYTES(true);
+
+    // Key of each byte or character value below 256, -1 for ones dropped
+    final int[] keyOf = new int[256];
+
+    Alphabet(boolean allBytes){
+
+        for (int c = 0; c < keyOf.length; c++){
+            if (allBytes || (c >= 'A' && c <= 'Z')){
+                keyOf[c] = c;
+            }else if (c >= 'a' && c <= 'z'){
+                keyOf[c] = c - ('a' - 'A');
+            }else{
+                keyOf[c] = -1;
+            }
+        }
+    }
+
+    /**
+     * @param c a byte value 0 to 255 or a character
+     * @return the key the value is coded as, or -1 if it is dropped
+     */
+    public int key(int c){
+        return c >= 0 && c < keyOf.length ? keyOf[c] : -1;
+    }
+}
@@ -0,0 +1,345 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchCoder encodes or decodes every file of a directory or manifest in one
+ * run, so that many files share one JVM and the codes built for them.  Each
+ * file is coded on its own virtual thread when the JVM has them (Java 21 and
+ * later) and on a fixed pool of threads otherwise, with no more files in
+ * progress at once than the concurrency limit.  Files are encoded as canonical
+ * packed messages with one code per frequency table, and decoded through a
+ * CodecRegistry, so files with the same code share one set of decode tables.
+ *
+ * A file that cannot be coded is reported in the summary and the run goes on
+ * with the other files.
+ *
+ * A manifest is a text file with one input file on each line, and for encoding
+ * optionally a tab and the frequency table for that file.  Relative names are
+ * taken from the manifest's directory, and blank lines and lines starting
+ * with '#' are skipped.  Output files are named after their input file:
+ * encoding adds ".huf" and decoding takes it off, or adds ".txt" if it is not there.
+ * A file under the manifest's directory keeps its path from that directory
+ * under the output directory, so files of the same name in different
+ * directories do not meet.  Files that would still be written to the same
+ * output, such as a file listed twice, are all reported as failed.
+ *
+ * @author W. Sam Arrington
+ */
+public final class BatchCoder {
+
+    /**
+     * Ending given to encoded files.
+     */
+    public static final String ENCODED_SUFFIX = ".huf";
+
+    private final int concurrency;
+    private final CodecRegistry registry = new CodecRegistry(256);
+
+    // Code of each frequency table file read so far
+    private final Map<Path, HuffmanCode> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a batch coder.
+     * @param concurrency most files coded at once
+     */
+    public BatchCoder(int concurrency){
+
+        if (concurrency < 1){
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Encodes every file of a directory or manifest.
+     * @param input directory whose files are encoded, or a manifest
+     * @param table frequency table for files the manifest gives no table for
+     * @param outDir directory the encoded files are written to
+     * @param report receives a line for each file and the totals
+     * @return number of files that could not be encoded
+     * @throws IOException if the input cannot be listed or the output
+     * directory cannot be made
+     */
+    public int encode(Path input, Path table, Path outDir, PrintStream report) throws IOException{
+        return run(listJobs(input, table), outDir, false, report);
+    }
+
+    /**
+     * Decodes every packed file of a directory or manifest.
+     * @param input directory whose files are decoded, or a manifest
+     * @param outDir directory the decoded files are written to
+     * @param report receives a line for each file and the totals
+     * @return number of files that could not be decoded
+     * @throws IOException if the input cannot be listed or the output
+     * directory cannot be made
+     */
+    public int decode(Path input, Path outDir, PrintStream report) throws IOException{
+        return run(listJobs(input, null), outDir, true, report);
+    }
+
+    /**
+     * Codes every file, waits for all of them and prints the summary.
+     */
+    private int run(List<Job> jobs, Path outDir, boolean decode, PrintStream report)
+            throws IOException{
+
+        Files.createDirectories(outDir);
+        Result[] results = new Result[jobs.size()];
+        Semaphore permits = new Semaphore(concurrency);
+        long start = System.nanoTime();
+
+        // Files written to the same output would overwrite each other
+        Path[] outputs = new Path[jobs.size()];
+        Map<Path, Integer> writers = new HashMap<>();
+        for (int i = 0; i < outputs.length; i++){
+            outputs[i] = outputFor(jobs.get(i), outDir, decode);
+            writers.merge(outputs[i].toAbsolutePath().normalize(), 1, Integer::sum);
+        }
+
+        ExecutorService executor = newExecutor(concurrency);
+        try {
+            for (int i = 0; i < results.length; i++){
+                int index = i;
+                if (writers.get(outputs[i].toAbsolutePath().normalize()) > 1){
+                    results[i] = new Result(jobs.get(i).input, outputs[i], 0, 0, 0,
+                            "Another file is written to the same output " + outputs[i]);
+                    continue;
+                }
+                executor.execute(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        results[index] = code(jobs.get(index), outputs[index], decode);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch run was interrupted.");
+        }
+
+        return printSummary(jobs, results, outDir, System.nanoTime() - start, report);
+    }
+
+    /**
+     * Names the output of a file, keeping the directories of its name.
+     */
+    private static Path outputFor(Job job, Path outDir, boolean decode){
+
+        String name = job.name.getFileName().toString();
+        if (!decode){
+            name = name + ENCODED_SUFFIX;
+        }else if (name.endsWith(ENCODED_SUFFIX) && name.length() > ENCODED_SUFFIX.length()){
+            name = name.substring(0, name.length() - ENCODED_SUFFIX.length());
+        }else{
+            name = name + ".txt";
+        }
+        Path parent = job.name.getParent();
+        return (parent == null ? outDir : outDir.resolve(parent)).resolve(name);
+    }
+
+    /**
+     * Codes one file, catching anything that goes wrong.
+     */
+    private Result code(Job job, Path output, boolean decode){
+
+        long start = System.nanoTime();
+        try {
+            long bytesIn = Files.size(job.input);
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            if (decode){
+                String clearText;
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(job.input))){
+                    clearText = PackedCode.decode(in, registry);
+                }
+                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output))){
+                    out.println(clearText);
+                }
+            }else{
+                HuffmanCode code = codeFor(job.table);
+                String clearText = new String(Files.readAllBytes(job.input));
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))){
+                    PackedCode.encodeCanonical(code, clearText, out);
+                }
+            }
+            return new Result(job.input, output, bytesIn, Files.size(output),
+                    System.nanoTime() - start, null);
+        } catch (NoSuchFileException e){
+            return new Result(job.input, output, 0, 0, System.nanoTime() - start,
+                    "File not found: " + e.getFile());
+        } catch (IOException | RuntimeException e){
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            return new Result(job.input, output, 0, 0, System.nanoTime() - start, message);
+        }
+    }
+
+    /**
+     * Returns the code for a frequency table file, reading each file once.
+     */
+    private HuffmanCode codeFor(Path table) throws IOException{
+
+        if (table == null){
+            throw new IOException("No frequency table given for the file.");
+        }
+        Path key = table.toAbsolutePath().normalize();
+        HuffmanCode code = tables.get(key);
+        if (code == null){
+            // Tables with the same frequencies share one code through the registry
+            code = registry.get(HuffmanQueue.read(key.toString()));
+            HuffmanCode raced = tables.putIfAbsent(key, code);
+            if (raced != null){
+                code = raced;
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Prints a line for each file and the totals.
+     * @return number of files that failed
+     */
+    private static int printSummary(List<Job> jobs, Result[] results, Path outDir,
+            long elapsed, PrintStream report){
+
+        int failed = 0;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        for (int i = 0; i < results.length; i++){
+            Result result = results[i];
+            if (result == null){
+                // The task ended with an Error, which its thread has printed
+                failed++;
+                report.println("FAILED " + jobs.get(i).input + ": not coded");
+                continue;
+            }
+            if (result.error != null){
+                failed++;
+                report.println("FAILED " + result.input + ": " + result.error);
+                continue;
+            }
+            bytesIn += result.bytesIn;
+            bytesOut += result.bytesOut;
+            report.println(String.format("ok     %s -> %s  %d -> %d bytes  %.1f ms",
+                    result.input, outDir.relativize(result.output), result.bytesIn,
+                    result.bytesOut, result.nanos / 1e6));
+        }
+        report.println(String.format("%d files, %d ok, %d failed, %d -> %d bytes, %.1f ms",
+                results.length, results.length - failed, failed, bytesIn, bytesOut,
+                elapsed / 1e6));
+        return failed;
+    }
+
+    /**
+     * Lists the files of a directory in name order, or the lines of a manifest.
+     */
+    private static List<Job> listJobs(Path input, Path table) throws IOException{
+
+        List<Job> jobs = new ArrayList<>();
+        if (Files.isDirectory(input)){
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(input)){
+                for (Path file : dir){
+                    if (Files.isRegularFile(file)){
+                        files.add(file);
+                    }
+                }
+            }
+            Collections.sort(files);
+            for (Path file : files){
+                jobs.add(new Job(file, table, file.getFileName()));
+            }
+            return jobs;
+        }
+
+        Path base = input.toAbsolutePath().normalize().getParent();
+        for (String line : Files.readAllLines(input)){
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            Path file = base.resolve(tab < 0 ? line : line.substring(0, tab).trim()).normalize();
+            Path fileTable = tab < 0 ? table : base.resolve(line.substring(tab + 1).trim());
+            // Files outside the manifest's directory are named by their file name alone
+            Path name = file.startsWith(base) && !file.equals(base) ? base.relativize(file)
+                    : file.getFileName();
+            jobs.add(new Job(file, fileTable, name));
+        }
+        return jobs;
+    }
+
+    /**
+     * Makes an executor that starts a virtual thread for each task, or a
+     * fixed pool of threads on JVMs without virtual threads.
+     */
+    private static ExecutorService newExecutor(int concurrency){
+
+        try {
+            Method perTask = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) perTask.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e){
+            // Before Java 21, or a preview that is not turned on
+            return Executors.newFixedThreadPool(concurrency);
+        }
+    }
+
+    /**
+     * A file to code, its frequency table and the name its output is made from.
+     */
+    private static final class Job {
+
+        final Path input;
+        final Path table;
+        final Path name;
+
+        Job(Path input, Path table, Path name){
+            this.input = input;
+            this.table = table;
+            this.name = name;
+        }
+    }
+
+    /**
+     * What happened to one file, error being null if it was coded.
+     */
+    private static final class Result {
+
+        final Path input;
+        final Path output;
+        final long bytesIn;
+        final long bytesOut;
+        final long nanos;
+        final String error;
+
+        Result(Path input, Path output, long bytesIn, long bytesOut, long nanos, String error){
+            this.input = input;
+            this.output = output;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.nanos = nanos;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package huffmanencoding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * BitReader reads packed bits, most significant bit first, from a byte array
+ * or ByteBuffer.  The next bits are held at the top of a 64-bit register that
+ * is refilled with a single ByteBuffer.getLong from the byte holding the next
+ * bit, so peeking at a code is a compare and a shift, and the register is
+ * refilled at most once every 57 bits.  Only the last seven bytes of the data
+ * are read one at a time.
+ *
+ * Reading does not move the position of the buffer, and a reader can seek to
+ * any bit, so several readers can decode parts of the same data at once.
+ *
+ * @author W. Sam Arrington
+ */
+public final class BitReader {
+
+    /**
+     * Most bits that can be peeked at once.
+     */
+    public static final int MAX_PEEK_BITS = 57;
+
+    private ByteBuffer data;
+    private int start;
+    private int end;
+    private long limit;
+
+    // Bit position of the top of the window
+    private long position;
+
+    // Valid bits at the top of window, negative after consuming past them
+    private long window;
+    private int available;
+
+    /**
+     * Creates a reader of every bit of a byte array.
+     * @param bytes packed bits
+     */
+    public BitReader(byte[] bytes){
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a reader of the bits from the position to the limit of a buffer.
+     * The buffer is not changed.
+     * @param buffer packed bits
+     */
+    public BitReader(ByteBuffer buffer){
+        reset(buffer);
+    }
+
+    /**
+     * Starts reading other data, the bits from the position to the limit of a
+     * buffer, so that one reader can be used for many buffers.  A big endian
+     * buffer is read in place without making anything, and the buffer is not
+     * changed.
+     * @param buffer packed bits
+     */
+    public void reset(ByteBuffer buffer){
+
+        data = buffer.order() == ByteOrder.BIG_ENDIAN ? buffer
+                : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        start = buffer.position();
+        end = buffer.limit();
+        limit = (long) (end - start) * 8;
+        position = 0;
+        window = 0;
+        available = 0;
+    }
+
+    /**
+     * Returns the next bits without consuming them.  Bits past the end of the
+     * data read as 0s.
+     * @param bits number of bits, 1 to MAX_PEEK_BITS
+     * @return the bits, right aligned
+     */
+    public long peek(int bits){
+
+        if (available < bits){
+            refill();
+        }
+        return window >>> (64 - bits);
+    }
+
+    /**
+     * Skips over bits, usually ones just peeked at.
+     * @param bits number of bits, 0 to 63
+     */
+    public void consume(int bits){
+
+        window <<= bits;
+        available -= bits;
+        position += bits;
+    }
+
+    /**
+     * Reads the next bits.
+     * @param bits number of bits, 1 to MAX_PEEK_BITS
+     * @return the bits, right aligned
+     */
+    public long read(int bits){
+
+        long value = peek(bits);
+        consume(bits);
+        return value;
+    }
+
+    /**
+     * @return position of the next bit to read, counted from the first bit
+     */
+    public long position(){
+        return position;
+    }
+
+    /**
+     * Moves to a bit.
+     * @param bit position of the next bit to read, counted from the first bit
+     */
+    public void seek(long bit){
+
+        if (bit < 0){
+            throw new IllegalArgumentException("Bit position is negative.");
+        }
+        position = bit;
+        available = 0;
+    }
+
+    /**
+     * @return position after the last bit that holds data
+     */
+    public long limit(){
+        return limit;
+    }
+
+    /**
+     * Marks the end of the data, such as before the padding of the last byte.
+     * Bits past the limit can still be peeked at, but remaining counts only
+     * the bits before it.
+     * @param bit position after the last bit that holds data
+     */
+    public void limit(long bit){
+
+        if (bit < 0 || bit > (long) (end - start) * 8){
+            throw new IllegalArgumentException("Bit limit is outside the data.");
+        }
+        limit = bit;
+    }
+
+    /**
+     * @return number of bits before the limit not read yet
+     */
+    public long remaining(){
+        return limit - position;
+    }
+
+    /**
+     * Loads the 64 bits starting at the byte that holds the next bit and shifts
+     * out the bits of that byte already read.
+     */
+    private void refill(){
+
+        long index = start + (position >>> 3);
+        int skip = (int) position & 7;
+        long word;
+        if (index + 8 <= end){
+            word = data.getLong((int) index);
+        }else{
+            // Gathers the last bytes one at a time, with 0s after them
+            word = 0;
+            for (int i = 0; i < 8 && index + i < end; i++){
+                word |= (long) (data.get((int) index + i) & 0xFF) << (56 - 8 * i);
+            }
+        }
+        window = word << skip;
+        available = 64 - skip;
+    }
+}
@@ -0,0 +1,194 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * BitWriter packs codes into bytes, most significant bit first.  Bits are
+ * gathered at the top of a 64-bit register and stored a whole word at a time
+ * with ByteBuffer.putLong, so writing a code is a shift, an OR and a compare,
+ * and a store every 64 bits.  Codes of any length up to 64 bits are written
+ * in one call.
+ *
+ * A writer either owns a heap buffer that grows as needed, or writes into a
+ * buffer given by the caller, such as a direct buffer that is drained to a
+ * channel.  A given buffer is never grown, so the caller must keep at least 8
+ * bytes free in it before each write, and a write with less room throws
+ * BufferOverflowException.
+ *
+ * @author W. Sam Arrington
+ */
+public final class BitWriter {
+
+    private ByteBuffer out;
+    private final boolean growable;
+    private int start;
+
+    // Pending bits at the top of acc, free is the number of unused bits below them
+    private long acc;
+    private int free = 64;
+
+    /**
+     * Creates a writer with its own buffer.
+     * @param initialCapacity bytes the buffer starts with
+     */
+    public BitWriter(int initialCapacity){
+
+        out = ByteBuffer.allocate(Math.max(initialCapacity, 8));
+        growable = true;
+        start = 0;
+    }
+
+    /**
+     * Creates a writer that stores bytes into a buffer from its position on,
+     * moving the position as whole words are stored.  The buffer is set to big
+     * endian order.
+     * @param buffer the buffer written to
+     */
+    public BitWriter(ByteBuffer buffer){
+
+        out = buffer.order(ByteOrder.BIG_ENDIAN);
+        growable = false;
+        start = buffer.position();
+    }
+
+    /**
+     * Starts writing into another buffer from its position on, dropping any
+     * pending bits, so that one writer can be used for many buffers.  The
+     * buffer is set to big endian order.
+     * @param buffer the buffer written to
+     * @throws IllegalStateException if the writer owns its buffer
+     */
+    public void reset(ByteBuffer buffer){
+
+        if (growable){
+            throw new IllegalStateException("Writer owns its buffer.");
+        }
+        out = buffer.order(ByteOrder.BIG_ENDIAN);
+        start = buffer.position();
+        acc = 0;
+        free = 64;
+    }
+
+    /**
+     * Writes the low bits of a value.
+     * @param bits the bits, right aligned with every bit above them 0
+     * @param length number of bits to write, 0 to 64
+     */
+    public void write(long bits, int length){
+
+        if (length <= free){
+            free -= length;
+            acc |= bits << free;
+            if (free == 0){
+                putWord(acc);
+                acc = 0;
+                free = 64;
+            }
+        }else{
+            // The bits straddle two words
+            int rest = length - free;
+            putWord(acc | (bits >>> rest));
+            free = 64 - rest;
+            acc = bits << free;
+        }
+    }
+
+    /**
+     * Stores the whole bytes among the pending bits, leaving fewer than 8 bits
+     * pending.
+     */
+    public void flushBytes(){
+
+        int bytes = (64 - free) >>> 3;
+        ensure(bytes);
+        for (int i = 0; i < bytes; i++){
+            out.put((byte) (acc >>> (56 - 8 * i)));
+        }
+        acc <<= bytes * 8;
+        free += bytes * 8;
+    }
+
+    /**
+     * Stores every pending bit, padding the last byte with 0s.  The next bit
+     * written starts a new byte.
+     * @return number of padding bits in the last byte, 0 to 7
+     */
+    public int finish(){
+
+        int used = 64 - free;
+        int bytes = (used + 7) >>> 3;
+        ensure(bytes);
+        for (int i = 0; i < bytes; i++){
+            out.put((byte) (acc >>> (56 - 8 * i)));
+        }
+        acc = 0;
+        free = 64;
+        return bytes * 8 - used;
+    }
+
+    /**
+     * @return number of bits written since the writer was made
+     */
+    public long bitCount(){
+        return (long) (out.position() - start) * 8 + 64 - free;
+    }
+
+    /**
+     * @return number of whole bytes stored since the writer was made, not
+     * counting pending bits
+     */
+    public int size(){
+        return out.position() - start;
+    }
+
+    /**
+     * Copies the bytes stored so far.
+     * @return the bytes
+     */
+    public byte[] toByteArray(){
+
+        ByteBuffer stored = out.duplicate();
+        stored.flip();
+        stored.position(start);
+        byte[] bytes = new byte[stored.remaining()];
+        stored.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the bytes stored so far to a stream.
+     * @param stream stream the bytes are written to
+     * @throws IOException
+     */
+    public void writeTo(OutputStream stream) throws IOException{
+
+        if (out.hasArray()){
+            stream.write(out.array(), out.arrayOffset() + start, size());
+        }else{
+            stream.write(toByteArray());
+        }
+    }
+
+    private void putWord(long word){
+
+        ensure(8);
+        out.putLong(word);
+    }
+
+    /**
+     * Grows an owned buffer so that it has room for a number of bytes.
+     */
+    private void ensure(int bytes){
+
+        if (growable && out.remaining() < bytes){
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2,
+                    out.position() + bytes));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+    }
+}
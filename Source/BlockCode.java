@@ -0,0 +1,325 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * BlockCode encodes bytes a block at a time and decides for each block, from
+ * its histogram alone, the cheapest of three ways to send it: with the code
+ * of the block before, with a new code whose lengths go in the header, or
+ * stored raw as one byte per symbol.  CostEstimator gives the exact size of
+ * each choice without encoding the block, and the Huffman tree for a new code
+ * is only built when the entropy of the block says a new code could beat both
+ * the raw block and the code already sent, so blocks that do not compress,
+ * and blocks whose statistics have not changed, cost no tree at all.  Only
+ * the code lengths of a new code are worked out until it is chosen.
+ *
+ * Input bytes are filtered by an Alphabet, and the key of each byte is what
+ * is coded and what decoding gives back.
+ *
+ * The block code message is laid out as:
+ *
+ * 'HUFD' magic number
+ * int number of blocks
+ * for each block:
+ * byte how the block is sent, 0 raw, 1 with a new code or 2 with the code of
+ * the last block sent with a new code
+ * int number of symbols in the block
+ * for raw blocks the symbols, a byte each
+ * for a new code its code lengths as written by CanonicalCode.writeLengths
+ * for coded blocks a byte number of padding bits at the end of the last data
+ * byte, then an int number of data bytes and the data bytes
+ *
+ * @author W. Sam Arrington
+ */
+public final class BlockCode {
+
+    /**
+     * First four bytes of a block code message.
+     */
+    public static final int BLOCK_CODE_MAGIC = 0x48554644;
+
+    /**
+     * Default number of input bytes in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    // Bytes a coded block writes besides its data: the padding and the data length
+    private static final int CODED_FRAMING = 5;
+
+    /**
+     * How a block is sent.
+     */
+    public enum Choice {
+
+        /**
+         * The symbols are stored as they are, a byte each.
+         */
+        RAW,
+
+        /**
+         * A code is built for the block and its code lengths are sent.
+         */
+        NEW_TABLE,
+
+        /**
+         * The block is encoded with the last code sent.
+         */
+        REUSE
+    }
+
+    private final Alphabet alphabet;
+    private final int blockSize;
+    private final Histogram histogram;
+
+    // Number of blocks of the last message given each choice
+    private final int[] choices = new int[Choice.values().length];
+
+    /**
+     * Creates a block coder.
+     * @param alphabet decides which key each input byte is coded as
+     * @param blockSize number of input bytes in a block
+     * @throws IllegalArgumentException if the block size is less than 1
+     */
+    public BlockCode(Alphabet alphabet, int blockSize){
+
+        if (blockSize < 1){
+            throw new IllegalArgumentException("Block size must be at least 1.");
+        }
+        this.alphabet = alphabet;
+        this.blockSize = blockSize;
+        histogram = new Histogram(alphabet, blockSize, 1);
+    }
+
+    /**
+     * Encodes part of a byte array into a block code message.
+     * @param data the input bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return the block code message
+     */
+    public byte[] encode(byte[] data, int offset, int length){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+        try {
+            encode(data, offset, length, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes part of a byte array and writes the block code message to a stream.
+     * @param data the input bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @param out stream the block code message is written to
+     * @throws IOException
+     */
+    public void encode(byte[] data, int offset, int length, OutputStream out) throws IOException{
+
+        if (offset < 0 || length < 0 || offset + length > data.length){
+            throw new IndexOutOfBoundsException();
+        }
+        Arrays.fill(choices, 0);
+        int blockCount = (int) (((long) length + blockSize - 1) / blockSize);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(BLOCK_CODE_MAGIC);
+        dataOut.writeInt(blockCount);
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        long symbolTotal = 0;
+        long bitTotal = 0;
+        int[] keyOf = alphabet.keyOf;
+
+        // Lengths and bits of the last code sent, the encoder never decodes
+        byte[] previousLengths = null;
+        long[] previousBits = null;
+        byte[] keys = new byte[Math.min(blockSize, length)];
+        for (int b = 0; b < blockCount; b++){
+            int from = offset + b * blockSize;
+            int to = (int) Math.min((long) from + blockSize, offset + length);
+
+            long[] counts = histogram.count(data, from, to - from);
+            int symbols = 0;
+            for (int i = from; i < to; i++){
+                int key = keyOf[data[i] & 0xFF];
+                if (key >= 0){
+                    keys[symbols++] = (byte) key;
+                }
+            }
+
+            // Sizes in bits of sending the block raw and with the last code,
+            // a coded block adding its framing and the padding of its last byte
+            long rawBits = 8L * symbols;
+            long reuseBits = previousLengths == null ? -1
+                    : codedBlockBits(CostEstimator.codedBits(counts, previousLengths));
+            long best = reuseBits >= 0 ? Math.min(rawBits, reuseBits) : rawBits;
+
+            // A new code is built only if the entropy and the smallest table it
+            // could have say it might be cheaper
+            byte[] newLengths = null;
+            long newBits = -1;
+            if (symbols > 0 && CostEstimator.entropyBits(counts)
+                    + 8L * (CostEstimator.minTableBytes(counts) + CODED_FRAMING) < best){
+                newLengths = HuffmanCode.codeLengths(counts);
+                newBits = codedBlockBits(CostEstimator.codedBits(counts, newLengths))
+                        + 8L * CostEstimator.tableBytes(newLengths);
+            }
+
+            Choice choice;
+            if (newBits >= 0 && newBits < best){
+                choice = Choice.NEW_TABLE;
+                previousLengths = newLengths;
+                previousBits = CanonicalCode.assignCodes(newLengths);
+            }else if (reuseBits >= 0 && reuseBits < rawBits){
+                choice = Choice.REUSE;
+            }else{
+                choice = Choice.RAW;
+            }
+            choices[choice.ordinal()]++;
+
+            dataOut.writeByte(choice.ordinal());
+            dataOut.writeInt(symbols);
+            if (choice == Choice.RAW){
+                dataOut.write(keys, 0, symbols);
+                bitTotal += rawBits;
+            }else{
+                if (choice == Choice.NEW_TABLE){
+                    CanonicalCode.writeLengths(previousLengths, dataOut);
+                }
+                BitWriter bits = new BitWriter(symbols / 2 + 8);
+                long[] codeBits = previousBits;
+                byte[] codeLength = previousLengths;
+                for (int i = 0; i < symbols; i++){
+                    int key = keys[i] & 0xFF;
+                    bits.write(codeBits[key], codeLength[key]);
+                }
+                bitTotal += bits.bitCount();
+                dataOut.writeByte(bits.finish());
+                dataOut.writeInt(bits.size());
+                bits.writeTo(dataOut);
+            }
+            symbolTotal += symbols;
+        }
+        CodecMetrics.recordEncode("blockcode", symbolTotal, bitTotal, start, event);
+        dataOut.flush();
+    }
+
+    /**
+     * Finds the size of a coded block from the size of its data.
+     * @param dataBits number of data bits, or -1 if the block cannot be coded
+     * @return bits of the framing and the data padded to whole bytes, or -1
+     */
+    private static long codedBlockBits(long dataBits){
+        return dataBits < 0 ? -1 : 8 * (CODED_FRAMING + (dataBits + 7) / 8);
+    }
+
+    /**
+     * @param choice a way to send a block
+     * @return number of blocks of the last message encoded that were sent that way
+     */
+    public int blocks(Choice choice){
+        return choices[choice.ordinal()];
+    }
+
+    /**
+     * Decodes a block code message.
+     * @param message the block code message
+     * @return the keys of the input bytes
+     * @throws IOException if the array does not hold a valid block code message
+     */
+    public static byte[] decode(byte[] message) throws IOException{
+        return decode(new ByteArrayInputStream(message));
+    }
+
+    /**
+     * Reads a block code message from a stream and decodes it.
+     * @param in stream containing the block code message
+     * @return the keys of the input bytes
+     * @throws IOException if the stream does not hold a valid block code message
+     */
+    public static byte[] decode(InputStream in) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != BLOCK_CODE_MAGIC){
+            throw new IOException("Not a Huffman block code message.");
+        }
+        return decodeMessage(dataIn);
+    }
+
+    /**
+     * Decodes a block code message whose magic number has already been read.
+     * @param in stream positioned after the magic number
+     * @return the keys of the input bytes
+     * @throws IOException if the stream does not hold a valid block code message
+     */
+    static byte[] decodeMessage(DataInputStream in) throws IOException{
+
+        int blockCount = in.readInt();
+        if (blockCount < 0){
+            throw new IOException("Block code message header is corrupt.");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HuffmanCode code = null;
+        int[] chunk = new int[4096];
+        byte[] chunkBytes = new byte[chunk.length];
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        long bitTotal = 0;
+        for (int b = 0; b < blockCount; b++){
+            int kind = in.readUnsignedByte();
+            int symbols = in.readInt();
+            if (kind >= Choice.values().length || symbols < 0){
+                throw new IOException("Block code message header is corrupt.");
+            }
+            if (kind == Choice.RAW.ordinal()){
+                out.write(PackedCode.readData(in, symbols));
+                bitTotal += 8L * symbols;
+                continue;
+            }
+            if (kind == Choice.NEW_TABLE.ordinal()){
+                byte[] codeLength = CanonicalCode.readLengths(in);
+                if (codeLength.length > 256){
+                    throw new IOException("Block code message header is corrupt.");
+                }
+                code = HuffmanCode.fromCodeLengths(codeLength);
+            }else if (code == null){
+                throw new IOException("Block " + b + " reuses a code that was never sent.");
+            }
+            int padding = in.readUnsignedByte();
+            int dataLength = in.readInt();
+            if (padding > 7 || dataLength < 0 || dataLength > Integer.MAX_VALUE / 8
+                    || (dataLength == 0 && padding != 0)){
+                throw new IOException("Block code message header is corrupt.");
+            }
+            BitReader data = new BitReader(PackedCode.readData(in, dataLength));
+            long dataBits = dataLength * 8L - padding;
+            int count = 0;
+            while (count < symbols){
+                int n = code.tableDecoder.decode(data, dataBits, chunk, 0,
+                        Math.min(chunk.length, symbols - count));
+                if (n == 0){
+                    break;
+                }
+                for (int i = 0; i < n; i++){
+                    chunkBytes[i] = (byte) chunk[i];
+                }
+                out.write(chunkBytes, 0, n);
+                count += n;
+            }
+            if (count != symbols || data.position() != dataBits){
+                throw new IOException("Block " + b + " decoded to " + count + " symbols in "
+                        + data.position() + " bits, expected " + symbols + " symbols in "
+                        + dataBits + " bits.");
+            }
+            bitTotal += dataBits;
+        }
+        byte[] keys = out.toByteArray();
+        CodecMetrics.recordDecode("blockcode", bitTotal, keys.length, start, event);
+        return keys;
+    }
+}
@@ -0,0 +1,235 @@
+package huffmanencoding;
+
+import java.nio.ByteBuffer;
+
+/**
+ * BufferCodec encodes bytes from a caller's array or ByteBuffer straight into
+ * another caller's array or ByteBuffer, and decodes them back the same way.
+ * Input bytes are filtered by an Alphabet lookup table, and the codec keeps
+ * one BitWriter, one BitReader and a small buffer of decoded symbols that are
+ * used for every call, so once made it allocates nothing while coding.  The
+ * arrays of the last source and destination are wrapped once and the wrappers
+ * kept, so a caller that codes through the same arrays again and again makes
+ * no garbage at all, as BufferCodecBenchmark shows with -prof gc.
+ *
+ * The output is the bare bitstream, most significant bit first with the last
+ * byte padded with 0s, and the caller keeps the number of bits and symbols.
+ * A codec is not thread safe, a thread that codes uses its own.
+ *
+ * @author W. Sam Arrington
+ */
+public final class BufferCodec {
+
+    // Symbols decoded at a time before they are stored as bytes
+    private static final int DECODE_CHUNK = 1024;
+
+    private final long[] codeBits;
+    private final byte[] codeLength;
+    private final int maxLength;
+    private final int[] keyOf;
+    private final TableDecoder decoder;
+
+    private final BitWriter writer = new BitWriter(ByteBuffer.allocate(0));
+    private final BitReader reader = new BitReader(ByteBuffer.allocate(0));
+    private final int[] chunk = new int[DECODE_CHUNK];
+
+    // Wrappers of the last arrays coded from and into
+    private byte[] srcArray;
+    private ByteBuffer srcWrapper;
+    private byte[] dstArray;
+    private ByteBuffer dstWrapper;
+
+    /**
+     * Creates a codec for a code.
+     * @param code HuffmanCode used to encode and decode, whose keys are bytes
+     * @param alphabet decides which key each input byte is encoded as
+     * @throws IllegalArgumentException if a key of the code is past 255
+     */
+    public BufferCodec(HuffmanCode code, Alphabet alphabet){
+
+        if (code.codeLength.length > 256){
+            throw new IllegalArgumentException("A buffer codec needs a code whose keys are bytes.");
+        }
+        codeBits = code.codeBits;
+        codeLength = code.codeLength;
+        maxLength = LengthLimitedCode.maxCodeLength(codeLength);
+        keyOf = alphabet.keyOf;
+        decoder = code.tableDecoder;
+    }
+
+    /**
+     * Finds the most bytes a number of input bytes can encode to.
+     * @param length number of input bytes
+     * @return size of a destination that always holds their encoding
+     */
+    public long maxEncodedBytes(int length){
+        return ((long) length * maxLength + 7) / 8;
+    }
+
+    /**
+     * Encodes part of a byte array into another.
+     * @param src the input bytes
+     * @param srcOffset index of the first input byte
+     * @param srcLength number of input bytes
+     * @param dst receives the encoded bits
+     * @param dstOffset index in dst of the first encoded byte
+     * @return number of bits written, which take (bits + 7) / 8 bytes
+     * @throws IllegalArgumentException if an input byte is not in the code
+     * @throws java.nio.BufferOverflowException if dst is too small
+     */
+    public long encode(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset){
+
+        if (srcOffset < 0 || srcLength < 0 || srcOffset + srcLength > src.length){
+            throw new IndexOutOfBoundsException();
+        }
+        ByteBuffer out = wrapDst(dst);
+        out.limit(dst.length).position(dstOffset);
+        writer.reset(out);
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        int symbols = 0;
+        for (int i = srcOffset; i < srcOffset + srcLength; i++){
+            int key = keyOf[src[i] & 0xFF];
+            if (key >= 0){
+                write(key);
+                symbols++;
+            }
+        }
+        return finishEncode(symbols, start, event);
+    }
+
+    /**
+     * Encodes the bytes from the position to the limit of a buffer into
+     * another buffer.  The source position moves to its limit and the
+     * destination position moves past the last encoded byte.
+     * @param src the input bytes
+     * @param dst receives the encoded bits
+     * @return number of bits written, which take (bits + 7) / 8 bytes
+     * @throws IllegalArgumentException if an input byte is not in the code
+     * @throws java.nio.BufferOverflowException if dst is too small
+     */
+    public long encode(ByteBuffer src, ByteBuffer dst){
+
+        writer.reset(dst);
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        int symbols = 0;
+        while (src.hasRemaining()){
+            int key = keyOf[src.get() & 0xFF];
+            if (key >= 0){
+                write(key);
+                symbols++;
+            }
+        }
+        return finishEncode(symbols, start, event);
+    }
+
+    /**
+     * Decodes bits of a byte array into another.
+     * @param src the encoded bits
+     * @param srcOffset index of the first encoded byte
+     * @param bits number of encoded bits
+     * @param dst receives the decoded bytes
+     * @param dstOffset index in dst of the first decoded byte
+     * @param maxSymbols most bytes to decode
+     * @return number of bytes decoded, fewer than maxSymbols if the bits run out
+     */
+    public int decode(byte[] src, int srcOffset, long bits, byte[] dst, int dstOffset,
+            int maxSymbols){
+
+        if (srcOffset < 0 || bits < 0 || srcOffset + (bits + 7) / 8 > src.length
+                || dstOffset < 0 || maxSymbols < 0 || dstOffset + maxSymbols > dst.length){
+            throw new IndexOutOfBoundsException();
+        }
+        ByteBuffer in = wrapSrc(src);
+        in.limit(srcOffset + (int) ((bits + 7) / 8)).position(srcOffset);
+        reader.reset(in);
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        int count = 0;
+        while (count < maxSymbols){
+            int n = decoder.decode(reader, bits, chunk, 0,
+                    Math.min(chunk.length, maxSymbols - count));
+            if (n == 0){
+                break;
+            }
+            for (int i = 0; i < n; i++){
+                dst[dstOffset + count++] = (byte) chunk[i];
+            }
+        }
+        CodecMetrics.recordDecode("buffer", reader.position(), count, start, event);
+        return count;
+    }
+
+    /**
+     * Decodes bits from the position of a buffer into another buffer, until
+     * the bits run out or the destination is full.  The source position is not
+     * moved, the destination position moves past the last decoded byte.
+     * @param src the encoded bits from its position to its limit
+     * @param bits number of encoded bits
+     * @param dst receives the decoded bytes
+     * @return number of bytes decoded
+     */
+    public int decode(ByteBuffer src, long bits, ByteBuffer dst){
+
+        if (bits < 0 || (bits + 7) / 8 > src.remaining()){
+            throw new IndexOutOfBoundsException();
+        }
+        reader.reset(src);
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        int count = 0;
+        while (dst.hasRemaining()){
+            int n = decoder.decode(reader, bits, chunk, 0,
+                    Math.min(chunk.length, dst.remaining()));
+            if (n == 0){
+                break;
+            }
+            for (int i = 0; i < n; i++){
+                dst.put((byte) chunk[i]);
+            }
+            count += n;
+        }
+        CodecMetrics.recordDecode("buffer", reader.position(), count, start, event);
+        return count;
+    }
+
+    private void write(int key){
+
+        int length = key < codeLength.length ? codeLength[key] : 0;
+        if (length == 0){
+            throw new IllegalArgumentException("Key " + HuffmanCode.keyName(key)
+                    + " is not in the code.");
+        }
+        writer.write(codeBits[key], length);
+    }
+
+    private long finishEncode(int symbols, long start, Object event){
+
+        long bits = writer.bitCount();
+        writer.finish();
+        CodecMetrics.recordEncode("buffer", symbols, bits, start, event);
+        return bits;
+    }
+
+    private ByteBuffer wrapSrc(byte[] array){
+
+        if (array != srcArray){
+            srcArray = array;
+            srcWrapper = ByteBuffer.wrap(array);
+        }
+        return srcWrapper;
+    }
+
+    private ByteBuffer wrapDst(byte[] array){
+
+        if (array != dstArray){
+            dstArray = array;
+            dstWrapper = ByteBuffer.wrap(array);
+        }
+        return dstWrapper;
+    }
+}
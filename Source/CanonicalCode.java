@@ -0,0 +1,196 @@
+package huffmanencoding;
+
+import java.io.*;
+
+/**
+ * CanonicalCode assigns canonical Huffman codes from code lengths alone.  Keys
+ * are given codes in order of code length and then key, each code being the
+ * previous one plus one, shifted left when the length grows.  Since the lengths
+ * fix every code, a code can be sent as a compact header of lengths:
+ *
+ * char first key of the range of keys
+ * char last key of the range of keys
+ * byte longest code length
+ * the length of every key in the range, two to a byte if the longest length
+ * is 15 or less and one to a byte otherwise, 0 for keys not in the code
+ *
+ * Keys past 65535, such as the ids of a large token alphabet, do not fit in a
+ * char.  For them the range is written as the chars 0xFFFF and 0, which no
+ * other header has as its last key comes before its first, followed by the
+ * first and last keys as ints.
+ *
+ * @author W. Sam Arrington
+ */
+public final class CanonicalCode {
+
+    /**
+     * Largest key a code length header may hold.
+     */
+    public static final int MAX_KEY = (1 << 24) - 1;
+
+    // First and last key written in place of the range of a wide header
+    private static final int WIDE_FIRST = 0xFFFF;
+    private static final int WIDE_LAST = 0;
+
+    private CanonicalCode(){
+    }
+
+    /**
+     * Assigns canonical codes to keys from the lengths of their codes.
+     * @param codeLength length of the code of each key indexed by key, 0 if the
+     * key is not in the code
+     * @return code of each key indexed by key, right aligned
+     * @throws IllegalArgumentException if the lengths do not make a complete code
+     */
+    public static long[] assignCodes(byte[] codeLength){
+
+        int[] count = checkLengths(codeLength);
+
+        // First code of each length
+        long[] nextCode = new long[HuffmanCode.MAX_CODE_LENGTH + 1];
+        long code = 0;
+        for (int length = 1; length <= HuffmanCode.MAX_CODE_LENGTH; length++){
+            code = (code + count[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+
+        long[] codeBits = new long[codeLength.length];
+        for (int key = 0; key < codeLength.length; key++){
+            if (codeLength[key] > 0){
+                codeBits[key] = nextCode[codeLength[key]]++;
+            }
+        }
+        return codeBits;
+    }
+
+    /**
+     * Checks that code lengths make a complete prefix code, one where every
+     * string of bits starts with a code.
+     * @param codeLength length of the code of each key indexed by key
+     * @return number of keys with each code length
+     * @throws IllegalArgumentException if the lengths do not make a complete code
+     */
+    static int[] checkLengths(byte[] codeLength){
+
+        int[] count = new int[HuffmanCode.MAX_CODE_LENGTH + 1];
+        int keys = 0;
+        for (byte length : codeLength){
+            if (length < 0 || length > HuffmanCode.MAX_CODE_LENGTH){
+                throw new IllegalArgumentException("Code length " + length + " is not valid.");
+            }
+            if (length > 0){
+                count[length]++;
+                keys++;
+            }
+        }
+        if (keys < 2){
+            throw new IllegalArgumentException("A code needs at least two keys.");
+        }
+
+        // Counts the codes left unused at each length
+        long left = 1;
+        for (int length = 1; length <= HuffmanCode.MAX_CODE_LENGTH; length++){
+            left = (left << 1) - count[length];
+            keys -= count[length];
+            if (left < 0){
+                throw new IllegalArgumentException("Code lengths are too short for the number of keys.");
+            }
+            if (left > keys){
+                throw new IllegalArgumentException("Code lengths do not make a complete code.");
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the header of code lengths.
+     * @param codeLength length of the code of each key indexed by key
+     * @param out stream the header is written to
+     * @throws IOException
+     * @throws IllegalArgumentException if a key in the code is larger than MAX_KEY
+     */
+    public static void writeLengths(byte[] codeLength, DataOutput out) throws IOException{
+
+        int first = 0;
+        while (first < codeLength.length && codeLength[first] == 0){
+            first++;
+        }
+        int last = codeLength.length - 1;
+        while (last > first && codeLength[last] == 0){
+            last--;
+        }
+        int maxLength = 0;
+        for (byte length : codeLength){
+            maxLength = Math.max(maxLength, length);
+        }
+
+        if (last > MAX_KEY){
+            throw new IllegalArgumentException("Key " + last + " is larger than " + MAX_KEY + ".");
+        }
+        if (last > Character.MAX_VALUE){
+            out.writeChar(WIDE_FIRST);
+            out.writeChar(WIDE_LAST);
+            out.writeInt(first);
+            out.writeInt(last);
+        }else{
+            out.writeChar(first);
+            out.writeChar(last);
+        }
+        out.writeByte(maxLength);
+        if (maxLength <= 15){
+            for (int key = first; key <= last; key += 2){
+                int low = key + 1 <= last ? codeLength[key + 1] : 0;
+                out.writeByte((codeLength[key] << 4) | low);
+            }
+        }else{
+            for (int key = first; key <= last; key++){
+                out.writeByte(codeLength[key]);
+            }
+        }
+    }
+
+    /**
+     * Reads a header of code lengths.
+     * @param in stream containing the header
+     * @return length of the code of each key indexed by key
+     * @throws IOException if the header does not hold a complete code
+     */
+    public static byte[] readLengths(DataInput in) throws IOException{
+
+        int first = in.readChar();
+        int last = in.readChar();
+        if (first == WIDE_FIRST && last == WIDE_LAST){
+            first = in.readInt();
+            last = in.readInt();
+            if (first < 0 || last > MAX_KEY){
+                throw new IOException("Code length header is corrupt.");
+            }
+        }
+        int maxLength = in.readUnsignedByte();
+        if (last < first || maxLength > HuffmanCode.MAX_CODE_LENGTH){
+            throw new IOException("Code length header is corrupt.");
+        }
+
+        byte[] codeLength = new byte[last + 1];
+        if (maxLength <= 15){
+            for (int key = first; key <= last; key += 2){
+                int pair = in.readUnsignedByte();
+                codeLength[key] = (byte) (pair >>> 4);
+                if (key + 1 <= last){
+                    codeLength[key + 1] = (byte) (pair & 0xF);
+                }
+            }
+        }else{
+            for (int key = first; key <= last; key++){
+                codeLength[key] = in.readByte();
+            }
+        }
+
+        try {
+            checkLengths(codeLength);
+        } catch (IllegalArgumentException e){
+            throw new IOException("Code length header is corrupt. " + e.getMessage());
+        }
+        return codeLength;
+    }
+}
@@ -0,0 +1,169 @@
+package huffmanencoding;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * CodecEvents makes the JFR events of CodecMetrics.  It is only loaded when
+ * the JVM has Flight Recorder, so the rest of the code runs on JVMs without it.
+ * An event is begun when its call starts and committed when the call ends, so
+ * JFR records the call's own start time and duration.  A shared event of each
+ * type is asked first, so a call made while no recording has the events on
+ * allocates nothing.  Events are typed Object outside this class, so that
+ * callers never name a JFR class.
+ *
+ * @author W. Sam Arrington
+ */
+final class CodecEvents {
+
+    // Never committed, only asked whether their type is enabled
+    private static final EncodeEvent ENCODE = new EncodeEvent();
+    private static final DecodeEvent DECODE = new DecodeEvent();
+    private static final TreeBuildEvent TREE_BUILD = new TreeBuildEvent();
+
+    private CodecEvents(){
+    }
+
+    /**
+     * @return a begun encode event, or null if no recording has it enabled
+     */
+    static Object beginEncode(){
+        return ENCODE.isEnabled() ? new EncodeEvent().start() : null;
+    }
+
+    /**
+     * @return a begun decode event, or null if no recording has it enabled
+     */
+    static Object beginDecode(){
+        return DECODE.isEnabled() ? new DecodeEvent().start() : null;
+    }
+
+    /**
+     * @return a begun tree build event, or null if no recording has it enabled
+     */
+    static Object beginTreeBuild(){
+        return TREE_BUILD.isEnabled() ? new TreeBuildEvent().start() : null;
+    }
+
+    /**
+     * Ends an event begun by one of the begin methods, before its fields are
+     * worked out.
+     */
+    static void end(Object event){
+        ((CallEvent) event).finish();
+    }
+
+    static void commitEncode(Object begun, String kind, long symbols, long bits){
+
+        EncodeEvent event = (EncodeEvent) begun;
+        event.kind = kind;
+        event.symbols = symbols;
+        event.bytesOut = (bits + 7) / 8;
+        event.bitsPerSymbol = symbols == 0 ? 0 : (double) bits / symbols;
+        event.nanosPerSymbol = symbols == 0 ? 0 : (double) event.nanos / symbols;
+        event.commit();
+    }
+
+    static void commitDecode(Object begun, String kind, long bits, long symbols){
+
+        DecodeEvent event = (DecodeEvent) begun;
+        event.kind = kind;
+        event.bytesIn = (bits + 7) / 8;
+        event.symbols = symbols;
+        event.nanosPerSymbol = symbols == 0 ? 0 : (double) event.nanos / symbols;
+        event.commit();
+    }
+
+    static void commitTreeBuild(Object begun, int keys, double averageCodeLength,
+            double entropy){
+
+        TreeBuildEvent event = (TreeBuildEvent) begun;
+        event.keys = keys;
+        event.averageCodeLength = averageCodeLength;
+        event.entropy = entropy;
+        event.commit();
+    }
+
+    /**
+     * An event that times one call.  Its transient fields are not recorded,
+     * JFR keeps the duration from begin and end itself.
+     */
+    abstract static class CallEvent extends Event {
+
+        private transient long startNanos;
+        transient long nanos;
+
+        final CallEvent start(){
+
+            startNanos = System.nanoTime();
+            begin();
+            return this;
+        }
+
+        final void finish(){
+
+            end();
+            nanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    @Name("huffmanencoding.Encode")
+    @Label("Huffman Encode")
+    @Category("Huffman")
+    @Description("One encode call")
+    static final class EncodeEvent extends CallEvent {
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Symbols")
+        long symbols;
+
+        @Label("Bytes Out")
+        long bytesOut;
+
+        @Label("Bits per Symbol")
+        double bitsPerSymbol;
+
+        @Label("Nanoseconds per Symbol")
+        double nanosPerSymbol;
+    }
+
+    @Name("huffmanencoding.Decode")
+    @Label("Huffman Decode")
+    @Category("Huffman")
+    @Description("One decode call")
+    static final class DecodeEvent extends CallEvent {
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Bytes In")
+        long bytesIn;
+
+        @Label("Symbols")
+        long symbols;
+
+        @Label("Nanoseconds per Symbol")
+        double nanosPerSymbol;
+    }
+
+    @Name("huffmanencoding.TreeBuild")
+    @Label("Huffman Tree Build")
+    @Category("Huffman")
+    @Description("One Huffman tree built from a frequency table")
+    static final class TreeBuildEvent extends CallEvent {
+
+        @Label("Keys")
+        int keys;
+
+        @Label("Average Code Length")
+        double averageCodeLength;
+
+        @Label("Entropy")
+        double entropy;
+    }
+}
@@ -0,0 +1,376 @@
+package huffmanencoding;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * CodecMetrics counts the symbols, bits and time of every encode and decode
+ * call and the time of every tree build, and keeps the average code length
+ * and entropy of the last tree built.  Calls are counted, not symbols, so the
+ * cost is a System.nanoTime and a few LongAdder adds per call whatever its
+ * length, and LongAdders keep threads from contending on the counters.
+ *
+ * One instance counts for the whole JVM and is published as a JMX MBean
+ * under OBJECT_NAME the first time it is used.  Each call is also recorded
+ * as a JFR event in the "Huffman" category when the JVM has Flight Recorder,
+ * begun with beginEncode, beginDecode or beginTreeBuild as the call starts
+ * and committed when it is recorded.  That costs nothing beyond a check
+ * unless a recording has the events on, and turning the counters off with
+ * setEnabled leaves the events to the recording.
+ * Text lines, packed, interleaved, block and mapped file messages are counted,
+ * Huffman streams are not, since their time is spent in the caller's reads
+ * and writes.
+ *
+ * @author W. Sam Arrington
+ */
+public final class CodecMetrics implements CodecMetricsMBean {
+
+    /**
+     * JMX name the metrics are published under.
+     */
+    public static final String OBJECT_NAME = "huffmanencoding:type=CodecMetrics";
+
+    private static final CodecMetrics GLOBAL = new CodecMetrics();
+
+    // Flight Recorder is in Java 11 and later, and some builds of Java 8
+    private static final boolean JFR = jfrAvailable();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL,
+                    new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e){
+            // The metrics are still counted, only not visible through JMX
+        }
+    }
+
+    private volatile boolean enabled = true;
+
+    private final LongAdder encodeCalls = new LongAdder();
+    private final LongAdder symbolsEncoded = new LongAdder();
+    private final LongAdder bitsEncoded = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+
+    private final LongAdder decodeCalls = new LongAdder();
+    private final LongAdder symbolsDecoded = new LongAdder();
+    private final LongAdder bitsDecoded = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    private final LongAdder treeBuilds = new LongAdder();
+    private final LongAdder treeBuildNanos = new LongAdder();
+    private volatile int lastTreeKeys;
+    private volatile double lastAverageCodeLength;
+    private volatile double lastEntropy;
+
+    private CodecMetrics(){
+    }
+
+    /**
+     * @return the metrics of the whole JVM
+     */
+    public static CodecMetrics global(){
+        return GLOBAL;
+    }
+
+    /**
+     * Marks the start of a call that is recorded.
+     * @return the time now in nanoseconds, or 0 if the metrics are off
+     */
+    static long start(){
+        return GLOBAL.enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Begins the JFR event of an encode call.
+     * @return the event, or null if no recording has encode events on
+     */
+    static Object beginEncode(){
+        return JFR ? CodecEvents.beginEncode() : null;
+    }
+
+    /**
+     * Begins the JFR event of a decode call.
+     * @return the event, or null if no recording has decode events on
+     */
+    static Object beginDecode(){
+        return JFR ? CodecEvents.beginDecode() : null;
+    }
+
+    /**
+     * Begins the JFR event of a tree build.
+     * @return the event, or null if no recording has tree build events on
+     */
+    static Object beginTreeBuild(){
+        return JFR ? CodecEvents.beginTreeBuild() : null;
+    }
+
+    /**
+     * Records an encode call.
+     * @param kind the kind of message, such as "line" or "packed"
+     * @param symbols number of symbols encoded
+     * @param bits number of encoded bits written
+     * @param start value of start() when the call began
+     * @param event value of beginEncode() when the call began
+     */
+    static void recordEncode(String kind, long symbols, long bits, long start, Object event){
+
+        if (event != null){
+            CodecEvents.end(event);
+            CodecEvents.commitEncode(event, kind, symbols, bits);
+        }
+        if (start == 0 || !GLOBAL.enabled){
+            return;
+        }
+        GLOBAL.encodeCalls.increment();
+        GLOBAL.symbolsEncoded.add(symbols);
+        GLOBAL.bitsEncoded.add(bits);
+        GLOBAL.encodeNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a decode call.
+     * @param kind the kind of message, such as "line" or "packed"
+     * @param bits number of encoded bits read
+     * @param symbols number of symbols decoded
+     * @param start value of start() when the call began
+     * @param event value of beginDecode() when the call began
+     */
+    static void recordDecode(String kind, long bits, long symbols, long start, Object event){
+
+        if (event != null){
+            CodecEvents.end(event);
+            CodecEvents.commitDecode(event, kind, bits, symbols);
+        }
+        if (start == 0 || !GLOBAL.enabled){
+            return;
+        }
+        GLOBAL.decodeCalls.increment();
+        GLOBAL.bitsDecoded.add(bits);
+        GLOBAL.symbolsDecoded.add(symbols);
+        GLOBAL.decodeNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a tree build, working out the average code length and entropy
+     * of the tree's frequencies.
+     * @param tree the tree built
+     * @param start value of start() when the build began
+     * @param event value of beginTreeBuild() when the build began
+     */
+    static void recordTreeBuild(FlatTree tree, long start, Object event){
+
+        long nanos = System.nanoTime() - start;
+        if (event != null){
+            CodecEvents.end(event);
+        }else if (start == 0 || !GLOBAL.enabled){
+            return;
+        }
+
+        // Children are numbered below their parent, so going down from the
+        // root reaches every parent before its children
+        int[] depth = new int[tree.size()];
+        long total = 0;
+        for (int n = tree.root; n >= 0; n--){
+            if (tree.isLeaf(n)){
+                total += tree.freq[n];
+            }else{
+                depth[tree.left[n]] = depth[n] + 1;
+                depth[tree.right[n]] = depth[n] + 1;
+            }
+        }
+        int keys = 0;
+        double averageLength = 0;
+        double entropy = 0;
+        for (int n = 0; n <= tree.root; n++){
+            if (tree.isLeaf(n)){
+                keys++;
+                if (tree.freq[n] > 0){
+                    double p = (double) tree.freq[n] / total;
+                    averageLength += p * depth[n];
+                    entropy -= p * Math.log(p) / Math.log(2);
+                }
+            }
+        }
+        recordTreeBuild(keys, averageLength, entropy, start, nanos, event);
+    }
+
+    /**
+     * Records a tree build from the TreeNodes built, without copying the tree.
+     * The tree is walked with a stack of its own, since a large alphabet can
+     * make it deeper than the call stack allows.
+     * @param tree the tree built
+     * @param start value of start() when the build began
+     * @param event value of beginTreeBuild() when the build began
+     */
+    static void recordTreeBuild(BinaryTree tree, long start, Object event){
+
+        long nanos = System.nanoTime() - start;
+        if (event != null){
+            CodecEvents.end(event);
+        }else if (start == 0 || !GLOBAL.enabled){
+            return;
+        }
+
+        // The average code length and entropy come from sums of freq * depth
+        // and freq * log2(freq), scaled by the total once it is known
+        int keys = 0;
+        long total = 0;
+        double lengthSum = 0;
+        double logSum = 0;
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        nodes.push(tree.root);
+        depths.push(0);
+        while (!nodes.isEmpty()){
+            TreeNode node = nodes.pop();
+            int depth = depths.pop();
+            if (node.left == null && node.right == null){
+                keys++;
+                total += node.freq;
+                if (node.freq > 0){
+                    lengthSum += (double) node.freq * depth;
+                    logSum += node.freq * Math.log(node.freq);
+                }
+            }else{
+                nodes.push(node.right);
+                depths.push(depth + 1);
+                nodes.push(node.left);
+                depths.push(depth + 1);
+            }
+        }
+        double averageLength = total == 0 ? 0 : lengthSum / total;
+        double entropy = total == 0 ? 0 : (Math.log(total) - logSum / total) / Math.log(2);
+        recordTreeBuild(keys, averageLength, entropy, start, nanos, event);
+    }
+
+    private static void recordTreeBuild(int keys, double averageLength, double entropy,
+            long start, long nanos, Object event){
+
+        if (event != null){
+            CodecEvents.commitTreeBuild(event, keys, averageLength, entropy);
+        }
+        if (start == 0 || !GLOBAL.enabled){
+            return;
+        }
+        GLOBAL.treeBuilds.increment();
+        GLOBAL.treeBuildNanos.add(nanos);
+        GLOBAL.lastTreeKeys = keys;
+        GLOBAL.lastAverageCodeLength = averageLength;
+        GLOBAL.lastEntropy = entropy;
+    }
+
+    @Override
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getEncodeCalls(){
+        return encodeCalls.sum();
+    }
+
+    @Override
+    public long getSymbolsEncoded(){
+        return symbolsEncoded.sum();
+    }
+
+    @Override
+    public long getEncodedBytesOut(){
+        return (bitsEncoded.sum() + 7) / 8;
+    }
+
+    @Override
+    public double getCompressionRatio(){
+        return ratio(getSymbolsEncoded(), getEncodedBytesOut());
+    }
+
+    @Override
+    public double getEncodeNanosPerSymbol(){
+        return ratio(encodeNanos.sum(), getSymbolsEncoded());
+    }
+
+    @Override
+    public long getDecodeCalls(){
+        return decodeCalls.sum();
+    }
+
+    @Override
+    public long getDecodedBytesIn(){
+        return (bitsDecoded.sum() + 7) / 8;
+    }
+
+    @Override
+    public long getSymbolsDecoded(){
+        return symbolsDecoded.sum();
+    }
+
+    @Override
+    public double getDecodeNanosPerSymbol(){
+        return ratio(decodeNanos.sum(), getSymbolsDecoded());
+    }
+
+    @Override
+    public long getTreeBuilds(){
+        return treeBuilds.sum();
+    }
+
+    @Override
+    public double getAverageTreeBuildNanos(){
+        return ratio(treeBuildNanos.sum(), getTreeBuilds());
+    }
+
+    @Override
+    public int getLastTreeKeys(){
+        return lastTreeKeys;
+    }
+
+    @Override
+    public double getLastAverageCodeLength(){
+        return lastAverageCodeLength;
+    }
+
+    @Override
+    public double getLastEntropy(){
+        return lastEntropy;
+    }
+
+    @Override
+    public void reset(){
+
+        encodeCalls.reset();
+        symbolsEncoded.reset();
+        bitsEncoded.reset();
+        encodeNanos.reset();
+        decodeCalls.reset();
+        symbolsDecoded.reset();
+        bitsDecoded.reset();
+        decodeNanos.reset();
+        treeBuilds.reset();
+        treeBuildNanos.reset();
+        lastTreeKeys = 0;
+        lastAverageCodeLength = 0;
+        lastEntropy = 0;
+    }
+
+    private static double ratio(long numerator, long denominator){
+        return denominator == 0 ? 0 : (double) numerator / denominator;
+    }
+
+    private static boolean jfrAvailable(){
+
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e){
+            return false;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package huffmanencoding;
+
+/**
+ * CodecMetricsMBean is the JMX view of CodecMetrics, published under the name
+ * CodecMetrics.OBJECT_NAME.
+ *
+ * @author W. Sam Arrington
+ */
+public interface CodecMetricsMBean {
+
+    /**
+     * @return true if encode, decode and tree build calls are being counted
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enabled true to count encode, decode and tree build calls
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return number of encode calls
+     */
+    long getEncodeCalls();
+
+    /**
+     * @return number of symbols encoded
+     */
+    long getSymbolsEncoded();
+
+    /**
+     * @return number of bytes written by encoding, counting encoded bits
+     */
+    long getEncodedBytesOut();
+
+    /**
+     * @return symbols encoded divided by bytes written, each symbol being a
+     * byte of plain text
+     */
+    double getCompressionRatio();
+
+    /**
+     * @return time spent encoding per symbol encoded, in nanoseconds
+     */
+    double getEncodeNanosPerSymbol();
+
+    /**
+     * @return number of decode calls
+     */
+    long getDecodeCalls();
+
+    /**
+     * @return number of bytes read by decoding, counting encoded bits
+     */
+    long getDecodedBytesIn();
+
+    /**
+     * @return number of symbols decoded
+     */
+    long getSymbolsDecoded();
+
+    /**
+     * @return time spent decoding per symbol decoded, in nanoseconds
+     */
+    double getDecodeNanosPerSymbol();
+
+    /**
+     * @return number of Huffman trees built
+     */
+    long getTreeBuilds();
+
+    /**
+     * @return average time to build a Huffman tree, in nanoseconds
+     */
+    double getAverageTreeBuildNanos();
+
+    /**
+     * @return number of keys of the last tree built
+     */
+    int getLastTreeKeys();
+
+    /**
+     * @return average code length in bits of the last tree built, weighted by
+     * the frequency of each key
+     */
+    double getLastAverageCodeLength();
+
+    /**
+     * @return entropy in bits per symbol of the frequencies of the last tree
+     * built, the least average code length any code could have
+     */
+    double getLastEntropy();
+
+    /**
+     * Sets every counter back to 0.
+     */
+    void reset();
+}
@@ -0,0 +1,285 @@
+package huffmanencoding;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CodecRegistry hands out built HuffmanCodes for recurring frequency tables and
+ * code length vectors, so that a message coded with a table seen before skips
+ * building the tree, code tables and decode tables.  Each table is
+ * fingerprinted and the codes of the most recently used fingerprints are kept,
+ * up to a maximum, with the least recently used dropped first.  Trees are built
+ * as FlatTrees, so a code held here has no TreeNodes until its report is asked for.
+ *
+ * The codes handed out are frozen, so their encode and decode tables, tree and
+ * decode engine cannot change, and they can be used by any number of threads at
+ * once.  A registry can also be shared between threads.
+ *
+ * @author W. Sam Arrington
+ */
+public final class CodecRegistry {
+
+    private final int maxEntries;
+    private final LinkedHashMap<Fingerprint, HuffmanCode> codes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates an empty registry.
+     * @param maxEntries most codes kept at once
+     */
+    public CodecRegistry(int maxEntries){
+
+        if (maxEntries < 1){
+            throw new IllegalArgumentException("Registry must hold at least 1 code.");
+        }
+        this.maxEntries = maxEntries;
+        codes = new LinkedHashMap<Fingerprint, HuffmanCode>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, HuffmanCode> eldest){
+                if (size() > CodecRegistry.this.maxEntries){
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the Huffman code for the leaves of a queue, such as one read from
+     * a frequency table file.  The queue is not changed.
+     * @param queue HuffmanQueue holding only leaves with one letter keys
+     * @return the shared code, with the same Huffman tree MakeHuffmanTree builds
+     * @throws IllegalArgumentException if the queue holds fewer than 2 leaves
+     * or a node that is not a one letter leaf
+     */
+    public HuffmanCode get(HuffmanQueue queue){
+
+        int[] keys = new int[queue.size];
+        long[] freqs = new long[queue.size];
+        for (int i = 0; i < queue.size; i++){
+            TreeNode node = queue.array[i];
+            if (!node.isLeaf() || node.key.length() != 1){
+                throw new IllegalArgumentException("Queue must hold only one letter leaves.");
+            }
+            keys[i] = node.key.charAt(0);
+            freqs[i] = node.freq;
+        }
+        return forLeaves(keys, freqs);
+    }
+
+    /**
+     * Returns the Huffman code for a frequency table.
+     * @param freq frequency of each key indexed by key, negative if the key is absent
+     * @return the shared code, with the same Huffman tree MakeHuffmanTree builds
+     * @throws IllegalArgumentException if fewer than 2 keys are present
+     */
+    public HuffmanCode get(long[] freq){
+
+        int count = 0;
+        for (long f : freq){
+            if (f >= 0){
+                count++;
+            }
+        }
+        int[] keys = new int[count];
+        long[] freqs = new long[count];
+        count = 0;
+        for (int key = 0; key < freq.length; key++){
+            if (freq[key] >= 0){
+                keys[count] = key;
+                freqs[count++] = freq[key];
+            }
+        }
+        return forLeaves(keys, freqs);
+    }
+
+    /**
+     * Returns the canonical code for a code length vector.
+     * @param codeLength length of the code of each key indexed by key, 0 if the
+     * key is not in the code
+     * @return the shared canonical code, which has no Huffman tree
+     * @throws IllegalArgumentException if the lengths do not make a complete code
+     */
+    public HuffmanCode getCanonical(byte[] codeLength){
+
+        // Trailing absent keys do not change the code
+        int end = codeLength.length;
+        while (end > 0 && codeLength[end - 1] == 0){
+            end--;
+        }
+        Fingerprint fingerprint = new Fingerprint(true, toLongs(codeLength, end));
+        HuffmanCode code = lookup(fingerprint);
+        if (code == null){
+            code = store(fingerprint,
+                    HuffmanCode.fromCodeLengths(Arrays.copyOf(codeLength, end)).freeze());
+        }
+        return code;
+    }
+
+    /**
+     * @return number of requests answered from the registry
+     */
+    public long hits(){
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests that had to build a code
+     */
+    public long misses(){
+        return misses.get();
+    }
+
+    /**
+     * @return number of codes dropped to stay within the maximum
+     */
+    public long evictions(){
+        return evictions.get();
+    }
+
+    /**
+     * @return number of codes held
+     */
+    public synchronized int size(){
+        return codes.size();
+    }
+
+    /**
+     * Drops every code held.  The counters are kept.
+     */
+    public synchronized void clear(){
+        codes.clear();
+    }
+
+    /**
+     * Returns the code for a set of leaves, building the tree on a miss.  The
+     * leaves are sorted by key and then frequency, so the same table gives the
+     * same fingerprint and tree whatever order its leaves came in.
+     */
+    private HuffmanCode forLeaves(int[] keys, long[] freqs){
+
+        int n = keys.length;
+        if (n < 2){
+            throw new IllegalArgumentException("A Huffman code needs at least 2 keys.");
+        }
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++){
+            if (keys[i] < 0 || freqs[i] < 0){
+                throw new IllegalArgumentException("Frequency of key " + keys[i]
+                        + " is negative.");
+            }
+            order[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] symbols = new int[n];
+        long[] sortedFreqs = new long[n];
+        for (int i = 0; i < n; i++){
+            symbols[i] = (int) (order[i] >>> 32);
+            sortedFreqs[i] = freqs[(int) order[i]];
+        }
+        // A key listed more than once has its frequencies in order
+        int i = 0;
+        while (i < n){
+            int j = i + 1;
+            while (j < n && symbols[j] == symbols[i]){
+                j++;
+            }
+            Arrays.sort(sortedFreqs, i, j);
+            i = j;
+        }
+
+        // The fingerprint holds each key followed by its frequency
+        long[] entries = new long[2 * n];
+        for (i = 0; i < n; i++){
+            entries[2 * i] = symbols[i];
+            entries[2 * i + 1] = sortedFreqs[i];
+        }
+        Fingerprint fingerprint = new Fingerprint(false, entries);
+        HuffmanCode code = lookup(fingerprint);
+        if (code == null){
+            code = store(fingerprint,
+                    new HuffmanCode(FlatTree.build(symbols, sortedFreqs)).freeze());
+        }
+        return code;
+    }
+
+    private synchronized HuffmanCode lookup(Fingerprint fingerprint){
+
+        HuffmanCode code = codes.get(fingerprint);
+        if (code != null){
+            hits.incrementAndGet();
+        }else{
+            misses.incrementAndGet();
+        }
+        return code;
+    }
+
+    /**
+     * Keeps a code built outside the lock.  If another thread stored the same
+     * table meanwhile its code is kept and returned instead.
+     */
+    private synchronized HuffmanCode store(Fingerprint fingerprint, HuffmanCode code){
+
+        HuffmanCode stored = codes.get(fingerprint);
+        if (stored != null){
+            return stored;
+        }
+        codes.put(fingerprint, code);
+        return code;
+    }
+
+    private static long[] toLongs(byte[] values, int end){
+
+        long[] longs = new long[end];
+        for (int i = 0; i < end; i++){
+            longs[i] = values[i];
+        }
+        return longs;
+    }
+
+    /**
+     * A frequency table or code length vector, with a 64-bit hash worked out
+     * once.  Equal fingerprints compare every entry, so a hash collision cannot
+     * return the wrong code.
+     */
+    private static final class Fingerprint {
+
+        private final boolean lengths;
+        private final long[] entries;
+        private final long hash;
+
+        Fingerprint(boolean lengths, long[] entries){
+
+            this.lengths = lengths;
+            this.entries = entries;
+            long h = lengths ? 0x9E3779B97F4A7C15L : 0xC2B2AE3D27D4EB4FL;
+            for (long entry : entries){
+                h = (h ^ entry) * 0x100000001B3L;
+                h ^= h >>> 29;
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode(){
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object other){
+
+            if (!(other instanceof Fingerprint)){
+                return false;
+            }
+            Fingerprint that = (Fingerprint) other;
+            return hash == that.hash && lengths == that.lengths
+                    && Arrays.equals(entries, that.entries);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package huffmanencoding;
+
+import java.io.*;
+
+/**
+ * ContextCode is an order-1 code: each letter is encoded with a code chosen
+ * by the letter before it, so that after Q the code for U is a single bit.
+ * Previous letters whose next letters are counted alike share a code, so the
+ * tables sent with a message stay few.  Clusters are made by merging, two at
+ * a time, the pair of contexts that costs the fewest extra bits, for as long
+ * as the merge costs less than the table it saves or there are more than the
+ * most tables allowed.  The first letter of a message has a context of its own.
+ * Text with no letters has no codes and writes a message of no symbols.
+ *
+ * Each code holds every letter of the text the model was built from, so a
+ * letter that never followed some context can still be encoded after it.
+ * Codes are switched with a lookup of the previous key in a table of context
+ * clusters, and the bits of every code are kept in one array indexed by the
+ * cluster and key, so encoding stays a few array loads per letter.
+ *
+ * The context message is laid out as:
+ *
+ * 'HUFC' magic number
+ * byte number of codes, 0 only for a message of no symbols
+ * for each code its code lengths as written by CanonicalCode.writeLengths
+ * byte code of the first symbol
+ * byte first and byte last previous key that has a code of its own, then the
+ * byte code of each previous key from the first to the last, other keys using code 0
+ * int number of symbols encoded
+ * byte number of padding bits at the end of the last data byte
+ * int number of data bytes, then the data bytes
+ *
+ * @author W. Sam Arrington
+ */
+public final class ContextCode {
+
+    /**
+     * First four bytes of a context message.
+     */
+    public static final int CONTEXT_MAGIC = 0x48554643;
+
+    /**
+     * Default most number of codes.
+     */
+    public static final int DEFAULT_MAX_TABLES = 8;
+
+    /**
+     * Most number of codes a message can hold.
+     */
+    public static final int MAX_TABLES = 64;
+
+    // Keys and contexts, the last context being the start of the message
+    private static final int KEYS = 256;
+    private static final int START = KEYS;
+
+    private final HuffmanCode[] codes;
+    private final byte[] tableOf;
+
+    // Bits and length of each key of each code, indexed by code * KEYS + key
+    private final long[] codeBits;
+    private final byte[] codeLength;
+
+    private ContextCode(HuffmanCode[] codes, byte[] tableOf){
+
+        this.codes = codes;
+        this.tableOf = tableOf;
+        codeBits = new long[codes.length * KEYS];
+        codeLength = new byte[codes.length * KEYS];
+        for (int t = 0; t < codes.length; t++){
+            byte[] lengths = codes[t].codeLength;
+            if (lengths.length > KEYS){
+                throw new IllegalArgumentException("A context code needs codes whose keys are bytes.");
+            }
+            System.arraycopy(codes[t].codeBits, 0, codeBits, t * KEYS, lengths.length);
+            System.arraycopy(lengths, 0, codeLength, t * KEYS, lengths.length);
+        }
+    }
+
+    /**
+     * Builds the codes for the letters of a text from the counts of each
+     * letter after each other letter.
+     * @param clearText plain text, non-letters are ignored
+     * @param maxTables most number of codes, 1 to MAX_TABLES
+     * @return the context code, with no codes if the text has no letters
+     */
+    public static ContextCode build(CharSequence clearText, int maxTables){
+
+        if (maxTables < 1 || maxTables > MAX_TABLES){
+            throw new IllegalArgumentException("Number of codes must be 1 to " + MAX_TABLES + ".");
+        }
+        String cleanLine = PackedCode.cleanText(clearText, 0, clearText.length());
+        if (cleanLine.isEmpty()){
+            return new ContextCode(new HuffmanCode[0], new byte[KEYS + 1]);
+        }
+
+        // Counts each key after each context
+        long[][] counts = new long[KEYS + 1][];
+        int context = START;
+        for (int i = 0; i < cleanLine.length(); i++){
+            int key = cleanLine.charAt(i);
+            if (counts[context] == null){
+                counts[context] = new long[KEYS];
+            }
+            counts[context][key]++;
+            context = key;
+        }
+
+        int[] clusterOf = cluster(counts, maxTables);
+        int clusters = 0;
+        for (int c : clusterOf){
+            clusters = Math.max(clusters, c + 1);
+        }
+
+        // Adds up the counts of each cluster, giving every letter of the text a count
+        long[][] clusterCounts = new long[clusters][KEYS];
+        long[] all = new long[KEYS];
+        for (int c = 0; c < counts.length; c++){
+            if (counts[c] != null){
+                for (int key = 0; key < KEYS; key++){
+                    clusterCounts[clusterOf[c]][key] += counts[c][key];
+                    all[key] += counts[c][key];
+                }
+            }
+        }
+        HuffmanCode[] codes = new HuffmanCode[clusters];
+        for (int t = 0; t < clusters; t++){
+            for (int key = 0; key < KEYS; key++){
+                if (all[key] > 0 && clusterCounts[t][key] == 0){
+                    clusterCounts[t][key] = 1;
+                }
+            }
+            codes[t] = HuffmanCode.fromCounts(clusterCounts[t]).canonical();
+        }
+
+        byte[] tableOf = new byte[KEYS + 1];
+        for (int c = 0; c < tableOf.length; c++){
+            tableOf[c] = (byte) Math.max(clusterOf[c], 0);
+        }
+        return new ContextCode(codes, tableOf);
+    }
+
+    /**
+     * @return number of codes the contexts are clustered into
+     */
+    public int tableCount(){
+        return codes.length;
+    }
+
+    /**
+     * Encodes plain text into a context message.
+     * @param clearText plain text, non-letters are ignored
+     * @return the context message
+     * @throws IllegalArgumentException if a letter is not in the codes
+     */
+    public byte[] encode(CharSequence clearText){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(clearText, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes plain text and writes the context message to a stream.
+     * @param clearText plain text, non-letters are ignored
+     * @param out stream the context message is written to
+     * @throws IOException
+     * @throws IllegalArgumentException if a letter is not in the codes
+     */
+    public void encode(CharSequence clearText, OutputStream out) throws IOException{
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        int[] keyOf = Alphabet.LETTERS.keyOf;
+        BitWriter data = new BitWriter(clearText.length() / 2 + 8);
+        int table = tableOf[START];
+        int symbols = 0;
+        for (int i = 0; i < clearText.length(); i++){
+            char c = clearText.charAt(i);
+            int key = c < keyOf.length ? keyOf[c] : -1;
+            if (key < 0){
+                continue;
+            }
+            int index = table * KEYS + key;
+            int length = index < codeLength.length ? codeLength[index] : 0;
+            if (length == 0){
+                throw new IllegalArgumentException("Key " + HuffmanCode.keyName(key)
+                        + " is not in the code.");
+            }
+            data.write(codeBits[index], length);
+            table = tableOf[key];
+            symbols++;
+        }
+        long bits = data.bitCount();
+        int padding = data.finish();
+        CodecMetrics.recordEncode("context", symbols, bits, start, event);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(CONTEXT_MAGIC);
+        dataOut.writeByte(codes.length);
+        for (HuffmanCode code : codes){
+            CanonicalCode.writeLengths(code.codeLength, dataOut);
+        }
+        dataOut.writeByte(tableOf[START]);
+        int first = 0;
+        int last = KEYS - 1;
+        while (first < last && tableOf[first] == 0){
+            first++;
+        }
+        while (last > first && tableOf[last] == 0){
+            last--;
+        }
+        dataOut.writeByte(first);
+        dataOut.writeByte(last);
+        dataOut.write(tableOf, first, last - first + 1);
+        dataOut.writeInt(symbols);
+        dataOut.writeByte(padding);
+        dataOut.writeInt(data.size());
+        data.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Decodes a context message.
+     * @param message the context message
+     * @return decoded text
+     * @throws IOException if the array does not hold a valid context message
+     */
+    public static String decode(byte[] message) throws IOException{
+        return decode(new ByteArrayInputStream(message));
+    }
+
+    /**
+     * Reads a context message from a stream and decodes it.
+     * @param in stream containing the context message
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid context message
+     */
+    public static String decode(InputStream in) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != CONTEXT_MAGIC){
+            throw new IOException("Not a Huffman context message.");
+        }
+        return decodeMessage(dataIn);
+    }
+
+    /**
+     * Decodes a context message whose magic number has already been read.
+     * @param in stream positioned after the magic number
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid context message
+     */
+    static String decodeMessage(DataInputStream in) throws IOException{
+
+        int tables = in.readUnsignedByte();
+        if (tables > MAX_TABLES){
+            throw new IOException("Context message header is corrupt.");
+        }
+        TableDecoder[] decoders = new TableDecoder[tables];
+        for (int t = 0; t < tables; t++){
+            byte[] lengths = CanonicalCode.readLengths(in);
+            if (lengths.length > KEYS){
+                throw new IOException("Context message header is corrupt.");
+            }
+            decoders[t] = HuffmanCode.fromCodeLengths(lengths).tableDecoder;
+        }
+        byte[] tableOf = new byte[KEYS + 1];
+        tableOf[START] = in.readByte();
+        int first = in.readUnsignedByte();
+        int last = in.readUnsignedByte();
+        if (first > last){
+            throw new IOException("Context message header is corrupt.");
+        }
+        in.readFully(tableOf, first, last - first + 1);
+        for (byte table : tableOf){
+            if ((table & 0xFF) >= Math.max(tables, 1)){
+                throw new IOException("Context message header is corrupt.");
+            }
+        }
+        int symbolCount = in.readInt();
+        int padding = in.readUnsignedByte();
+        int dataLength = in.readInt();
+        if (symbolCount < 0 || padding > 7 || dataLength < 0
+                || dataLength > Integer.MAX_VALUE / 8 || (dataLength == 0 && padding != 0)
+                || symbolCount > dataLength * 8L - padding || (tables == 0 && dataLength != 0)){
+            throw new IOException("Context message header is corrupt.");
+        }
+        if (tables == 0){
+            return "";
+        }
+        BitReader data = new BitReader(PackedCode.readData(in, dataLength));
+        long dataBits = dataLength * 8L - padding;
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        char[] clearText = new char[symbolCount];
+        TableDecoder decoder = decoders[tableOf[START] & 0xFF];
+        for (int i = 0; i < symbolCount; i++){
+            int key = decoder.decodeNext(data);
+            clearText[i] = (char) key;
+            decoder = decoders[tableOf[key] & 0xFF];
+        }
+        CodecMetrics.recordDecode("context", data.position(), symbolCount, start, event);
+        if (data.position() != dataBits){
+            throw new IOException("Context message decoded " + symbolCount + " symbols in "
+                    + data.position() + " bits, expected " + dataBits + " bits.");
+        }
+        return new String(clearText);
+    }
+
+    /**
+     * Clusters the contexts that have counts.
+     * @param counts count of each key after each context, null for contexts never seen
+     * @param maxTables most number of clusters
+     * @return cluster of each context numbered from 0, -1 for contexts never seen
+     */
+    private static int[] cluster(long[][] counts, int maxTables){
+
+        // Bits of the code lengths a table adds to the message
+        int first = KEYS;
+        int last = 0;
+        for (long[] context : counts){
+            if (context != null){
+                for (int key = 0; key < KEYS; key++){
+                    if (context[key] > 0){
+                        first = Math.min(first, key);
+                        last = Math.max(last, key);
+                    }
+                }
+            }
+        }
+        double tableBits = 8 * (5 + (last - first + 2) / 2);
+
+        // Starts with a cluster for each context seen
+        int size = 0;
+        int[] clusterOf = new int[counts.length];
+        long[][] clusterCounts = new long[counts.length][];
+        double[] cost = new double[counts.length];
+        for (int c = 0; c < counts.length; c++){
+            if (counts[c] == null){
+                clusterOf[c] = -1;
+            }else{
+                clusterOf[c] = size;
+                clusterCounts[size] = counts[c].clone();
+                cost[size] = CostEstimator.entropyBits(clusterCounts[size]);
+                size++;
+            }
+        }
+
+        // Merges the cheapest pair while it pays or there are too many clusters
+        long[] merged = new long[KEYS];
+        while (size > 1){
+            int bestA = -1;
+            int bestB = -1;
+            double bestDelta = Double.MAX_VALUE;
+            for (int a = 0; a < size; a++){
+                for (int b = a + 1; b < size; b++){
+                    for (int key = 0; key < KEYS; key++){
+                        merged[key] = clusterCounts[a][key] + clusterCounts[b][key];
+                    }
+                    double delta = CostEstimator.entropyBits(merged) - cost[a] - cost[b];
+                    if (delta < bestDelta){
+                        bestDelta = delta;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (size <= maxTables && bestDelta >= tableBits){
+                break;
+            }
+
+            // Cluster b joins a, and the last cluster takes b's number
+            for (int key = 0; key < KEYS; key++){
+                clusterCounts[bestA][key] += clusterCounts[bestB][key];
+            }
+            cost[bestA] = CostEstimator.entropyBits(clusterCounts[bestA]);
+            size--;
+            clusterCounts[bestB] = clusterCounts[size];
+            cost[bestB] = cost[size];
+            for (int c = 0; c < clusterOf.length; c++){
+                if (clusterOf[c] == bestB){
+                    clusterOf[c] = bestA;
+                }else if (clusterOf[c] == size){
+                    clusterOf[c] = bestB;
+                }
+            }
+        }
+        return clusterOf;
+    }
+}
@@ -0,0 +1,96 @@
+package huffmanencoding;
+
+/**
+ * CostEstimator works out what a block of symbols would cost to send from
+ * nothing more than the block's histogram, without encoding it: the exact
+ * number of data bits under a given set of code lengths, the exact number of
+ * bytes the code lengths take in a header, and the entropy, the fewest bits
+ * any code built for the block could take.  BlockCode uses these to decide
+ * for each block whether a code is worth building at all.
+ *
+ * @author W. Sam Arrington
+ */
+public final class CostEstimator {
+
+    private CostEstimator(){
+    }
+
+    /**
+     * Counts the bits symbols take when encoded with given code lengths.
+     * @param counts count of each key indexed by key
+     * @param codeLength length of the code of each key indexed by key
+     * @return exact number of data bits, or -1 if a counted key has no code
+     */
+    public static long codedBits(long[] counts, byte[] codeLength){
+
+        for (int key = 0; key < counts.length; key++){
+            if (counts[key] > 0 && (key >= codeLength.length || codeLength[key] == 0)){
+                return -1;
+            }
+        }
+        return LengthLimitedCode.encodedBits(counts, codeLength);
+    }
+
+    /**
+     * Counts the bytes CanonicalCode.writeLengths writes for code lengths.
+     * @param codeLength length of the code of each key indexed by key
+     * @return exact number of header bytes
+     */
+    public static int tableBytes(byte[] codeLength){
+
+        int first = 0;
+        while (first < codeLength.length && codeLength[first] == 0){
+            first++;
+        }
+        int last = codeLength.length - 1;
+        while (last > first && codeLength[last] == 0){
+            last--;
+        }
+        int keys = Math.max(0, last - first + 1);
+        int header = last > Character.MAX_VALUE ? 12 : 4;
+        // A byte of the longest length, then the lengths two to a byte if they fit in 4 bits
+        return header + 1 + (LengthLimitedCode.maxCodeLength(codeLength) <= 15 ? (keys + 1) / 2
+                : keys);
+    }
+
+    /**
+     * Finds the fewest bytes the code lengths of a code built for counted keys
+     * can take, before the code is built.
+     * @param counts count of each key indexed by key
+     * @return number of header bytes if every code is 15 bits or shorter
+     */
+    public static int minTableBytes(long[] counts){
+
+        int first = 0;
+        while (first < counts.length && counts[first] == 0){
+            first++;
+        }
+        int last = counts.length - 1;
+        while (last > first && counts[last] == 0){
+            last--;
+        }
+        int keys = Math.max(0, last - first + 1);
+        return (last > Character.MAX_VALUE ? 12 : 4) + 1 + (keys + 1) / 2;
+    }
+
+    /**
+     * Finds the entropy of counted symbols, which no prefix code built for
+     * them can beat.
+     * @param counts count of each key indexed by key
+     * @return total of each count times the log of its probability, in bits
+     */
+    public static double entropyBits(long[] counts){
+
+        long total = 0;
+        for (long count : counts){
+            total += count;
+        }
+        double bits = 0;
+        for (long count : counts){
+            if (count > 0){
+                bits += count * (Math.log((double) total / count) / Math.log(2));
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,370 @@
+package huffmanencoding;
+
+import java.util.Arrays;
+
+/**
+ * FlatTree is a Huffman tree held as parallel int arrays instead of TreeNode
+ * objects.  Node n has children left[n] and right[n], or -1 for a leaf, a key
+ * symbol[n], or -1 for an internal node, and a frequency freq[n].  Children are
+ * always numbered below their parent and the root is the last node.  Building
+ * the tree, assigning codes and walking the tree to decode make no objects per
+ * node, and a BinaryTree of TreeNodes is only made when a report needs one.
+ *
+ * @author W. Sam Arrington
+ */
+public final class FlatTree {
+
+    final int[] left;
+    final int[] right;
+    final int[] symbol;
+    final long[] freq;
+    final int root;
+
+    private FlatTree(int nodes){
+
+        left = new int[nodes];
+        right = new int[nodes];
+        symbol = new int[nodes];
+        freq = new long[nodes];
+        root = nodes - 1;
+    }
+
+    /**
+     * Builds the Huffman tree for a set of keys, joining nodes in the same order
+     * as HuffmanEncoding.MakeHuffmanTree so that both give the same tree.  Nodes
+     * come out of the queue by frequency, then by number of keys below them, then
+     * by smallest key, and the first node out becomes the left child.
+     * @param symbols key of each leaf
+     * @param freqs frequency of each leaf
+     * @return the Huffman tree
+     * @throws IllegalArgumentException if there are fewer than two keys
+     */
+    public static FlatTree build(int[] symbols, int[] freqs){
+
+        long[] longFreqs = new long[freqs.length];
+        for (int i = 0; i < freqs.length; i++){
+            longFreqs[i] = freqs[i];
+        }
+        return build(symbols, longFreqs);
+    }
+
+    /**
+     * Builds the Huffman tree for a set of keys with 64-bit frequencies, for
+     * large alphabets and counts taken from large inputs.  Keys may be any
+     * non-negative int, such as byte values or token ids.
+     * @param symbols key of each leaf
+     * @param freqs frequency of each leaf
+     * @return the Huffman tree
+     * @throws IllegalArgumentException if there are fewer than two keys, or a
+     * key or frequency is negative
+     */
+    public static FlatTree build(int[] symbols, long[] freqs){
+
+        int leaves = symbols.length;
+        if (leaves < 2 || freqs.length != leaves){
+            throw new IllegalArgumentException("A Huffman tree needs at least two keys"
+                    + " and one frequency for each.");
+        }
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginTreeBuild();
+        FlatTree tree = new FlatTree(2 * leaves - 1);
+        int[] keyCount = new int[tree.root + 1];
+        int[] minKey = new int[tree.root + 1];
+        int[] heap = new int[leaves];
+        for (int n = 0; n < leaves; n++){
+            tree.left[n] = -1;
+            tree.right[n] = -1;
+            tree.symbol[n] = symbols[n];
+            tree.freq[n] = freqs[n];
+            keyCount[n] = 1;
+            minKey[n] = symbols[n];
+            heap[n] = n;
+            if (symbols[n] < 0 || freqs[n] < 0){
+                throw new IllegalArgumentException("Keys and frequencies cannot be negative.");
+            }
+        }
+
+        int size = leaves;
+        for (int i = size / 2 - 1; i >= 0; i--){
+            siftDown(heap, size, i, tree.freq, keyCount, minKey);
+        }
+
+        // Joins the two nodes that come first until one is left, moving nodes
+        // through the heap exactly as HuffmanQueue does so that ties match
+        for (int n = leaves; n <= tree.root; n++){
+            int first = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, 0, tree.freq, keyCount, minKey);
+            int second = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, 0, tree.freq, keyCount, minKey);
+
+            tree.left[n] = first;
+            tree.right[n] = second;
+            tree.symbol[n] = -1;
+            tree.freq[n] = tree.freq[first] + tree.freq[second];
+            keyCount[n] = keyCount[first] + keyCount[second];
+            minKey[n] = Math.min(minKey[first], minKey[second]);
+
+            heap[size] = n;
+            siftUp(heap, size++, tree.freq, keyCount, minKey);
+        }
+        CodecMetrics.recordTreeBuild(tree, start, event);
+        return tree;
+    }
+
+    /**
+     * Copies a tree of TreeNodes whose leaves have one letter keys.
+     * @param tree the tree to copy
+     * @return the flat tree
+     * @throws IllegalArgumentException if the tree is empty
+     */
+    public static FlatTree of(BinaryTree tree){
+
+        if (tree.TreeEmpty()){
+            throw new IllegalArgumentException("A Huffman tree needs at least one key.");
+        }
+        FlatTree flat = new FlatTree(countNodes(tree.root));
+        flat.copy(tree.root, 0);
+        return flat;
+    }
+
+    /**
+     * Makes a tree of TreeNodes with the same shape, keys and frequencies, for
+     * reports that walk TreeNodes.
+     * @return the tree
+     */
+    public BinaryTree toBinaryTree(){
+        return new BinaryTree(toTreeNode(root));
+    }
+
+    /**
+     * @return number of nodes in the tree
+     */
+    public int size(){
+        return root + 1;
+    }
+
+    /**
+     * @param node a node of the tree
+     * @return true if the node has no children
+     */
+    public boolean isLeaf(int node){
+        return left[node] < 0;
+    }
+
+    /**
+     * @return the number of levels below the root to the deepest leaf, the
+     * length of the longest code
+     */
+    public int depth(){
+
+        // Children are numbered below their parent, so going down from the
+        // root reaches every parent before its children
+        int[] level = new int[root + 1];
+        int deepest = 0;
+        for (int n = root; n >= 0; n--){
+            if (isLeaf(n)){
+                deepest = Math.max(deepest, level[n]);
+            }else{
+                level[left[n]] = level[n] + 1;
+                level[right[n]] = level[n] + 1;
+            }
+        }
+        return deepest;
+    }
+
+    /**
+     * @return the largest key in the tree
+     */
+    public int maxSymbol(){
+
+        int max = -1;
+        for (int n = 0; n <= root; n++){
+            max = Math.max(max, symbol[n]);
+        }
+        return max;
+    }
+
+    /**
+     * Stores the code of each leaf, its path from the root, in code tables.  A
+     * key listed twice keeps its shortest code, the first one in preorder on a tie.
+     * @param codeBits code of each key indexed by key, right aligned
+     * @param codeLength length of the code of each key indexed by key
+     * @throws IllegalStateException if the tree is deeper than HuffmanCode.MAX_CODE_LENGTH
+     */
+    void assignCodes(long[] codeBits, byte[] codeLength){
+
+        // Walks the tree in preorder with a stack of nodes and their paths
+        int[] stackNode = new int[root + 1];
+        long[] stackBits = new long[root + 1];
+        int[] stackLength = new int[root + 1];
+        int top = 0;
+        stackNode[0] = root;
+        while (top >= 0){
+            int node = stackNode[top];
+            long bits = stackBits[top];
+            int length = stackLength[top];
+            top--;
+
+            if (isLeaf(node)){
+                if (length > HuffmanCode.MAX_CODE_LENGTH){
+                    throw new IllegalStateException("Huffman tree is deeper than "
+                            + HuffmanCode.MAX_CODE_LENGTH + " levels.");
+                }
+                int key = symbol[node];
+                if (codeLength[key] == 0 || length < codeLength[key]){
+                    codeBits[key] = bits;
+                    codeLength[key] = (byte) length;
+                }
+                continue;
+            }
+
+            // The right child goes on the stack first so the left is visited first
+            top++;
+            stackNode[top] = right[node];
+            stackBits[top] = (bits << 1) | 1;
+            stackLength[top] = length + 1;
+            top++;
+            stackNode[top] = left[node];
+            stackBits[top] = bits << 1;
+            stackLength[top] = length + 1;
+        }
+    }
+
+    /**
+     * Collects the frequency of each key from the leaves.
+     * @return frequency of each key indexed by key, -1 for keys not in the tree
+     */
+    long[] frequencies(){
+
+        long[] freqs = new long[maxSymbol() + 1];
+        Arrays.fill(freqs, -1);
+        for (int n = 0; n <= root; n++){
+            if (isLeaf(n)){
+                freqs[symbol[n]] = Math.max(freqs[symbol[n]], 0) + freq[n];
+            }
+        }
+        return freqs;
+    }
+
+    /**
+     * Decodes a line of encoded text by walking the tree one bit at a time.
+     * Bits of a code left incomplete at the end are ignored.
+     * @param code encoded text
+     * @param clearText decoded keys are appended here
+     * @return false if the code holds something other than 1s and 0s
+     */
+    boolean decode(CharSequence code, StringBuilder clearText){
+
+        int node = root;
+        for (int i = 0; i < code.length(); i++){
+
+            char bit = code.charAt(i);
+            if (bit == '0'){
+                node = left[node];
+            }else if (bit == '1'){
+                node = right[node];
+            }else{
+                return false;
+            }
+
+            if (isLeaf(node)){
+                clearText.append((char) symbol[node]);
+                node = root;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the node at a heap position down until neither child comes before it.
+     */
+    private static void siftDown(int[] heap, int size, int pos, long[] freq,
+            int[] keyCount, int[] minKey){
+
+        int item = heap[pos];
+        int child;
+        while ((child = 2 * pos + 1) < size){
+            if (child + 1 < size && before(heap[child + 1], heap[child], freq, keyCount, minKey)){
+                child++;
+            }
+            if (!before(heap[child], item, freq, keyCount, minKey)){
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+
+    /**
+     * Moves the node at a heap position up until its parent comes before it.
+     */
+    private static void siftUp(int[] heap, int pos, long[] freq, int[] keyCount, int[] minKey){
+
+        int item = heap[pos];
+        while (pos > 0){
+            int parent = (pos - 1) / 2;
+            if (!before(item, heap[parent], freq, keyCount, minKey)){
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    /**
+     * Orders nodes the way TreeNode.before does.
+     */
+    private static boolean before(int a, int b, long[] freq, int[] keyCount, int[] minKey){
+
+        if (freq[a] != freq[b]){
+            return freq[a] < freq[b];
+        }
+        if (keyCount[a] != keyCount[b]){
+            return keyCount[a] < keyCount[b];
+        }
+        return minKey[a] < minKey[b];
+    }
+
+    private static int countNodes(TreeNode node){
+
+        if (node.isLeaf()){
+            return 1;
+        }
+        return 1 + countNodes(node.left) + countNodes(node.right);
+    }
+
+    /**
+     * Copies a subtree, numbering its nodes in postorder from a first number.
+     * @return the number after the subtree's root
+     */
+    private int copy(TreeNode node, int next){
+
+        if (node.isLeaf()){
+            left[next] = -1;
+            right[next] = -1;
+            symbol[next] = node.key.charAt(0);
+            freq[next] = node.freq;
+            return next + 1;
+        }
+        int leftEnd = copy(node.left, next);
+        int rightEnd = copy(node.right, leftEnd);
+        left[rightEnd] = leftEnd - 1;
+        right[rightEnd] = rightEnd - 1;
+        symbol[rightEnd] = -1;
+        freq[rightEnd] = node.freq;
+        return rightEnd + 1;
+    }
+
+    private TreeNode toTreeNode(int node){
+
+        if (isLeaf(node)){
+            return new TreeNode(String.valueOf((char) symbol[node]), freq[node]);
+        }
+        return new TreeNode(toTreeNode(left[node]), toTreeNode(right[node]));
+    }
+}
@@ -0,0 +1,280 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Histogram counts the keys of input bytes, the first pass of building a code
+ * from real data instead of a frequency table written by hand.  The input is
+ * split into blocks that a ForkJoinPool counts on separate threads, each block
+ * into counters of its own that are merged when the blocks are joined.  The
+ * counts go straight to HuffmanCode.fromCounts or HuffmanQueue.fromCounts.
+ *
+ * The inner loop spreads the bytes over 4 tables of counters, so that a run
+ * of the same byte does not wait on one counter to be stored before it is
+ * loaded again, and counts byte values before the Alphabet folds them into keys.
+ *
+ * For very large inputs the histogram can be sampled: only 1 block of every N
+ * is counted, and the counts are scaled up to the size of the whole input.
+ * Every key of the alphabet is then given a count of at least 1, since keys
+ * that only occur in blocks that were not counted must still have a code.
+ *
+ * @author W. Sam Arrington
+ */
+public final class Histogram {
+
+    /**
+     * Default number of bytes in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    // Counter tables the inner loop spreads the bytes over
+    private static final int TABLES = 4;
+
+    private final Alphabet alphabet;
+    private final int blockSize;
+    private final int parallelism;
+    private int sampleEvery = 1;
+
+    /**
+     * Creates a histogram that counts blocks of DEFAULT_BLOCK_SIZE bytes.
+     * @param alphabet decides which key each byte is counted as
+     * @param parallelism number of threads to count with
+     */
+    public Histogram(Alphabet alphabet, int parallelism){
+        this(alphabet, DEFAULT_BLOCK_SIZE, parallelism);
+    }
+
+    /**
+     * Creates a histogram.
+     * @param alphabet decides which key each byte is counted as
+     * @param blockSize number of bytes in a block
+     * @param parallelism number of threads to count with
+     */
+    public Histogram(Alphabet alphabet, int blockSize, int parallelism){
+
+        if (blockSize < 1){
+            throw new IllegalArgumentException("Block size must be at least 1.");
+        }
+        if (parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.alphabet = alphabet;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Chooses how much of the input is counted.
+     * @param every 1 to count every block, or N to count only the first block
+     * of every N and scale the counts up
+     */
+    public void setSampling(int every){
+
+        if (every < 1){
+            throw new IllegalArgumentException("Sampling must count at least 1 block in every N.");
+        }
+        sampleEvery = every;
+    }
+
+    /**
+     * Counts the keys of part of a byte array.
+     * @param data the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return count of each key indexed by key, 256 long
+     */
+    public long[] count(byte[] data, int offset, int length){
+        return count(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Counts the keys of the bytes from the position to the limit of a buffer.
+     * The buffer is not changed.
+     * @param data the bytes
+     * @return count of each key indexed by key, 256 long
+     */
+    public long[] count(ByteBuffer data){
+
+        long total = data.remaining();
+        return toKeys(countBytes(data, 0), total);
+    }
+
+    /**
+     * Counts the keys of a file, which is mapped into memory a part at a time.
+     * @param file the file
+     * @return count of each key indexed by key, 256 long
+     * @throws IOException if the file cannot be read
+     */
+    public long[] count(Path file) throws IOException{
+
+        long[] byteCounts = new long[256];
+        long size;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)){
+            size = in.size();
+            // Parts are whole blocks, so sampling picks the same blocks as for one buffer
+            long partSize = Math.max(1, MappedFileCodec.CHUNK_SIZE / blockSize) * (long) blockSize;
+            for (long start = 0; start < size; start += partSize){
+                MappedByteBuffer part = in.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(partSize, size - start));
+                add(byteCounts, countBytes(part, start / blockSize));
+            }
+        }
+        return toKeys(byteCounts, size);
+    }
+
+    /**
+     * Counts each byte value of the sampled blocks of a buffer.
+     * @param data the bytes from its position to its limit
+     * @param firstBlock number of the buffer's first block in the whole input
+     * @return count of each byte value
+     */
+    private long[] countBytes(ByteBuffer data, long firstBlock){
+
+        int blockCount = (int) (((long) data.remaining() + blockSize - 1) / blockSize);
+        CountBlocks task = new CountBlocks(data, firstBlock, 0, blockCount);
+        if (blockCount <= 1 || parallelism == 1){
+            return task.compute();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Folds byte counts into key counts, scaling sampled counts up to the
+     * whole input.
+     */
+    private long[] toKeys(long[] byteCounts, long total){
+
+        long counted = 0;
+        for (long count : byteCounts){
+            counted += count;
+        }
+        long[] keyCounts = new long[256];
+        int[] keyOf = alphabet.keyOf;
+        for (int b = 0; b < byteCounts.length; b++){
+            if (keyOf[b] >= 0){
+                keyCounts[keyOf[b]] += byteCounts[b];
+            }
+        }
+        if (sampleEvery > 1 && counted < total){
+            double scale = counted == 0 ? 1 : (double) total / counted;
+            for (int b = 0; b < keyOf.length; b++){
+                if (keyOf[b] == b){
+                    keyCounts[b] = Math.max(1, Math.round(keyCounts[b] * scale));
+                }
+            }
+        }
+        return keyCounts;
+    }
+
+    private static void add(long[] sum, long[] counts){
+
+        for (int i = 0; i < sum.length; i++){
+            sum[i] += counts[i];
+        }
+    }
+
+    /**
+     * Counts a range of blocks, splitting the range in half until one block is
+     * left and adding up the halves' counts.
+     */
+    @SuppressWarnings("serial")
+    private final class CountBlocks extends RecursiveTask<long[]> {
+
+        private final ByteBuffer data;
+        private final long firstBlock;
+        private final int from;
+        private final int to;
+
+        CountBlocks(ByteBuffer data, long firstBlock, int from, int to){
+            this.data = data;
+            this.firstBlock = firstBlock;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute(){
+
+            if (to - from > 1 && parallelism > 1){
+                int middle = (from + to) >>> 1;
+                CountBlocks right = new CountBlocks(data, firstBlock, middle, to);
+                right.fork();
+                long[] counts = new CountBlocks(data, firstBlock, from, middle).compute();
+                add(counts, right.join());
+                return counts;
+            }
+
+            long[] counts = new long[256];
+            int[] tables = new int[TABLES * 256];
+            int base = data.position();
+            for (int b = from; b < to; b++){
+                if ((firstBlock + b) % sampleEvery != 0){
+                    continue;
+                }
+                long start = base + (long) b * blockSize;
+                int end = (int) Math.min(start + blockSize, data.limit());
+                countBlock(data, (int) start, end, tables);
+
+                // Blocks are emptied into longs so the int counters cannot overflow
+                for (int i = 0; i < tables.length; i++){
+                    counts[i & 0xFF] += tables[i];
+                }
+                Arrays.fill(tables, 0);
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Counts the byte values from one index of a buffer to another into 4
+     * tables of 256 counters, reading the array of a heap buffer directly and
+     * other buffers 8 bytes at a time.
+     */
+    private static void countBlock(ByteBuffer data, int start, int end, int[] tables){
+
+        if (data.hasArray()){
+            byte[] array = data.array();
+            int i = data.arrayOffset() + start;
+            int arrayEnd = data.arrayOffset() + end;
+            for (; i + 4 <= arrayEnd; i += 4){
+                tables[array[i] & 0xFF]++;
+                tables[256 + (array[i + 1] & 0xFF)]++;
+                tables[512 + (array[i + 2] & 0xFF)]++;
+                tables[768 + (array[i + 3] & 0xFF)]++;
+            }
+            for (; i < arrayEnd; i++){
+                tables[array[i] & 0xFF]++;
+            }
+            return;
+        }
+
+        int i = start;
+        for (; i + 8 <= end; i += 8){
+            long word = data.getLong(i);
+            tables[(int) (word >>> 56)]++;
+            tables[256 + ((int) (word >>> 48) & 0xFF)]++;
+            tables[512 + ((int) (word >>> 40) & 0xFF)]++;
+            tables[768 + ((int) (word >>> 32) & 0xFF)]++;
+            tables[(int) (word >>> 24) & 0xFF]++;
+            tables[256 + ((int) (word >>> 16) & 0xFF)]++;
+            tables[512 + ((int) (word >>> 8) & 0xFF)]++;
+            tables[768 + ((int) word & 0xFF)]++;
+        }
+        for (; i < end; i++){
+            tables[data.get(i) & 0xFF]++;
+        }
+    }
+}
@@ -5,27 +5,74 @@ package huffmanencoding;
  *
  * @author W. Sam Arrington
  */
-public final class HuffmanCode {
+public final class HuffmanCode implements LineCoder {
     
     /**
      * String array with key being in the first column and code
-     * in the second
+     * in the second.  Built on first use by getEncoding.
      */
-    public String[][] encoding;
+    private String[][] encoding;
 
     /**
-     * String containing the preorder traversal of the Huffman tree.
+     * String containing the preorder traversal of the Huffman tree.  Built on
+     * first use by getTrav.
      */
-    public String trav;
+    private String trav;
     
     /**
-     * String containing the encoding of each key in form 'A = 19'
+     * String containing the encoding of each key in form 'A = 19'.  Built on
+     * first use by getEncode.
      */
-    public String encode;
+    private String encode;
+
+    /**
+     * Longest code that fits in the codeBits table.
+     */
+    public static final int MAX_CODE_LENGTH = 64;
+
+    /**
+     * Code of each key indexed by the key's character value, right aligned.
+     */
+    final long[] codeBits;
+
+    /**
+     * Length of the code of each key indexed by the key's character value, 0 if
+     * the key is not in the code.
+     */
+    final byte[] codeLength;
+
+    /**
+     * The Huffman tree associated with the code.  A code made from a FlatTree
+     * only gets one when its report or tree is first asked for.
+     */
+    private BinaryTree huffTree;
+
+    /**
+     * The Huffman tree as flat arrays, walked by the TREE decode engine.  Null
+     * for codes made without a tree.
+     */
+    final FlatTree flatTree;
+
+    /**
+     * Ways of decoding encoded text.  TREE walks the Huffman tree one bit at a
+     * time and TABLE resolves several bits per lookup with a TableDecoder.
+     */
+    public enum DecodeEngine {
+        TREE, TABLE
+    }
+
     /**
-     * The Huffman tree associated with the code.
+     * Lookup tables used by the TABLE decode engine.
      */
-    public BinaryTree huffTree;
+    public final TableDecoder tableDecoder;
+
+    private DecodeEngine engine = DecodeEngine.TABLE;
+
+    // Set once the code is shared, after which it cannot be changed
+    private volatile boolean frozen;
+
+    // Canonical form of a frozen code, made on first use
+    private volatile HuffmanCode canonical;
     
     
     /**
@@ -35,24 +82,310 @@ public final class HuffmanCode {
      * @param HuffmanTree Huffman tree used to generate encoding
      */
     HuffmanCode(BinaryTree HuffmanTree){
-        
+        this(HuffmanTree, FlatTree.of(HuffmanTree));
+    }
+
+    /**
+     * HuffmanCode made from a Huffman tree and its flat copy, for callers that
+     * have already made the copy.
+     * @param HuffmanTree Huffman tree used to generate encoding
+     * @param tree the same tree as flat arrays
+     */
+    HuffmanCode(BinaryTree HuffmanTree, FlatTree tree){
+
+        this(tree);
         huffTree = HuffmanTree;
-        
+    }
+
+    /**
+     * HuffmanCode made from a flat Huffman tree, with no TreeNodes until a
+     * report is asked for.
+     * @param tree Huffman tree used to generate encoding
+     */
+    HuffmanCode(FlatTree tree){
+
+        flatTree = tree;
+
+        // Sizes the code tables to the largest key
+        int maxKey = tree.maxSymbol();
+        codeBits = new long[maxKey + 1];
+        codeLength = new byte[maxKey + 1];
+        tree.assignCodes(codeBits, codeLength);
+
+        tableDecoder = new TableDecoder(tree);
+    }
+
+    /**
+     * HuffmanCode made from the code of each key without a Huffman tree.  Only
+     * the TABLE decode engine can be used and the preorder traversal is empty.
+     * @param codeBits code of each key indexed by key, right aligned
+     * @param codeLength length of the code of each key, 0 if the key is not in the code
+     * @throws IllegalArgumentException if the code is not prefix free and complete
+     */
+    HuffmanCode(long[] codeBits, byte[] codeLength){
+
+        huffTree = null;
+        flatTree = null;
+        this.codeBits = codeBits.clone();
+        this.codeLength = codeLength.clone();
+        tableDecoder = new TableDecoder(this.codeBits, this.codeLength,
+                TableDecoder.DEFAULT_LOOKUP_BITS);
+    }
+
+    /**
+     * Makes the canonical Huffman code for a set of code lengths.
+     * @param codeLength length of the code of each key indexed by key, 0 if the
+     * key is not in the code
+     * @return the canonical code
+     * @throws IllegalArgumentException if the lengths do not make a complete code
+     */
+    public static HuffmanCode fromCodeLengths(byte[] codeLength){
+        return new HuffmanCode(CanonicalCode.assignCodes(codeLength), codeLength);
+    }
+
+    /**
+     * Makes the Huffman code for symbols counted from data, such as the 256
+     * byte values of a binary file or the ids of a word token alphabet.  Every
+     * symbol counted at least once gets a code.  A single symbol is given a
+     * partner with no count so that it still gets a one bit code, and if the
+     * tree is deeper than MAX_CODE_LENGTH the optimal length limited code is
+     * used instead.
+     * @param counts number of times each symbol occurs indexed by symbol
+     * @return the code, with a Huffman tree unless it had to be length limited
+     * @throws IllegalArgumentException if no symbol is counted or a count is negative
+     */
+    public static HuffmanCode fromCounts(long[] counts){
+
+        FlatTree tree = countTree(counts);
+        if (tree.depth() <= MAX_CODE_LENGTH){
+            return new HuffmanCode(tree);
+        }
+        // Too deep for the code tables, symbols not counted are left out
+        long[] present = new long[tree.maxSymbol() + 1];
+        for (int key = 0; key < present.length; key++){
+            present[key] = counts[key] > 0 ? counts[key] : -1;
+        }
+        return fromCodeLengths(LengthLimitedCode.codeLengths(present, MAX_CODE_LENGTH));
+    }
+
+    /**
+     * Finds the code lengths fromCounts would give without making the code or
+     * its decode tables, for callers that weigh what a code would cost before
+     * deciding to use it.
+     * @param counts number of times each symbol occurs indexed by symbol
+     * @return length of the code of each symbol indexed by symbol
+     * @throws IllegalArgumentException if no symbol is counted or a count is negative
+     */
+    static byte[] codeLengths(long[] counts){
+
+        FlatTree tree = countTree(counts);
+        if (tree.depth() > MAX_CODE_LENGTH){
+            return fromCounts(counts).codeLength;
+        }
+        long[] codeBits = new long[tree.maxSymbol() + 1];
+        byte[] codeLength = new byte[codeBits.length];
+        tree.assignCodes(codeBits, codeLength);
+        return codeLength;
+    }
+
+    /**
+     * Builds the Huffman tree of counted symbols, giving a single symbol a
+     * partner with no count.
+     */
+    private static FlatTree countTree(long[] counts){
+
+        int keys = 0;
+        for (int key = 0; key < counts.length; key++){
+            if (counts[key] < 0){
+                throw new IllegalArgumentException("Count of symbol " + key + " is negative.");
+            }
+            if (counts[key] > 0){
+                keys++;
+            }
+        }
+        if (keys == 0){
+            throw new IllegalArgumentException("A code needs at least one symbol counted.");
+        }
+
+        int[] symbols = new int[Math.max(keys, 2)];
+        long[] freqs = new long[symbols.length];
+        keys = 0;
+        for (int key = 0; key < counts.length; key++){
+            if (counts[key] > 0){
+                symbols[keys] = key;
+                freqs[keys++] = counts[key];
+            }
+        }
+        if (keys == 1){
+            symbols[1] = symbols[0] == 0 ? 1 : 0;
+        }
+
+        return FlatTree.build(symbols, freqs);
+    }
+
+    /**
+     * Makes the canonical code with the same code lengths as this code.  It
+     * compresses exactly as well and can be sent as its code lengths alone.  A
+     * frozen code makes its canonical code once and hands out that one, also
+     * frozen, every time.
+     * @return the canonical code
+     */
+    public HuffmanCode canonical(){
+
+        if (!frozen){
+            return fromCodeLengths(codeLength);
+        }
+        HuffmanCode result = canonical;
+        if (result == null){
+            result = fromCodeLengths(codeLength).freeze();
+            canonical = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return length of the code of each key indexed by key, 0 if the key is not
+     * in the code
+     */
+    public byte[] getCodeLengths(){
+        return codeLength.clone();
+    }
+
+    /**
+     * Generates the preorder traversal, the encoding string and the encoding
+     * array the first time one of them is asked for.
+     */
+    private synchronized void makeReport(){
+
+        if (encoding != null){
+            return;
+        }
+
         StringBuffer encodeBuff = new StringBuffer();
         StringBuffer travBuff = new StringBuffer();
-        MakeHuffmanCode(HuffmanTree, "", encodeBuff, travBuff);
+        BinaryTree tree = getHuffTree();
+        if (tree != null){
+            MakeHuffmanCode(tree, "", encodeBuff, travBuff);
+        }else{
+            // Without a tree the codes are listed in key order
+            String newLine = System.getProperty("line.separator");
+            for (int key = 0; key < codeLength.length; key++){
+                if (codeLength[key] > 0){
+                    encodeBuff.append(keyName(key)).append(" = ");
+                    for (int b = codeLength[key] - 1; b >= 0; b--){
+                        encodeBuff.append((char) ('0' + ((codeBits[key] >>> b) & 1)));
+                    }
+                    encodeBuff.append(newLine);
+                }
+            }
+        }
         
         trav = travBuff.toString();
         encode = encodeBuff.toString();
 
         // Splits encode string and forms array encoding array and sorts by length of code
         String[] lines = encode.split(System.getProperty("line.separator"));
-        encoding = new String[lines.length][2];
-        for (int i = 0; i < encoding.length; i++){
+        String[][] entries = new String[lines.length][2];
+        for (int i = 0; i < entries.length; i++){
             String[] codeEntry = lines[i].split(" = ");
-            encoding[i] = codeEntry;          
+            entries[i] = codeEntry;          
+        }
+        sortByLength(entries);
+        encoding = entries;
+    }
+
+    /**
+     * @return the Huffman tree of the code, made from the flat tree on first
+     * use, or null for a code made without a tree
+     */
+    public synchronized BinaryTree getHuffTree(){
+
+        if (huffTree == null && flatTree != null){
+            huffTree = flatTree.toBinaryTree();
+        }
+        return huffTree;
+    }
+
+    /**
+     * @return a copy of the array with key in the first column and code in the
+     * second, sorted by length of code
+     */
+    public String[][] getEncoding(){
+
+        makeReport();
+        String[][] copy = new String[encoding.length][];
+        for (int i = 0; i < copy.length; i++){
+            copy[i] = encoding[i].clone();
         }
-        sort();
+        return copy;
+    }
+
+    /**
+     * @return the preorder traversal of the Huffman tree, one 'key: frequency' per line
+     */
+    public String getTrav(){
+        makeReport();
+        return trav;
+    }
+
+    /**
+     * @return the encoding of each key in form 'A = 0110' in preorder
+     */
+    public String getEncode(){
+        makeReport();
+        return encode;
+    }
+
+    /**
+     * Selects how decodeLine decodes encoded text.  Both engines give the same
+     * result, the tree walk is kept to validate the table decoder against.
+     * @param engine the decode engine to use
+     */
+    public void setDecodeEngine(DecodeEngine engine){
+
+        checkNotFrozen();
+        if (engine == DecodeEngine.TREE && flatTree == null){
+            throw new IllegalStateException("Code has no Huffman tree to walk.");
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * @return true if the code has a Huffman tree, which the TREE decode engine needs
+     */
+    public boolean hasTree(){
+        return flatTree != null;
+    }
+
+    /**
+     * Makes the code unchangeable so it can be shared between threads, as the
+     * codes handed out by CodecRegistry are.  setDecodeEngine and sort then throw.
+     * @return this code
+     */
+    HuffmanCode freeze(){
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * @return true if the code is shared and cannot be changed
+     */
+    public boolean isFrozen(){
+        return frozen;
+    }
+
+    private void checkNotFrozen(){
+
+        if (frozen){
+            throw new IllegalStateException("Code is shared and cannot be changed.");
+        }
+    }
+
+    /**
+     * @return the decode engine used by decodeLine
+     */
+    public DecodeEngine getDecodeEngine(){
+        return engine;
     }
     
     /**
@@ -66,11 +399,11 @@ public final class HuffmanCode {
             StringBuffer encode, StringBuffer trav){
         
         String newLine = System.getProperty("line.separator");
-        trav.append(tree.root.key + ": " + Integer.toString(tree.root.freq) + newLine);
+        trav.append(keyNames(tree.root.keys()) + ": " + Long.toString(tree.root.freq) + newLine);
         
         // Checks to see if leaf, if so it adds encoding to string
         if (tree.root.left == null && tree.root.right == null){
-            encode.append(tree.root.key + " = " + code + newLine);
+            encode.append(keyNames(tree.root.key) + " = " + code + newLine);
             return;
         }
         
@@ -81,13 +414,57 @@ public final class HuffmanCode {
         MakeHuffmanCode(new BinaryTree(tree.root.right), code + "1", encode, trav);
     }
     
+    /**
+     * Names a key in a report, a printable key as itself and any other, such as
+     * a control byte or a token id, as '#' and its number.
+     * @param key the key
+     * @return the name of the key
+     */
+    static String keyName(int key){
+        return printable(key) ? String.valueOf((char) key) : "#" + key;
+    }
+
+    /**
+     * Names each key of a string of keys with keyName.
+     */
+    private static String keyNames(String keys){
+
+        for (int i = 0; i < keys.length(); i++){
+            if (!printable(keys.charAt(i))){
+                StringBuilder names = new StringBuilder();
+                for (int j = 0; j < keys.length(); j++){
+                    names.append(keyName(keys.charAt(j)));
+                }
+                return names.toString();
+            }
+        }
+        return keys;
+    }
+
+    private static boolean printable(int key){
+        return key > ' ' && key < 0x7F && key != '#';
+    }
+
     /**
      * Sorts the array containing the code by length.  Shorter length codes corresponding
      * to more frequently used characters so sorting allows for you to search for
-     * key/code quickly
+     * key/code quickly.  The array is sorted when it is made, so this only makes it.
+     * @throws IllegalStateException if the code is frozen
      */
     public void sort(){
-        
+
+        checkNotFrozen();
+        synchronized (this){
+            makeReport();
+            sortByLength(encoding);
+        }
+    }
+
+    /**
+     * Bubble sorts entries of key and code by length of code.
+     */
+    private static void sortByLength(String[][] encoding){
+
         for (int i = 0; i < encoding.length - 1 ;  i++){
             int exch = 0;
             for(int j = 0; j < encoding.length - 1 - i; j++ ){
@@ -106,38 +483,42 @@ public final class HuffmanCode {
         }
     }
     
-    /**
-     * Searches for key in encoding array and returns the encoding if found.
-     * @param key the character that needs to be encoded.
-     * @return the encoding for the desired key
-     */
-    private String getCode(char key){
-        
-        for (int i = 0; i < encoding.length; i++){
-            if (encoding[i][0].charAt(0) == key){
-                return encoding[i][1];
-            }
-        }
-        System.err.println("Character not found. Character invalid.");
-        return null;
-        
-    }
-    
     /**
      * Takes a plain text and encodes it
      * @param clearLine String of plain text
      * @return encoded version of input text
      */
+    @Override
     public String encodeLine(String clearLine){
         
-        String cleanLine = clearLine.replaceAll("[^a-zA-Z]","").toUpperCase();
-        StringBuffer encodeText = new StringBuffer();
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        int[] keyOf = Alphabet.LETTERS.keyOf;
+        StringBuilder encodeText = new StringBuilder(clearLine.length() * 4);
+        int symbols = 0;
         
-        for (int i = 0; i < cleanLine.length(); i++){
-            String letterCode = getCode(cleanLine.charAt(i));
-            encodeText.append(letterCode);
+        // Letters are looked up in upper case and everything else is skipped
+        for (int i = 0; i < clearLine.length(); i++){
+            char c = clearLine.charAt(i);
+            int key = c < keyOf.length ? keyOf[c] : -1;
+            if (key < 0){
+                continue;
+            }
+            symbols++;
+            int length = key < codeLength.length ? codeLength[key] : 0;
+            if (length == 0){
+                // A key missing from the code has always been written out as null
+                System.err.println("Character not found. Character invalid.");
+                encodeText.append("null");
+                continue;
+            }
+            long bits = codeBits[key];
+            for (int b = length - 1; b >= 0; b--){
+                encodeText.append((char) ('0' + ((bits >>> b) & 1)));
+            }
         }
         
+        CodecMetrics.recordEncode("line", symbols, encodeText.length(), start, event);
         return(encodeText.toString());
     }
     
@@ -146,27 +527,31 @@ public final class HuffmanCode {
      * @param code encoded text
      * @return decoded text
      */
+    @Override
     public String decodeLine(String code){
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        String clearText = engine == DecodeEngine.TABLE ? tableDecoder.decode(code)
+                : treeDecodeLine(code);
+        if (clearText == null){
+            return("Not a valid code.  Only 1s or 0s allowed.");
+        }
+
+        CodecMetrics.recordDecode("line", code.length(), clearText.length(), start, event);
+        return clearText;
+    }
+
+    /**
+     * Decodes a line of encoded text by walking the Huffman tree one bit at a time
+     * @param code encoded text
+     * @return decoded text, or null if the code contains anything other than 1s and 0s
+     */
+    private String treeDecodeLine(String code){
         
-        StringBuffer clearText = new StringBuffer();
-        
-        TreeNode topRoot = huffTree.root;
-        TreeNode check = huffTree.root;
-        
-        for (int i = 0; i < code.length(); i++){
-  
-            if (code.charAt(i) == '0'){
-                    check = check.left;
-            }else if (code.charAt(i) == '1'){
-                    check = check.right;
-            }else{
-                return("Not a valid code.  Only 1s or 0s allowed.");
-            }
-            
-            if (check.key.length() == 1){
-                clearText.append(check.key);
-                check = topRoot;
-            }
+        StringBuilder clearText = new StringBuilder();
+        if (!flatTree.decode(code, clearText)){
+            return null;
         }
         
         return (clearText.toString());
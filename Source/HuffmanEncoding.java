@@ -1,6 +1,8 @@
 
 package huffmanencoding;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 /**
  * HuffmanEncoding class contains the necessary tools to Huffman encode plain text and 
@@ -29,6 +31,8 @@ public class HuffmanEncoding {
      */
     public static BinaryTree MakeHuffmanTree(HuffmanQueue que){
         
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginTreeBuild();
         BinaryTree HuffTree = new BinaryTree();
         
         
@@ -40,94 +44,248 @@ public class HuffmanEncoding {
             // Second minimum frequency
             TreeNode temp2 = que.remove();
             
-            // New node which is sum of first two nodes
-            String tempCkey = StringSort(temp1.key + temp2.key);
-            int tempCfreq = temp1.freq + temp2.freq;
-            TreeNode tempC = new TreeNode(tempCkey, tempCfreq);
-            
-            /* Setting first min and second min as children of summed node and
-            root to summed node
+            /* New node which is sum of first two nodes, with first min and
+            second min as children.  Root is set to summed node
             */
-            tempC.left = temp1;
-            tempC.right = temp2;
+            TreeNode tempC = new TreeNode(temp1, temp2);
             HuffTree.root = tempC;
             
             // Adding summed node to Huffman Queue
             que.add(tempC);                  
         }
         
-        
+        if (!HuffTree.TreeEmpty()){
+            CodecMetrics.recordTreeBuild(HuffTree, start, event);
+        }
         return HuffTree;
     }
+
     /**
-     * Sorts a string of letters with no spaces alphabetically with bubble sort.  
-     * @param input string to be sorted
-     * @return sorted string
+     * Options given after the six file names that decide how files are written.
      */
-    private static String StringSort(String input){
-        
-        // Breaks string into array of values
-        int length = input.length();
-        String[] inArray = input.split("");
-        
-        // Sorts array of values
-        for (int i = 0; i < length - 1; i++){
-            for (int j = 0; j < length - i - 1; j++){
-                if (inArray[j].charAt(0) > inArray[j+1].charAt(0)){
-                    String temp = inArray[j];
-                    inArray[j] = inArray[j+1];
-                    inArray[j+1] = temp;
-                }
+    private static final class Options {
+
+        // Encoded files are packed binary files rather than text
+        boolean packed;
+
+        // Packed files carry a canonical code as code lengths only
+        boolean canonical;
+
+        // How encoded text is decoded
+        HuffmanCode.DecodeEngine engine = HuffmanCode.DecodeEngine.TABLE;
+
+        // Longest code allowed, 0 for no limit
+        int maxLength;
+
+        // Threads encoding packed blocks, 0 to encode as one message
+        int parallelism;
+
+        // Block index records sync points for parallel decoding
+        boolean syncPoints;
+
+        // Bitstreams the symbols are dealt to, 0 for a single bitstream
+        int streams;
+
+        // Symbols between checkpoints of an indexed file, 0 for no index
+        int indexInterval;
+
+        // Most codes of an order-1 context file, 0 for a single code
+        int contextTables;
+
+        // Each block is sent raw, with a new code or with the last one, whichever is smallest
+        boolean blockCode;
+
+        // Encoded files are written and read as Huffman streams
+        boolean stream;
+
+        // Stream files are encoded and decoded as bytes through mapped files
+        boolean mapped;
+
+        // Text files are coded in one pass with no frequency table
+        boolean adaptive;
+
+        // Frequency table is counted from the clear text, 0 for no counting or
+        // N to count 1 block of every N
+        int countSampling;
+    }
+
+    /**
+     * Reads the optional arguments that follow the six file names.
+     * @param args command line arguments
+     * @return the options that decide how the files are written
+     */
+    private static Options readOptions(String[] args){
+
+        Options options = new Options();
+        for (int i = 6; i < args.length; i++){
+            String lower = args[i].toLowerCase();
+            if (lower.equals("-decoder=tree")){
+                options.engine = HuffmanCode.DecodeEngine.TREE;
+            }else if (lower.equals("-decoder=table")){
+                options.engine = HuffmanCode.DecodeEngine.TABLE;
+            }else if (lower.startsWith("-maxlen=") && lower.substring(8).matches("\\d{1,2}")
+                    && Integer.parseInt(lower.substring(8)) > 0
+                    && Integer.parseInt(lower.substring(8)) <= HuffmanCode.MAX_CODE_LENGTH){
+                options.maxLength = Integer.parseInt(lower.substring(8));
+            }else if (lower.startsWith("-parallel=") && lower.substring(10).matches("\\d{1,4}")
+                    && Integer.parseInt(lower.substring(10)) > 0){
+                options.packed = true;
+                options.parallelism = Integer.parseInt(lower.substring(10));
+            }else if (lower.equals("-interleave=2") || lower.equals("-interleave=4")){
+                options.packed = true;
+                options.streams = Integer.parseInt(lower.substring(12));
+            }else if (lower.startsWith("-index=") && lower.substring(7).matches("\\d{1,9}")
+                    && Integer.parseInt(lower.substring(7)) > 0){
+                options.packed = true;
+                options.indexInterval = Integer.parseInt(lower.substring(7));
+            }else if (lower.equals("-blocks")){
+                options.packed = true;
+                options.blockCode = true;
+            }else if (lower.equals("-context")){
+                options.packed = true;
+                options.contextTables = ContextCode.DEFAULT_MAX_TABLES;
+            }else if (lower.startsWith("-context=") && lower.substring(9).matches("\\d{1,2}")
+                    && Integer.parseInt(lower.substring(9)) > 0
+                    && Integer.parseInt(lower.substring(9)) <= ContextCode.MAX_TABLES){
+                options.packed = true;
+                options.contextTables = Integer.parseInt(lower.substring(9));
+            }else if (args[i].equalsIgnoreCase("-stream")){
+                options.packed = true;
+                options.stream = true;
+            }else if (args[i].equalsIgnoreCase("-mmap")){
+                options.packed = true;
+                options.stream = true;
+                options.mapped = true;
+            }else if (args[i].equalsIgnoreCase("-count")){
+                options.countSampling = Math.max(options.countSampling, 1);
+            }else if (lower.startsWith("-sample=") && lower.substring(8).matches("\\d{1,6}")
+                    && Integer.parseInt(lower.substring(8)) > 0){
+                options.countSampling = Integer.parseInt(lower.substring(8));
+            }else if (args[i].equalsIgnoreCase("-adaptive")){
+                options.adaptive = true;
+            }else if (args[i].equalsIgnoreCase("-sync")){
+                options.syncPoints = true;
+            }else if (args[i].equalsIgnoreCase("-packed")){
+                options.packed = true;
+            }else if (args[i].equalsIgnoreCase("-canonical")){
+                options.packed = true;
+                options.canonical = true;
+            }else{
+                System.err.println("Unknown option " + args[i]);
+                System.exit(1);
             }
         }
-        
-        // Rejoins array into string
-        String output = String.join("", inArray);
-        return output;
+        return options;
     }
-       
+
     /**
-     * 
-     * @param args 1st is *.txt input file with frequency table in form 'A - 19'.  All
-     * entries must be on separate rows.  Only uppercase letters can be used.
-     * 2nd is output *.txt file name for preorder traversal of Huffman tree and the encoding list.
-     * 3rd is an *.txt input file containing clear text to be encoded.  All 
-     * punctuation and spaces will be ignored.  Lowercase letters will be treated
-     * as uppercase.  
-     * 4th is a *.txt output file name for the encoding of the inputted clear text.
-     * 5th is an input *.txt file containing a message to be decoded.
-     * 6th is a *.txt output file name for the decoded message.
+     * Encodes every letter of a plain text file into one packed binary file.
+     * @param code HuffmanCode used to encode
+     * @param inFileName plain text file
+     * @param outFileName packed binary file to write
+     * @param options decide the kind of packed file written
      * @throws IOException
      */
-    public static void main(String[] args) throws IOException {
-        
-        // Creates original HuffmanQueue from frequency table input file
-        String ftFileName = args[0];
-        HuffmanQueue fTable = new HuffmanQueue(ftFileName);
-        
-        // Creates HuffmanTree based on frequency table input file using HuffmanQueue
-        BinaryTree HuffmanTree = MakeHuffmanTree(fTable);
-        
-        // Creates a file for preorder tree traversal and encoding
-        File outputFileTE = new File(args[1]);
-        FileWriter fwTE = new FileWriter(outputFileTE);
-        PrintWriter outputTE = new PrintWriter(fwTE);
-        
-        // Writes tree traversal and encoding to file
-        HuffmanCode Encoding = new HuffmanCode(HuffmanTree);
-        outputTE.println("The tree in preorder is:");
-        outputTE.println(Encoding.trav);
-        outputTE.println("The Huffman encoding as they appear in preorder is:");        
-        outputTE.println(Encoding.encode);
-        outputTE.close();
-        
+    private static void encodePackedFile(HuffmanCode code, String inFileName,
+            String outFileName, Options options) throws IOException{
+
+        // Blocks are encoded from the mapped file a window at a time
+        if (options.parallelism > 0){
+            ParallelEncoder encoder = new ParallelEncoder(code,
+                    ParallelEncoder.DEFAULT_BLOCK_SIZE, options.parallelism);
+            encoder.setSyncPoints(options.syncPoints);
+            encoder.encodeFile(Paths.get(inFileName), Paths.get(outFileName));
+            return;
+        }
+
+        StringBuilder clearText = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(inFileName)))){
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = br.read(buffer)) > 0){
+                clearText.append(buffer, 0, n);
+            }
+        }
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outFileName))){
+            if (options.streams > 0){
+                InterleavedCode.encode(code, clearText.toString(), options.streams, out);
+            }else if (options.indexInterval > 0){
+                IndexedCode.encode(code, clearText.toString(), options.indexInterval, out);
+            }else if (options.contextTables > 0){
+                ContextCode.build(clearText, options.contextTables).encode(clearText, out);
+            }else if (options.blockCode){
+                byte[] bytes = clearText.toString().getBytes(StandardCharsets.ISO_8859_1);
+                new BlockCode(Alphabet.LETTERS, BlockCode.DEFAULT_BLOCK_SIZE)
+                        .encode(bytes, 0, bytes.length, out);
+            }else if (options.canonical){
+                PackedCode.encodeCanonical(code, clearText.toString(), out);
+            }else{
+                PackedCode.encode(code, clearText.toString(), out);
+            }
+        }
+    }
+
+    /**
+     * Encodes a plain text file into a Huffman stream file a buffer at a time,
+     * whatever its size or line structure.
+     * @param code HuffmanCode used to encode
+     * @param inFileName plain text file
+     * @param outFileName Huffman stream file to write
+     * @throws IOException
+     */
+    private static void encodeStreamFile(HuffmanCode code, String inFileName,
+            String outFileName) throws IOException{
+
+        try (InputStream in = new FileInputStream(inFileName);
+                OutputStream out = new HuffmanOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(outFileName)), code)){
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0){
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Decodes a Huffman stream file into a text file a buffer at a time.
+     * @param inFileName Huffman stream file
+     * @param outFileName text file to write
+     * @throws IOException if the stream file is not valid
+     */
+    private static void decodeStreamFile(String inFileName, String outFileName)
+            throws IOException{
+
+        try (InputStream in = new HuffmanInputStream(
+                        new BufferedInputStream(new FileInputStream(inFileName)));
+                OutputStream out = new FileOutputStream(outFileName)){
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0){
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Encodes a plain text file line by line into a text file of 1s and 0s,
+     * writing each line next to its encoding.
+     * @param coder code used to encode
+     * @param inFileName plain text file
+     * @param outFileName text file to write
+     * @throws IOException
+     */
+    private static void encodeTextFile(LineCoder coder, String inFileName,
+            String outFileName) throws IOException{
+
         // Reads input clear text file
-        String ctFileName = args[2];
-        FileInputStream inCT = new FileInputStream(ctFileName);
+        FileInputStream inCT = new FileInputStream(inFileName);
         BufferedReader brCT = new BufferedReader(new InputStreamReader(inCT));
         
         // Creates file to output encoding message from input clear text file
-        File outputFileENC = new File(args[3]);
+        File outputFileENC = new File(outFileName);
         FileWriter fwENC = new FileWriter(outputFileENC);
         PrintWriter outputENC = new PrintWriter(fwENC);
         outputENC.println("The encoding from the input clear text"
@@ -141,24 +299,73 @@ public class HuffmanEncoding {
             
             String clearLine = brCT.readLine();
             // Removes unprinted characters
-            clearLine = clearLine.replaceAll("[^\\x20-\\x7e]", "");
-            clearLine = clearLine.trim();
+            clearLine = printable(clearLine);
             if (clearLine.length() > 0){
-                String encodeLine = Encoding.encodeLine(clearLine);
+                String encodeLine = coder.encodeLine(clearLine);
                 outputENC.println(clearLine + ": " + encodeLine);
                 outputENC.println();
             }
         }
         outputENC.close();
-        
-        
+    }
+
+    /**
+     * Drops every character of a line outside the printable ASCII range and
+     * the spaces at either end, with a loop rather than a regular expression.
+     * @param line line of text
+     * @return the printable part of the line, the line itself if it was all printable
+     */
+    private static String printable(String line){
+
+        int from = 0;
+        int to = line.length();
+        while (from < to && !isPrintable(line.charAt(from))){
+            from++;
+        }
+        while (to > from && !isPrintable(line.charAt(to - 1))){
+            to--;
+        }
+        StringBuilder kept = null;
+        for (int i = from; i < to; i++){
+            char c = line.charAt(i);
+            if (c < 0x20 || c > 0x7E){
+                if (kept == null){
+                    kept = new StringBuilder(to - from).append(line, from, i);
+                }
+            }else if (kept != null){
+                kept.append(c);
+            }
+        }
+        if (kept != null){
+            return kept.toString();
+        }
+        return from == 0 && to == line.length() ? line : line.substring(from, to);
+    }
+
+    /**
+     * @return true for printable ASCII characters other than the space
+     */
+    private static boolean isPrintable(char c){
+        return c > 0x20 && c <= 0x7E;
+    }
+
+    /**
+     * Decodes a text file of 1s and 0s line by line, writing each line next to
+     * its decoding.
+     * @param coder code used to decode
+     * @param inFileName text file of encoded lines
+     * @param outFileName text file to write
+     * @throws IOException
+     */
+    private static void decodeTextFile(LineCoder coder, String inFileName,
+            String outFileName) throws IOException{
+
         // Creates reader for input file with encoded text
-        String enFileName = args[4];
-        FileInputStream inEN = new FileInputStream(enFileName);
+        FileInputStream inEN = new FileInputStream(inFileName);
         BufferedReader brEN = new BufferedReader(new InputStreamReader(inEN));
         
         // Creates file to output dencoded message from input encoded text file
-        File outputFileDC = new File(args[5]);
+        File outputFileDC = new File(outFileName);
         FileWriter fwDC = new FileWriter(outputFileDC);
         PrintWriter outputDC = new PrintWriter(fwDC);
         outputDC.println("The decoding from the input encoded text file with "
@@ -170,17 +377,288 @@ public class HuffmanEncoding {
         */
         while (brEN.ready()){
             String codeLine = brEN.readLine();
-            codeLine = codeLine.replaceAll("[^\\x20-\\x7e]", "");
-            codeLine = codeLine.trim();
+            codeLine = printable(codeLine);
             if (codeLine.length() > 0){
-                String clearLine = Encoding.decodeLine(codeLine);
+                String clearLine = coder.decodeLine(codeLine);
                 outputDC.println(codeLine + ": " + clearLine);
                 outputDC.println();
             }
         }
         
-        outputDC.close();        
+        outputDC.close();
+    }
+
+    /**
+     * Encodes and decodes the text files with adaptive Huffman codes, which are
+     * built as the text is read rather than from a frequency table.  The
+     * decoder starts from an empty code like the encoder did, so the encoded
+     * lines must be decoded from the start of the file that holds them.
+     * @param args command line arguments, the 1st file is not used
+     * @throws IOException
+     */
+    private static void codeAdaptively(String[] args) throws IOException{
+
+        AdaptiveHuffmanCode encoder = new AdaptiveHuffmanCode();
+        encodeTextFile(encoder, args[2], args[3]);
+        decodeTextFile(new AdaptiveHuffmanCode(), args[4], args[5]);
+
+        try (PrintWriter outputTE = new PrintWriter(new FileWriter(args[1]))){
+            outputTE.println("The adaptive encoding after the clear text file is:");
+            outputTE.println(encoder.getEncode());
+        }
+    }
+
+    /**
+     * Decodes a packed binary file and writes the decoded text to a file,
+     * followed by a line separator.  Block files are decoded a window of
+     * blocks at a time, whatever their size.
+     * @param inFileName packed binary file
+     * @param outFileName text file to write
+     * @param parallelism number of threads to decode blocks on
+     * @throws IOException if the packed file is not valid
+     */
+    private static void decodePackedFile(String inFileName, String outFileName,
+            int parallelism) throws IOException{
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outFileName))){
+            new ParallelDecoder(parallelism).decode(Paths.get(inFileName), out);
+            out.write(System.lineSeparator().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+       
+    /**
+     * Counts the letters of a clear text file with a Histogram and writes them
+     * as a frequency table.
+     * @param textFileName clear text file to count
+     * @param tableFileName frequency table file to write
+     * @param options the sampling and the number of threads
+     * @return queue of the counted letters
+     * @throws IOException if a file cannot be read or written
+     */
+    private static HuffmanQueue countTable(String textFileName, String tableFileName,
+            Options options) throws IOException{
+
+        int threads = options.parallelism > 0 ? options.parallelism
+                : Runtime.getRuntime().availableProcessors();
+        Histogram histogram = new Histogram(Alphabet.LETTERS, threads);
+        histogram.setSampling(options.countSampling);
+        long[] counts = histogram.count(Paths.get(textFileName));
+        long letters = 0;
+        for (long count : counts){
+            letters += count;
+        }
+        if (letters == 0){
+            System.err.println(textFileName + " has no letters to count.");
+            System.exit(1);
+        }
+        HuffmanQueue.writeTable(counts, tableFileName);
+        return HuffmanQueue.fromCounts(counts);
+    }
+
+    /**
+     * Encodes or decodes every file of a directory or manifest with BatchCoder.
+     * A file that fails is reported in the summary without stopping the others,
+     * and the program ends with status 1 once all are done if any failed.
+     * @param args '-batch=encode', a frequency table, the input directory or
+     * manifest and the output directory, or '-batch=decode', the input directory
+     * or manifest and the output directory, then optionally '-threads=N'
+     * @throws IOException if the input cannot be listed
+     */
+    private static void runBatch(String[] args) throws IOException{
+
+        boolean decode = args[0].equalsIgnoreCase("-batch=decode");
+        if (!decode && !args[0].equalsIgnoreCase("-batch=encode")){
+            System.err.println("Unknown option " + args[0]);
+            System.exit(1);
+        }
+        int files = decode ? 2 : 3;
+        int concurrency = Runtime.getRuntime().availableProcessors() * 2;
+        if (args.length == files + 2 && args[files + 1].toLowerCase().startsWith("-threads=")
+                && args[files + 1].substring(9).matches("\\d{1,4}")
+                && Integer.parseInt(args[files + 1].substring(9)) > 0){
+            concurrency = Integer.parseInt(args[files + 1].substring(9));
+        }else if (args.length != files + 1){
+            System.err.println(decode ? "Usage: -batch=decode <input directory or manifest>"
+                    + " <output directory> [-threads=N]"
+                    : "Usage: -batch=encode <frequency table> <input directory or manifest>"
+                    + " <output directory> [-threads=N]");
+            System.exit(1);
+        }
+
+        BatchCoder batch = new BatchCoder(concurrency);
+        int failed;
+        if (decode){
+            failed = batch.decode(Paths.get(args[1]), Paths.get(args[2]), System.out);
+        }else{
+            failed = batch.encode(Paths.get(args[2]), Paths.get(args[1]), Paths.get(args[3]),
+                    System.out);
+        }
+        if (failed > 0){
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 
+     * @param args 1st is *.txt input file with frequency table in form 'A - 19'.  All
+     * entries must be on separate rows.  Only uppercase letters can be used,
+     * and symbol numbers such as '#10' for any other key.
+     * 2nd is output *.txt file name for preorder traversal of Huffman tree and the encoding list.
+     * 3rd is an *.txt input file containing clear text to be encoded.  All 
+     * punctuation and spaces will be ignored.  Lowercase letters will be treated
+     * as uppercase.  
+     * 4th is a *.txt output file name for the encoding of the inputted clear text.
+     * 5th is an input *.txt file containing a message to be decoded.
+     * 6th is a *.txt output file name for the decoded message.
+     * Optional arguments may follow.  '-decoder=tree' decodes by walking the
+     * Huffman tree and '-decoder=table' (the default) decodes with lookup tables.
+     * '-packed' makes the 4th and 5th files packed binary files instead of text
+     * made of 1s and 0s, the text form is then only needed for debugging.
+     * '-canonical' writes packed files with the canonical code, whose header holds
+     * only the code lengths.  '-maxlen=N' limits every code to at most N bits,
+     * using the optimal length limited code if the Huffman tree is deeper.
+     * '-parallel=N' writes a packed file of blocks encoded on N threads and
+     * '-sync' adds sync points to its index so that it is decoded on N threads.
+     * '-interleave=N' writes a packed file whose symbols are dealt to 2 or 4
+     * bitstreams that are decoded side by side.  '-index=K' writes a packed
+     * file with the bit position of every K-th symbol, see IndexedReader.
+     * '-context' writes a packed file coded with order-1 codes built from the
+     * 3rd file, one for each group of previous letters, '-context=N' for at
+     * most N codes.  '-blocks' writes a packed file whose blocks are each
+     * sent with a new code, the code of the block before or raw, whichever is
+     * smallest.
+     * '-stream' writes and reads the 4th and 5th files as Huffman streams with
+     * constant memory.  '-mmap' writes and reads the same Huffman streams as bytes
+     * through memory mapped files.  '-adaptive' codes the text files in a single
+     * pass with adaptive Huffman codes, the 1st file is then not read and the 2nd
+     * gets the final adaptive code.  '-count' counts the letters of the 3rd file
+     * on every core and writes them to the 1st file as its frequency table
+     * instead of reading it, and '-sample=N' does the same counting only 1 block
+     * of every N.
+     * Given '-batch=encode' or '-batch=decode' first, every file of a directory
+     * or manifest is coded instead, see runBatch.
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        
+        if (args.length > 0 && args[0].toLowerCase().startsWith("-batch=")){
+            runBatch(args);
+            return;
+        }
+
+        Options options = readOptions(args);
+        if (options.adaptive){
+            if (options.packed || options.maxLength > 0){
+                System.err.println("-adaptive only writes text files of 1s and 0s"
+                        + " and cannot be used with other encodings.");
+                System.exit(1);
+            }
+            codeAdaptively(args);
+            return;
+        }
+
+        // Creates original HuffmanQueue from frequency table input file, or
+        // counts the clear text and writes the table it makes
+        String ftFileName = args[0];
+        HuffmanQueue fTable;
+        if (options.countSampling > 0){
+            fTable = countTable(args[2], ftFileName, options);
+        }else{
+            fTable = new HuffmanQueue(ftFileName);
+        }
+        
+        // Creates HuffmanTree based on frequency table input file using HuffmanQueue
+        BinaryTree HuffmanTree = MakeHuffmanTree(fTable);
+        long[] frequencies = LengthLimitedCode.frequencies(HuffmanTree);
+
+        // Every key needs a code no longer than the limit
+        if (options.maxLength > 0
+                && options.maxLength < LengthLimitedCode.shortestLimit(frequencies)){
+            System.err.println("-maxlen=" + options.maxLength + " is too short for the keys of "
+                    + ftFileName + ", use -maxlen="
+                    + LengthLimitedCode.shortestLimit(frequencies) + " or more.");
+            System.exit(1);
+        }
+
+        // A table of symbol numbers can make a tree too deep for the code tables,
+        // whose code is then made from its frequencies with the limit alone
+        FlatTree flatTree = FlatTree.of(HuffmanTree);
+        int depth = flatTree.depth();
+        if (depth > HuffmanCode.MAX_CODE_LENGTH && options.maxLength == 0){
+            System.err.println("The Huffman tree of " + ftFileName + " is " + depth
+                    + " levels deep, use -maxlen=" + HuffmanCode.MAX_CODE_LENGTH + " or less.");
+            System.exit(1);
+        }
         
+        // Creates a file for preorder tree traversal and encoding
+        File outputFileTE = new File(args[1]);
+        FileWriter fwTE = new FileWriter(outputFileTE);
+        PrintWriter outputTE = new PrintWriter(fwTE);
+
+        HuffmanCode Encoding;
+        if (depth > HuffmanCode.MAX_CODE_LENGTH){
+            // The tree's own codes do not fit, so only the limited code is written
+            Encoding = HuffmanCode.fromCodeLengths(
+                    LengthLimitedCode.codeLengths(frequencies, options.maxLength));
+            outputTE.println("The Huffman tree is " + depth + " levels deep, deeper than codes of "
+                    + HuffmanCode.MAX_CODE_LENGTH + " bits allow.");
+            outputTE.println();
+            outputTE.println("The length limited encoding in key order is:");
+            outputTE.println(Encoding.getEncode());
+        }else{
+            Encoding = new HuffmanCode(HuffmanTree, flatTree);
+
+            // Writes tree traversal and encoding to file
+            outputTE.println("The tree in preorder is:");
+            outputTE.println(Encoding.getTrav());
+            outputTE.println("The Huffman encoding as they appear in preorder is:");        
+            outputTE.println(Encoding.getEncode());
+
+            // Swaps in the length limited code if the tree is too deep
+            if (options.maxLength > 0){
+                HuffmanCode limited = LengthLimitedCode.limit(Encoding, options.maxLength);
+                if (limited != Encoding){
+                    outputTE.println(LengthLimitedCode.report(frequencies,
+                            Encoding.getCodeLengths(), limited.getCodeLengths()));
+                    outputTE.println();
+                    outputTE.println("The length limited encoding in key order is:");
+                    outputTE.println(limited.getEncode());
+                    Encoding = limited;
+                }
+            }
+        }
+        outputTE.close();
+
+        if (options.engine == HuffmanCode.DecodeEngine.TREE && !Encoding.hasTree()){
+            System.err.println("The length limited code has no tree to walk, use -decoder=table.");
+            System.exit(1);
+        }
+        Encoding.setDecodeEngine(options.engine);
+
+        if (options.stream){
+            if (LengthLimitedCode.maxCodeLength(Encoding.getCodeLengths())
+                    > HuffmanOutputStream.MAX_STREAM_CODE_LENGTH){
+                System.err.println("Codes are too long to stream, use -maxlen="
+                        + HuffmanOutputStream.MAX_STREAM_CODE_LENGTH + " or less.");
+                System.exit(1);
+            }
+            if (options.mapped){
+                new MappedFileCodec(Encoding).encodeFile(Paths.get(args[2]), Paths.get(args[3]));
+                MappedFileCodec.decodeFile(Paths.get(args[4]), Paths.get(args[5]));
+            }else{
+                encodeStreamFile(Encoding, args[2], args[3]);
+                decodeStreamFile(args[4], args[5]);
+            }
+            return;
+        }
+
+        if (options.packed){
+            encodePackedFile(Encoding, args[2], args[3], options);
+            decodePackedFile(args[4], args[5], Math.max(1, options.parallelism));
+            return;
+        }
         
+        encodeTextFile(Encoding, args[2], args[3]);
+        decodeTextFile(Encoding, args[4], args[5]);
     }
 }
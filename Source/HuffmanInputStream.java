@@ -0,0 +1,190 @@
+package huffmanencoding;
+
+import java.io.*;
+
+/**
+ * HuffmanInputStream reads a stream written by HuffmanOutputStream and returns
+ * the decoded bytes.  Encoded bytes are read through a fixed size buffer into a
+ * 64-bit register that the table decoder reads codes from, so memory use does not
+ * grow with the length of the stream.
+ *
+ * @author W. Sam Arrington
+ */
+public class HuffmanInputStream extends FilterInputStream {
+
+    private final TableDecoder decoder;
+
+    private final byte[] buffer = new byte[8192];
+    private int pos;
+    private int limit;
+    private boolean endOfInput;
+
+    // Valid bits at the top of window
+    private long window;
+    private int windowBits;
+
+    // Set once the trailer has been read and the padding dropped
+    private boolean lastByteRead;
+
+    /**
+     * Creates a Huffman input stream and reads the header.
+     * @param in stream written by HuffmanOutputStream
+     * @throws IOException if the stream does not start with a valid header
+     */
+    public HuffmanInputStream(InputStream in) throws IOException{
+
+        super(in);
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != HuffmanOutputStream.STREAM_MAGIC){
+            throw new IOException("Not a Huffman stream.");
+        }
+        byte[] codeLength = CanonicalCode.readLengths(header);
+        if (LengthLimitedCode.maxCodeLength(codeLength) > HuffmanOutputStream.MAX_STREAM_CODE_LENGTH){
+            throw new IOException("Huffman stream header is corrupt.");
+        }
+        decoder = HuffmanCode.fromCodeLengths(codeLength).tableDecoder;
+    }
+
+    /**
+     * Reads the next decoded byte.
+     * @return the byte, or -1 at the end of the stream
+     * @throws IOException if the stream is corrupt
+     */
+    @Override
+    public int read() throws IOException{
+
+        if (!lastByteRead && windowBits <= HuffmanOutputStream.MAX_STREAM_CODE_LENGTH){
+            refill();
+        }
+        if (windowBits == 0){
+            return -1;
+        }
+
+        long decoded = decoder.decodeFirst(window, windowBits);
+        if (decoded < 0){
+            throw new IOException("Huffman stream ends inside a code.");
+        }
+        int length = (int) (decoded >>> 32);
+        window <<= length;
+        windowBits -= length;
+        return (int) decoded & 0xFF;
+    }
+
+    /**
+     * Reads decoded bytes into part of an array.
+     * @param b array the bytes are read into
+     * @param off index of the first byte
+     * @param len most bytes to read
+     * @return number of bytes read, or -1 at the end of the stream
+     * @throws IOException if the stream is corrupt
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException{
+
+        if (off < 0 || len < 0 || off + len > b.length){
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0){
+            return 0;
+        }
+        for (int i = 0; i < len; i++){
+            int c = read();
+            if (c < 0){
+                return i == 0 ? -1 : i;
+            }
+            b[off + i] = (byte) c;
+        }
+        return len;
+    }
+
+    /**
+     * Skips decoded bytes by decoding them.
+     * @param n number of bytes to skip
+     * @return number of bytes skipped
+     * @throws IOException if the stream is corrupt
+     */
+    @Override
+    public long skip(long n) throws IOException{
+
+        long skipped = 0;
+        while (skipped < n && read() >= 0){
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * The number of decoded bytes is not known without decoding them.
+     * @return 0
+     */
+    @Override
+    public int available(){
+        return 0;
+    }
+
+    @Override
+    public boolean markSupported(){
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit){
+    }
+
+    @Override
+    public synchronized void reset() throws IOException{
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Moves encoded bytes into the window until it holds more than the longest
+     * code or the data runs out.  The last byte of the stream is the trailer
+     * holding the padding of the byte before it, so a byte is only known to be
+     * data once another byte follows it.
+     */
+    private void refill() throws IOException{
+
+        while (windowBits <= HuffmanOutputStream.MAX_STREAM_CODE_LENGTH){
+
+            if (limit - pos < 2 && !endOfInput){
+                fillBuffer();
+                continue;
+            }
+
+            if (limit - pos >= 2){
+                window |= (long) (buffer[pos++] & 0xFF) << (56 - windowBits);
+                windowBits += 8;
+                continue;
+            }
+
+            if (limit - pos != 1){
+                throw new EOFException("Huffman stream is missing its trailer.");
+            }
+            int padding = buffer[pos++] & 0xFF;
+            if (padding > 7 || padding > windowBits){
+                throw new IOException("Huffman stream trailer is corrupt.");
+            }
+            // Drops the padding bits, which are the last bits in the window
+            windowBits -= padding;
+            window &= windowBits == 0 ? 0 : -1L << (64 - windowBits);
+            lastByteRead = true;
+            return;
+        }
+    }
+
+    /**
+     * Moves unread bytes to the front of the buffer and reads more after them.
+     */
+    private void fillBuffer() throws IOException{
+
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0){
+            endOfInput = true;
+        }else{
+            limit += n;
+        }
+    }
+}
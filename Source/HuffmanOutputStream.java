@@ -0,0 +1,173 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * HuffmanOutputStream Huffman encodes the bytes written to it and writes the
+ * packed bits to another stream.  Bits are gathered by a BitWriter a 64-bit word
+ * at a time and written out through a fixed size buffer, so memory use does not grow with the
+ * length of the input or its line structure.  Letters are encoded in upper
+ * case and every other byte is ignored, the same as HuffmanCode.encodeLine.
+ *
+ * The stream is laid out as:
+ *
+ * 'HUFZ' magic number
+ * the code lengths of the canonical code as written by CanonicalCode.writeLengths
+ * the data bytes
+ * a final byte holding the number of padding bits at the end of the last data byte
+ *
+ * HuffmanInputStream reads the stream back.
+ *
+ * @author W. Sam Arrington
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+
+    /**
+     * First four bytes of a Huffman stream.
+     */
+    public static final int STREAM_MAGIC = 0x4855465A;
+
+    /**
+     * Longest code a Huffman stream can hold, so that any code fits in the bit
+     * register of HuffmanInputStream next to a partial byte.  Deeper codes can be shortened with
+     * LengthLimitedCode.
+     */
+    public static final int MAX_STREAM_CODE_LENGTH = 56;
+
+    private final long[] codeBits;
+    private final byte[] codeLength;
+    private final int[] keyOf = Alphabet.LETTERS.keyOf;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+    private final BitWriter bits = new BitWriter(buffer);
+
+    private boolean finished;
+
+    /**
+     * Creates a Huffman stream and writes its header.  Text is encoded with the
+     * canonical form of the code.
+     * @param out stream the encoded bytes are written to
+     * @param code HuffmanCode whose code lengths are used to encode
+     * @throws IOException
+     * @throws IllegalArgumentException if a code is longer than MAX_STREAM_CODE_LENGTH
+     */
+    public HuffmanOutputStream(OutputStream out, HuffmanCode code) throws IOException{
+
+        super(out);
+        if (LengthLimitedCode.maxCodeLength(code.codeLength) > MAX_STREAM_CODE_LENGTH){
+            throw new IllegalArgumentException("Codes longer than " + MAX_STREAM_CODE_LENGTH
+                    + " bits cannot be streamed, limit them with LengthLimitedCode.");
+        }
+        HuffmanCode canonical = code.canonical();
+        codeBits = canonical.codeBits;
+        codeLength = canonical.codeLength;
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(STREAM_MAGIC);
+        CanonicalCode.writeLengths(codeLength, header);
+    }
+
+    /**
+     * Encodes one byte.  Lowercase letters are treated as uppercase and
+     * anything other than a letter is ignored.
+     * @param b the byte
+     * @throws IOException
+     */
+    @Override
+    public void write(int b) throws IOException{
+
+        if (finished){
+            throw new IOException("Huffman stream is finished.");
+        }
+
+        int key = keyOf[b & 0xFF];
+        if (key < 0){
+            return;
+        }
+
+        int length = key < codeLength.length ? codeLength[key] : 0;
+        if (length == 0){
+            throw new IOException("Key " + (char) key + " is not in the code.");
+        }
+
+        if (buffer.remaining() < 8){
+            flushBuffer();
+        }
+        bits.write(codeBits[key], length);
+    }
+
+    /**
+     * Encodes part of a byte array.
+     * @param b the bytes
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @throws IOException
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException{
+
+        if (off < 0 || len < 0 || off + len > b.length){
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = off; i < off + len; i++){
+            write(b[i]);
+        }
+    }
+
+    /**
+     * Writes out every whole byte encoded so far.  Bits of a partial byte stay
+     * pending until more is written or the stream is finished.
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException{
+
+        if (buffer.remaining() < 8){
+            flushBuffer();
+        }
+        bits.flushBytes();
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Writes the last partial byte and the padding trailer without closing the
+     * underlying stream.  Nothing more can be written afterwards.
+     * @throws IOException
+     */
+    public void finish() throws IOException{
+
+        if (finished){
+            return;
+        }
+        if (buffer.remaining() < 9){
+            flushBuffer();
+        }
+        buffer.put((byte) bits.finish());
+        flushBuffer();
+        finished = true;
+    }
+
+    /**
+     * Finishes the Huffman stream and closes the underlying stream.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException{
+
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException{
+
+        if (buffer.position() > 0){
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
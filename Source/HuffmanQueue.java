@@ -1,11 +1,14 @@
 
 package huffmanencoding;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * HuffmanQueue is an array implementation of a priority queue that contains tree nodes. 
- * The nodes are sorted first by their frequency attribute, second by length of 
- * the key, and third alphabetically.
+ * The nodes are ordered first by their frequency attribute, second by the number
+ * of keys, and third alphabetically by smallest key.  The array is kept as a
+ * binary min-heap so adding and removing a node take O(log n) time.
  * 
  * @author W. Sam Arrington
  */
@@ -26,50 +29,119 @@ public class HuffmanQueue {
      */
     public final int totalKeys;
     
-    private int top;
     
+    /**
+     * This constructor creates a Huffman Queue from tree nodes that have already
+     * been made, such as leaves for keys counted from data.
+     * @param nodes the nodes to put in the queue
+     */
+    HuffmanQueue(TreeNode[] nodes){
+
+        totalKeys = nodes.length;
+        size = nodes.length;
+        array = nodes.clone();
+        heapify();
+    }
     
     /**
      * This constructor creates a Huffman Queue from a file that contains letters
      * and their frequencies on separate lines in the following form: A - 16.
-     * Lowercase and uppercase letters will be treated the same.  
+     * Lowercase and uppercase letters will be treated the same.  Any other
+     * symbol, such as a byte value or a token id up to 65535, is written as its
+     * number: #10 - 16.  A file that is not in this form is reported and ends
+     * the program.
      * @param fileName the name of the file containing a frequency table
      * @throws FileNotFoundException
      * @throws IOException 
      */
     HuffmanQueue(String fileName) throws FileNotFoundException, IOException{
-        
-        // Creates reader for input file
-        FileInputStream in = new FileInputStream(fileName);
-        BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        
-        // Counts lines in file
-        br.mark(3000);
-        int countLines = 0;
-        while(br.readLine().length() > 0){
-            countLines++;
+        this(readLeaves(fileName, true));
+    }
+
+    /**
+     * Creates a Huffman Queue from a frequency table file, reporting a file
+     * that is not in the form 'A - 16' by throwing instead of ending the
+     * program, for callers that read many tables.
+     * @param fileName the name of the file containing a frequency table
+     * @return the queue
+     * @throws IOException if the file cannot be read or is not a valid frequency table
+     */
+    public static HuffmanQueue read(String fileName) throws IOException{
+        return new HuffmanQueue(readLeaves(fileName, false));
+    }
+
+    /**
+     * Creates a Huffman Queue from keys counted from data, such as the counts
+     * of a Histogram, with no frequency table file in between.
+     * @param counts count of each key indexed by key, keys with no count are left out
+     * @return the queue
+     * @throws IllegalArgumentException if a key past 65535 is counted
+     */
+    public static HuffmanQueue fromCounts(long[] counts){
+
+        List<TreeNode> leaves = new ArrayList<>();
+        for (int key = 0; key < counts.length; key++){
+            if (counts[key] > 0){
+                if (key > Character.MAX_VALUE){
+                    throw new IllegalArgumentException("Key " + key + " is too large for a tree.");
+                }
+                leaves.add(new TreeNode(String.valueOf((char) key), counts[key]));
+            }
         }
-        br.reset();
+        return new HuffmanQueue(leaves.toArray(new TreeNode[0]));
+    }
+
+    /**
+     * Writes counted keys as a frequency table file that the constructor can
+     * read, letters as themselves and other keys as symbol numbers.
+     * @param counts count of each key indexed by key, keys with no count are left out
+     * @param fileName the name of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeTable(long[] counts, String fileName) throws IOException{
+
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)))){
+            for (int key = 0; key < counts.length; key++){
+                if (counts[key] > 0){
+                    String name = key >= 'A' && key <= 'Z' ? String.valueOf((char) key) : "#" + key;
+                    out.println(name + " - " + counts[key]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the leaves of a frequency table file, up to the first blank line.
+     * @param fileName the name of the file containing a frequency table
+     * @param exitOnError true to print a format error and end the program
+     * rather than throw
+     * @return a leaf for each line
+     * @throws IOException if the file cannot be read or is not a valid frequency table
+     */
+    private static TreeNode[] readLeaves(String fileName, boolean exitOnError)
+            throws IOException{
         
-        /* Sets the number of keys, the initial size of queue, intializes array,
-        and sets the top of queue to the first value in array
-        */
-        totalKeys = countLines;
-        size = countLines;
-        array = new TreeNode[size];
-        top = 0;
+        // Reads lines up to the first blank line or the end of the file
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(fileName)))){
+            String line;
+            while ((line = br.readLine()) != null && line.length() > 0){
+                lines.add(line);
+            }
+        }
         
-        // Reads each line, creates tree node and adds it to queue in correct format
-        for (int i = 0; i < totalKeys; i++ ){
+        // Reads each line and creates a tree node for it
+        TreeNode[] leaves = new TreeNode[lines.size()];
+        for (int i = 0; i < leaves.length; i++ ){
             
-            String line = br.readLine();
+            String line = lines.get(i);
             
             String freqEntry[] = line.split("-");
             // Error if not split properly
             if (freqEntry.length != 2){
-                System.err.println("Not a valid format.  Key and frequency must"
-                        + "be separated by '-'");
-                System.exit(1);
+                formatError("Not a valid format.  Key and frequency must"
+                        + "be separated by '-'", exitOnError);
             }
             
             // Removes unprintable characters and spaces
@@ -81,81 +153,105 @@ public class HuffmanQueue {
             
             freqEntry[0] = freqEntry[0].toUpperCase();
             
-            // Error if key is greater than one or not a letter
-            if (!Character.isLetter(freqEntry[0].charAt(0)) 
+            // A key written '#65' is the symbol numbered 65, such as a byte value
+            if (freqEntry[0].matches("#\\d{1,5}")
+                    && Integer.parseInt(freqEntry[0].substring(1)) <= Character.MAX_VALUE){
+                freqEntry[0] = String.valueOf((char) Integer.parseInt(freqEntry[0].substring(1)));
+            }else if (!Character.isLetter(freqEntry[0].charAt(0)) 
                     || freqEntry[0].length() > 1){
-                System.err.println("Not a valid format for frequency table.  "
-                        + "Keys must be single letters.");
-                System.exit(1);
+                // Error if key is greater than one or not a letter
+                formatError("Not a valid format for frequency table.  "
+                        + "Keys must be single letters or symbol numbers such as #65.",
+                        exitOnError);
             }
             
             // Checks to see if frequency is a number
             for (int j = 0; j < freqEntry[1].length(); j++){
                 if (!Character.isDigit(freqEntry[1].charAt(j))){
-                    System.err.println("Not a valid format for frequency table.  Frequencies"
-                            + " must be numbers.");
-                    System.exit(1);
+                    formatError("Not a valid format for frequency table.  Frequencies"
+                            + " must be numbers.", exitOnError);
                 }
             }
             
-            array[i] = new TreeNode(freqEntry[0], Integer.valueOf(freqEntry[1]));
+            leaves[i] = new TreeNode(freqEntry[0], Long.valueOf(freqEntry[1]));
         }
-        
-        sort();
+        return leaves;
     }
-    
+
     /**
-     * Sorts the Huffman Queue first by frequency, then by key length, then
-     * alphabetically by key.  The sort method used is a bubble sort.
+     * Reports a frequency table that is not in the right form.
      */
-    private void sort(){
+    private static void formatError(String message, boolean exit) throws IOException{
+
+        if (exit){
+            System.err.println(message);
+            System.exit(1);
+        }
+        throw new IOException(message);
+    }
     
-        for (int i = top; i < totalKeys - 1; i++){
-            int exch = 0;
-            for (int j = top; j < totalKeys - 1 - i + top; j++){
-                if (array[j].freq > array[j+1].freq){
-                    TreeNode temp = array[j];
-                    array[j] = array[j+1];
-                    array[j+1] = temp;
-                    exch++;
-                }else if (array[j].freq == (array[j+1].freq)){
-                    if(array[j].key.length() > array[j+1].key.length()){
-                        TreeNode temp = array[j];
-                        array[j] = array[j+1];
-                        array[j+1] = temp;
-                        exch++;
-                    }else if (array[j].key.length() == array[j+1].key.length()){
-                        if (array[j].key.charAt(0) > array[j+1].key.charAt(0)){
-                            TreeNode temp = array[j];
-                            array[j] = array[j+1];
-                            array[j+1] = temp;
-                            exch++;
-                        }
-                    }
-                }
+    /**
+     * Arranges the array into a heap, sifting down each node that has children
+     * starting from the last.
+     */
+    private void heapify(){
+
+        for (int i = size / 2 - 1; i >= 0; i--){
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Moves the node at a position down the heap until neither child comes
+     * before it.
+     */
+    private void siftDown(int pos){
+
+        TreeNode item = array[pos];
+        int child;
+        while ((child = 2 * pos + 1) < size){
+            if (child + 1 < size && array[child + 1].before(array[child])){
+                child++;
             }
-            // Break if no exchanges occur
-            if (exch == 0){
+            if (!array[child].before(item)){
+                break;
+            }
+            array[pos] = array[child];
+            pos = child;
+        }
+        array[pos] = item;
+    }
+
+    /**
+     * Moves the node at a position up the heap until its parent comes before it.
+     */
+    private void siftUp(int pos){
+
+        TreeNode item = array[pos];
+        while (pos > 0){
+            int parent = (pos - 1) / 2;
+            if (!item.before(array[parent])){
                 break;
             }
+            array[pos] = array[parent];
+            pos = parent;
         }
+        array[pos] = item;
     }
     
     /**
-     * Adds new item to queue and sorts
+     * Adds new item to queue in heap order
      * @param item TreeNode - new node to be added to queue
      */
     public void add(TreeNode item){
         
-        if (top == 0){
+        if (size == array.length){
             System.err.println("Cannot insert queue full");
         }else{
-            top--;
+            array[size] = item;
+            siftUp(size);
             size++;
-            array[top] = item;
         }
-        
-        sort();
     }
     
     /**
@@ -164,9 +260,13 @@ public class HuffmanQueue {
      */
     public TreeNode remove(){
         
-        TreeNode item = array[top];
-        top++;
+        TreeNode item = array[0];
         size--;
+        array[0] = array[size];
+        array[size] = null;
+        if (size > 0){
+            siftDown(0);
+        }
         return item;
     }
     
@@ -0,0 +1,215 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * IndexedCode writes a packed message with a checkpoint index, the bit position
+ * of every K-th symbol, so that IndexedReader can decode any range of symbols
+ * by seeking to the checkpoint at or before its first symbol instead of
+ * decoding everything before it.  A smaller interval K makes a larger index
+ * and shorter seeks: each checkpoint costs 8 bytes, and a range is reached
+ * after decoding at most K - 1 symbols it does not need.
+ *
+ * The indexed message is laid out as:
+ *
+ * 'HUFX' magic number
+ * the code lengths of the canonical code as written by CanonicalCode.writeLengths
+ * long number of symbols encoded
+ * int checkpoint interval K
+ * int number of checkpoints, one for each K symbols or part of K
+ * for each checkpoint a long bit position in the data of symbol number
+ * checkpoint * K
+ * byte number of padding bits at the end of the last data byte
+ * long number of data bytes, then the data bytes
+ *
+ * @author W. Sam Arrington
+ */
+public final class IndexedCode {
+
+    /**
+     * First four bytes of an indexed message.
+     */
+    public static final int INDEXED_MAGIC = 0x48554658;
+
+    /**
+     * Default number of symbols between checkpoints.
+     */
+    public static final int DEFAULT_INTERVAL = 4096;
+
+    private IndexedCode(){
+    }
+
+    /**
+     * Encodes plain text into an indexed message.
+     * @param code HuffmanCode whose code lengths are used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @param interval number of symbols between checkpoints
+     * @return the indexed message
+     */
+    public static byte[] encode(HuffmanCode code, String clearText, int interval){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(code, clearText, interval, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes plain text with the canonical form of a code and writes the
+     * indexed message to a stream.
+     * @param code HuffmanCode whose code lengths are used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @param interval number of symbols between checkpoints
+     * @param out stream the indexed message is written to
+     * @throws IOException
+     */
+    public static void encode(HuffmanCode code, String clearText, int interval, OutputStream out)
+            throws IOException{
+
+        if (interval < 1){
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1.");
+        }
+        HuffmanCode canonical = code.canonical();
+        long[] codeBits = canonical.codeBits;
+        byte[] codeLength = canonical.codeLength;
+
+        long startNanos = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        String cleanLine = PackedCode.cleanText(clearText, 0, clearText.length());
+        int symbolCount = cleanLine.length();
+        long[] checkpoints = new long[symbolCount == 0 ? 0 : (symbolCount - 1) / interval + 1];
+        BitWriter data = new BitWriter(symbolCount / 2 + 8);
+        for (int i = 0; i < symbolCount; i++){
+            if (i % interval == 0){
+                checkpoints[i / interval] = data.bitCount();
+            }
+            char key = cleanLine.charAt(i);
+            int length = key < codeLength.length ? codeLength[key] : 0;
+            if (length == 0){
+                throw new IllegalArgumentException("Key " + key + " is not in the code.");
+            }
+            data.write(codeBits[key], length);
+        }
+        long bits = data.bitCount();
+        int padding = data.finish();
+        CodecMetrics.recordEncode("indexed", symbolCount, bits, startNanos, event);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(INDEXED_MAGIC);
+        CanonicalCode.writeLengths(codeLength, dataOut);
+        dataOut.writeLong(symbolCount);
+        dataOut.writeInt(interval);
+        dataOut.writeInt(checkpoints.length);
+        for (long checkpoint : checkpoints){
+            dataOut.writeLong(checkpoint);
+        }
+        dataOut.writeByte(padding);
+        dataOut.writeLong(data.size());
+        data.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Decodes the whole of an indexed message whose magic number has already
+     * been read, ignoring the index.
+     * @param in stream positioned after the magic number
+     * @param registry registry the code is taken from, or null to build it
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid indexed message
+     */
+    static String decodeMessage(DataInputStream in, CodecRegistry registry) throws IOException{
+
+        Header header = readHeader(in, registry);
+        if (header.dataLength > Integer.MAX_VALUE / 8 || header.symbolCount > Integer.MAX_VALUE){
+            throw new IOException("Indexed message is too large to decode in memory,"
+                    + " decode it in ranges with IndexedReader.");
+        }
+        BitReader data = new BitReader(PackedCode.readData(in, (int) header.dataLength));
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        StringBuilder clearText = new StringBuilder((int) header.symbolCount);
+        header.code.tableDecoder.decode(data, header.dataBits(), clearText);
+        CodecMetrics.recordDecode("indexed", data.position(), clearText.length(), start, event);
+        if (clearText.length() != header.symbolCount){
+            throw new IOException("Indexed message decoded to " + clearText.length()
+                    + " symbols, expected " + header.symbolCount + ".");
+        }
+        return clearText.toString();
+    }
+
+    /**
+     * Reads and checks the header and index of an indexed message.
+     * @param in stream positioned after the magic number
+     * @param registry registry the code is taken from, or null to build it
+     * @return the header, with the stream positioned at the data bytes
+     * @throws IOException if the header or index is corrupt
+     */
+    static Header readHeader(DataInputStream in, CodecRegistry registry) throws IOException{
+
+        Header header = new Header();
+        byte[] codeLength = CanonicalCode.readLengths(in);
+        header.code = registry != null ? registry.getCanonical(codeLength)
+                : HuffmanCode.fromCodeLengths(codeLength);
+        header.symbolCount = in.readLong();
+        header.interval = in.readInt();
+        int count = in.readInt();
+        if (header.symbolCount < 0 || header.interval < 1 || count < 0
+                || count != (header.symbolCount == 0 ? 0
+                        : (header.symbolCount - 1) / header.interval + 1)){
+            throw new IOException("Indexed message header is corrupt.");
+        }
+
+        // The count is only trusted as far as checkpoints are actually read
+        long[] checkpoints = new long[Math.min(count, 1 << 16)];
+        for (int c = 0; c < count; c++){
+            if (c == checkpoints.length){
+                checkpoints = Arrays.copyOf(checkpoints, (int) Math.min(count, c * 2L));
+            }
+            checkpoints[c] = in.readLong();
+        }
+        header.checkpoints = checkpoints;
+        header.padding = in.readUnsignedByte();
+        header.dataLength = in.readLong();
+        if (header.padding > 7 || header.dataLength < 0 || header.dataLength > Long.MAX_VALUE / 8
+                || (header.dataLength == 0 && header.padding != 0)){
+            throw new IOException("Indexed message header is corrupt.");
+        }
+
+        // Checkpoints start at the first bit and never go backwards or past the data
+        long previous = 0;
+        for (int c = 0; c < count; c++){
+            long checkpoint = header.checkpoints[c];
+            if ((c == 0 && checkpoint != 0) || checkpoint < previous
+                    || checkpoint > header.dataBits()){
+                throw new IOException("Indexed message index is corrupt.");
+            }
+            previous = checkpoint;
+        }
+        return header;
+    }
+
+    /**
+     * The header and index of an indexed message.
+     */
+    static final class Header {
+
+        HuffmanCode code;
+        long symbolCount;
+        int interval;
+        long[] checkpoints;
+        int padding;
+        long dataLength;
+
+        /**
+         * @return number of bits of data, not counting the padding
+         */
+        long dataBits(){
+            return dataLength * 8 - padding;
+        }
+    }
+}
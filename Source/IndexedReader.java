@@ -0,0 +1,194 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * IndexedReader decodes ranges of symbols from an indexed message made by
+ * IndexedCode, held in memory or in a file.  The header and index are read
+ * once when the reader is made.  A range is decoded by going to the checkpoint
+ * at or before its first symbol, skipping the symbols between the checkpoint
+ * and the range, and decoding only up to the checkpoint after its last symbol,
+ * so a file reader reads just the bytes between those two checkpoints.
+ *
+ * The message starts the array or file.  A reader is not thread safe, a
+ * thread that decodes uses its own.
+ *
+ * @author W. Sam Arrington
+ */
+public final class IndexedReader implements Closeable {
+
+    private final IndexedCode.Header header;
+    private final BitReader reader = new BitReader(ByteBuffer.allocate(0));
+
+    // Exactly one of these holds the message
+    private final byte[] message;
+    private final FileChannel channel;
+
+    // Position of the first data byte in the array or file
+    private final long dataStart;
+
+    // Bytes read from the file for the last range
+    private ByteBuffer fileBytes = ByteBuffer.allocate(0);
+
+    /**
+     * Creates a reader of an indexed message held in memory.
+     * @param message the indexed message
+     * @throws IOException if the array does not hold a valid indexed message
+     */
+    public IndexedReader(byte[] message) throws IOException{
+
+        this.message = message;
+        this.channel = null;
+        ParallelDecoder.HeaderInputStream headerBytes = new ParallelDecoder.HeaderInputStream(
+                new ByteArrayInputStream(message));
+        header = readHeader(headerBytes);
+        dataStart = headerBytes.count;
+        if (message.length - dataStart < header.dataLength){
+            throw new EOFException("Indexed message is cut off.");
+        }
+    }
+
+    /**
+     * Opens a file holding an indexed message and reads its header and index.
+     * @param file the file
+     * @throws IOException if the file cannot be read or does not hold a valid
+     * indexed message
+     */
+    public IndexedReader(Path file) throws IOException{
+
+        this.message = null;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            // The channel is only read by position, closing the stream would close it
+            ParallelDecoder.HeaderInputStream headerBytes = new ParallelDecoder.HeaderInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+            header = readHeader(headerBytes);
+            dataStart = headerBytes.count;
+            if (channel.size() - dataStart < header.dataLength){
+                throw new EOFException("Indexed message is cut off.");
+            }
+        } catch (IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of symbols in the message
+     */
+    public long symbolCount(){
+        return header.symbolCount;
+    }
+
+    /**
+     * @return number of symbols between checkpoints
+     */
+    public int interval(){
+        return header.interval;
+    }
+
+    /**
+     * Decodes the symbols from one position up to another.
+     * @param fromSymbol index of the first symbol to decode
+     * @param toSymbol index after the last symbol to decode
+     * @return decoded text
+     * @throws IOException if the file cannot be read or the data is corrupt
+     * @throws IndexOutOfBoundsException if the range is not inside the message
+     */
+    public String decodeRange(long fromSymbol, long toSymbol) throws IOException{
+
+        if (fromSymbol < 0 || toSymbol < fromSymbol || toSymbol > header.symbolCount){
+            throw new IndexOutOfBoundsException("Range " + fromSymbol + " to " + toSymbol
+                    + " is not inside the " + header.symbolCount + " symbols of the message.");
+        }
+        if (toSymbol - fromSymbol > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Range is too long to decode at once.");
+        }
+        if (fromSymbol == toSymbol){
+            return "";
+        }
+
+        // Bits from the checkpoint before the range to the checkpoint after it
+        long[] checkpoints = header.checkpoints;
+        int first = (int) (fromSymbol / header.interval);
+        int last = (int) ((toSymbol - 1) / header.interval) + 1;
+        long fromBit = checkpoints[first];
+        long toBit = last < checkpoints.length ? checkpoints[last] : header.dataBits();
+        long fromByte = fromBit / 8;
+        load(fromByte, (int) ((toBit + 7) / 8 - fromByte));
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        TableDecoder decoder = header.code.tableDecoder;
+        long endBit = toBit - fromByte * 8;
+        reader.seek(fromBit - fromByte * 8);
+        for (long skip = fromSymbol - (long) first * header.interval; skip > 0; skip--){
+            if (reader.position() >= endBit){
+                break;
+            }
+            decoder.decodeNext(reader);
+        }
+        char[] clearText = new char[(int) (toSymbol - fromSymbol)];
+        int count = reader.position() < endBit
+                ? decoder.decode(reader, endBit, clearText, 0, clearText.length) : 0;
+        CodecMetrics.recordDecode("range", reader.position() - (fromBit - fromByte * 8), count,
+                start, event);
+        if (count != clearText.length){
+            throw new IOException("Indexed message data is corrupt near symbol "
+                    + (fromSymbol + count) + ".");
+        }
+        return new String(clearText);
+    }
+
+    /**
+     * Closes the file, if the reader has one.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException{
+
+        if (channel != null){
+            channel.close();
+        }
+    }
+
+    /**
+     * Points the bit reader at data bytes, reading them from the file if
+     * the message is in one.
+     */
+    private void load(long fromByte, int length) throws IOException{
+
+        if (channel == null){
+            reader.reset(ByteBuffer.wrap(message, (int) (dataStart + fromByte), length));
+            return;
+        }
+        if (fileBytes.capacity() < length){
+            fileBytes = ByteBuffer.allocate(Math.max(length, fileBytes.capacity() * 2));
+        }
+        fileBytes.clear().limit(length);
+        long position = dataStart + fromByte;
+        while (fileBytes.hasRemaining()){
+            int n = channel.read(fileBytes, position);
+            if (n < 0){
+                throw new EOFException("Indexed message is cut off.");
+            }
+            position += n;
+        }
+        fileBytes.flip();
+        reader.reset(fileBytes);
+    }
+
+    private static IndexedCode.Header readHeader(InputStream in) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != IndexedCode.INDEXED_MAGIC){
+            throw new IOException("Not an indexed Huffman message.");
+        }
+        return IndexedCode.readHeader(dataIn, null);
+    }
+}
@@ -0,0 +1,192 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * InterleavedCode writes a packed message as 2 or 4 separate bitstreams, with
+ * the symbols dealt to the streams in turn, so symbol i goes to stream
+ * i % streams.  A single bitstream must be decoded in order, since where one
+ * code ends is only known once the code before it is decoded.  The streams of
+ * an interleaved message do not depend on each other, so the decoder takes
+ * one symbol from each stream in the same loop and the processor can work on
+ * all of them at once.
+ *
+ * The interleaved message is laid out as:
+ *
+ * 'HUFI' magic number
+ * the code lengths of the canonical code as written by CanonicalCode.writeLengths
+ * int number of symbols encoded
+ * byte number of streams, 2 or 4
+ * the jump table: for each stream an int number of data bytes
+ * the data bytes of each stream in turn, each padded with 0s to a whole byte
+ *
+ * The number of symbols in each stream follows from the number of symbols, so
+ * the padding of each stream is not stored.
+ *
+ * @author W. Sam Arrington
+ */
+public final class InterleavedCode {
+
+    /**
+     * First four bytes of an interleaved message.
+     */
+    public static final int INTERLEAVED_MAGIC = 0x48554649;
+
+    private InterleavedCode(){
+    }
+
+    /**
+     * Encodes plain text into an interleaved message.
+     * @param code HuffmanCode whose code lengths are used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @param streams number of streams, 2 or 4
+     * @return the interleaved message
+     */
+    public static byte[] encode(HuffmanCode code, String clearText, int streams){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(code, clearText, streams, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes plain text with the canonical form of a code and writes the
+     * interleaved message to a stream.
+     * @param code HuffmanCode whose code lengths are used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @param streams number of streams, 2 or 4
+     * @param out stream the interleaved message is written to
+     * @throws IOException
+     */
+    public static void encode(HuffmanCode code, String clearText, int streams, OutputStream out)
+            throws IOException{
+
+        if (streams != 2 && streams != 4){
+            throw new IllegalArgumentException("An interleaved message has 2 or 4 streams.");
+        }
+        HuffmanCode canonical = code.canonical();
+        long[] codeBits = canonical.codeBits;
+        byte[] codeLength = canonical.codeLength;
+
+        long startNanos = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        String cleanLine = PackedCode.cleanText(clearText, 0, clearText.length());
+        BitWriter[] data = new BitWriter[streams];
+        for (int s = 0; s < streams; s++){
+            data[s] = new BitWriter(cleanLine.length() / (2 * streams) + 8);
+        }
+        for (int i = 0; i < cleanLine.length(); i++){
+            char key = cleanLine.charAt(i);
+            int length = key < codeLength.length ? codeLength[key] : 0;
+            if (length == 0){
+                throw new IllegalArgumentException("Key " + key + " is not in the code.");
+            }
+            data[i & (streams - 1)].write(codeBits[key], length);
+        }
+        long bits = 0;
+        for (BitWriter stream : data){
+            bits += stream.bitCount();
+        }
+        CodecMetrics.recordEncode("interleaved", cleanLine.length(), bits, startNanos, event);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(INTERLEAVED_MAGIC);
+        CanonicalCode.writeLengths(codeLength, dataOut);
+        dataOut.writeInt(cleanLine.length());
+        dataOut.writeByte(streams);
+        for (BitWriter stream : data){
+            stream.finish();
+            dataOut.writeInt(stream.size());
+        }
+        for (BitWriter stream : data){
+            stream.writeTo(dataOut);
+        }
+        dataOut.flush();
+    }
+
+    /**
+     * Decodes an interleaved message.
+     * @param packed the interleaved message
+     * @return decoded text
+     * @throws IOException if the message is not a valid interleaved message
+     */
+    public static String decode(byte[] packed) throws IOException{
+        return decode(new ByteArrayInputStream(packed));
+    }
+
+    /**
+     * Reads an interleaved message from a stream and decodes it.
+     * @param in stream containing the interleaved message
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid interleaved message
+     */
+    public static String decode(InputStream in) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != INTERLEAVED_MAGIC){
+            throw new IOException("Not an interleaved Huffman message.");
+        }
+        return decodeStreams(dataIn);
+    }
+
+    /**
+     * Decodes an interleaved message whose magic number has already been read.
+     * @param in stream positioned after the magic number
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid interleaved message
+     */
+    static String decodeStreams(DataInputStream in) throws IOException{
+
+        HuffmanCode code = HuffmanCode.fromCodeLengths(CanonicalCode.readLengths(in));
+        int symbolCount = in.readInt();
+        int streams = in.readUnsignedByte();
+        if (symbolCount < 0 || (streams != 2 && streams != 4)){
+            throw new IOException("Interleaved message header is corrupt.");
+        }
+
+        // Reads the jump table and finds where each stream starts
+        int[] start = new int[streams + 1];
+        for (int s = 0; s < streams; s++){
+            int length = in.readInt();
+            if (length < 0 || (long) start[s] + length > Integer.MAX_VALUE / 8){
+                throw new IOException("Interleaved message jump table is corrupt.");
+            }
+            start[s + 1] = start[s] + length;
+        }
+
+        // Every symbol takes at least one bit
+        if (symbolCount > (long) start[streams] * 8){
+            throw new IOException("Interleaved message header is corrupt.");
+        }
+        byte[] data = PackedCode.readData(in, start[streams]);
+        BitReader[] readers = new BitReader[streams];
+        for (int s = 0; s < streams; s++){
+            readers[s] = new BitReader(ByteBuffer.wrap(data, start[s], start[s + 1] - start[s]));
+        }
+
+        long startNanos = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        char[] clearText = new char[symbolCount];
+        code.tableDecoder.decodeInterleaved(readers, clearText);
+        long bits = 0;
+        for (BitReader reader : readers){
+            bits += reader.position();
+        }
+        CodecMetrics.recordDecode("interleaved", bits, symbolCount, startNanos, event);
+
+        // Each stream must end in its last byte, past any padding
+        for (int s = 0; s < streams; s++){
+            if ((readers[s].position() + 7) / 8 != start[s + 1] - start[s]){
+                throw new IOException("Interleaved stream " + s + " does not hold its "
+                        + "symbols exactly.");
+            }
+        }
+        return new String(clearText);
+    }
+}
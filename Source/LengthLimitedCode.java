@@ -0,0 +1,288 @@
+package huffmanencoding;
+
+import java.util.Arrays;
+
+/**
+ * LengthLimitedCode finds the code lengths of an optimal prefix code whose codes
+ * are no longer than a given maximum, using the package-merge algorithm.  Very
+ * skewed frequency tables give Huffman trees deep enough to overflow fixed width
+ * bit buffers and lookup tables, a length limited code costs a few bits of
+ * compression to keep every code within the limit.  The lengths are turned into
+ * codes with CanonicalCode.
+ *
+ * @author W. Sam Arrington
+ */
+public final class LengthLimitedCode {
+
+    private LengthLimitedCode(){
+    }
+
+    /**
+     * Finds optimal code lengths no longer than a maximum with package-merge.
+     * Every key with an entry in freq gets a code, including those with a
+     * frequency of 0, the same as in a Huffman tree.
+     * @param freq frequency of each key indexed by key, negative if the key is not in the code
+     * @param maxLength longest code length allowed
+     * @return length of the code of each key indexed by key, 0 if the key is not in the code
+     * @throws IllegalArgumentException if there are more than 2^maxLength keys
+     */
+    public static byte[] codeLengths(long[] freq, int maxLength){
+
+        // Sorts the keys by frequency, keys with equal frequency stay in key order
+        int n = 0;
+        for (long f : freq){
+            if (f >= 0){
+                n++;
+            }
+        }
+        if (n < 2){
+            throw new IllegalArgumentException("A code needs at least two keys.");
+        }
+        if (maxLength < 1 || maxLength > HuffmanCode.MAX_CODE_LENGTH
+                || (maxLength < 31 && n > (1 << maxLength))){
+            throw new IllegalArgumentException(n + " keys do not fit in codes of length "
+                    + maxLength + ".");
+        }
+        int[] keyOf = new int[n];
+        for (int key = 0, i = 0; key < freq.length; key++){
+            if (freq[key] >= 0){
+                keyOf[i++] = key;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(freq[keyOf[a]], freq[keyOf[b]]));
+        int[] leafKey = new int[n];
+        long[] leafWeight = new long[n];
+        for (int i = 0; i < n; i++){
+            leafKey[i] = keyOf[order[i]];
+            leafWeight[i] = freq[leafKey[i]];
+        }
+
+        /* Level 0 is the leaves.  Each later level merges the leaves with packages
+        made by pairing neighbouring items of the level before.  An item is a leaf
+        when its child is -1, otherwise it is the package of items child and
+        child + 1 of the level before.
+        */
+        long[][] weight = new long[maxLength][];
+        int[][] child = new int[maxLength][];
+        int[][] leaf = new int[maxLength][];
+        weight[0] = leafWeight;
+        child[0] = new int[n];
+        leaf[0] = new int[n];
+        Arrays.fill(child[0], -1);
+        for (int i = 0; i < n; i++){
+            leaf[0][i] = i;
+        }
+
+        for (int level = 1; level < maxLength; level++){
+
+            long[] below = weight[level - 1];
+            int packages = below.length / 2;
+            int size = n + packages;
+            weight[level] = new long[size];
+            child[level] = new int[size];
+            leaf[level] = new int[size];
+
+            int l = 0;
+            int p = 0;
+            for (int i = 0; i < size; i++){
+                long packageWeight = p < packages ? below[2 * p] + below[2 * p + 1] : Long.MAX_VALUE;
+                if (l < n && leafWeight[l] <= packageWeight){
+                    weight[level][i] = leafWeight[l];
+                    child[level][i] = -1;
+                    leaf[level][i] = l++;
+                }else{
+                    weight[level][i] = packageWeight;
+                    child[level][i] = 2 * p;
+                    p++;
+                }
+            }
+        }
+
+        // Each time a leaf appears in the first 2n - 2 items its code gets one longer
+        int[] length = new int[n];
+        for (int i = 0; i < 2 * n - 2; i++){
+            countLeaves(maxLength - 1, i, child, leaf, length);
+        }
+
+        byte[] codeLength = new byte[freq.length];
+        for (int i = 0; i < n; i++){
+            codeLength[leafKey[i]] = (byte) length[i];
+        }
+        return codeLength;
+    }
+
+    /**
+     * Adds one to the length of every leaf inside an item.
+     */
+    private static void countLeaves(int level, int item, int[][] child, int[][] leaf,
+            int[] length){
+
+        while (child[level][item] >= 0){
+            int first = child[level][item];
+            countLeaves(level - 1, first, child, leaf, length);
+            item = first + 1;
+            level--;
+        }
+        length[leaf[level][item]]++;
+    }
+
+    /**
+     * Makes the canonical code for a Huffman tree's frequencies with no code
+     * longer than a maximum.  If the tree is already shallow enough its own code
+     * is kept, since it is optimal.
+     * @param code HuffmanCode made from a Huffman tree, whose frequencies the
+     * limited code is built from
+     * @param maxLength longest code length allowed
+     * @return a code with no code longer than maxLength
+     * @throws IllegalArgumentException if the code is too deep and has no tree,
+     * such as a canonical code, or has more keys than fit in maxLength bits
+     */
+    public static HuffmanCode limit(HuffmanCode code, int maxLength){
+
+        if (maxCodeLength(code.codeLength) <= maxLength){
+            return code;
+        }
+        if (code.flatTree == null){
+            throw new IllegalArgumentException("Only a code made from a Huffman tree has the"
+                    + " frequencies to limit its lengths with.");
+        }
+        return HuffmanCode.fromCodeLengths(codeLengths(code.flatTree.frequencies(), maxLength));
+    }
+
+    /**
+     * Finds the shortest limit the codes of a set of keys can be held to, the
+     * length at which there are as many codes as keys.
+     * @param codeLength length of the code of each key, 0 for keys not in the code
+     * @return the shortest maxLength codeLengths and limit accept for the keys
+     */
+    public static int shortestLimit(byte[] codeLength){
+
+        int keys = 0;
+        for (byte length : codeLength){
+            if (length > 0){
+                keys++;
+            }
+        }
+        return shortestLimit(keys);
+    }
+
+    /**
+     * Finds the shortest limit the codes of a frequency table can be held to,
+     * without making its code, which a deep tree may not have.
+     * @param freq frequency of each key indexed by key, negative if the key is not in the code
+     * @return the shortest maxLength codeLengths accepts for the keys
+     */
+    public static int shortestLimit(long[] freq){
+
+        int keys = 0;
+        for (long f : freq){
+            if (f >= 0){
+                keys++;
+            }
+        }
+        return shortestLimit(keys);
+    }
+
+    private static int shortestLimit(int keys){
+
+        int bits = 1;
+        while (bits < 31 && (1 << bits) < keys){
+            bits++;
+        }
+        return bits;
+    }
+
+    /**
+     * Collects the frequency of each key from the leaves of a Huffman tree.
+     * @param tree Huffman tree
+     * @return frequency of each key indexed by key, -1 for keys not in the tree
+     */
+    public static long[] frequencies(BinaryTree tree){
+
+        long[] freq = new long[maxKey(tree.root) + 1];
+        Arrays.fill(freq, -1);
+        addFrequencies(tree.root, freq);
+        return freq;
+    }
+
+    private static int maxKey(TreeNode node){
+
+        if (node.isLeaf()){
+            return node.key.charAt(0);
+        }
+        return Math.max(maxKey(node.left), maxKey(node.right));
+    }
+
+    private static void addFrequencies(TreeNode node, long[] freq){
+
+        if (node.isLeaf()){
+            char key = node.key.charAt(0);
+            freq[key] = Math.max(freq[key], 0) + node.freq;
+            return;
+        }
+        addFrequencies(node.left, freq);
+        addFrequencies(node.right, freq);
+    }
+
+    /**
+     * @param codeLength length of the code of each key
+     * @return the longest code length
+     */
+    public static int maxCodeLength(byte[] codeLength){
+
+        int max = 0;
+        for (byte length : codeLength){
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    /**
+     * Counts the bits needed to encode text with the given frequencies.
+     * @param freq frequency of each key indexed by key
+     * @param codeLength length of the code of each key indexed by key
+     * @return total number of encoded bits
+     */
+    public static long encodedBits(long[] freq, byte[] codeLength){
+
+        long bits = 0;
+        for (int key = 0; key < Math.min(freq.length, codeLength.length); key++){
+            if (freq[key] > 0){
+                bits += freq[key] * codeLength[key];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Describes how much compression a length limited code gives up against the
+     * unconstrained Huffman code.
+     * @param freq frequency of each key indexed by key
+     * @param huffmanLength code lengths of the Huffman code
+     * @param limitedLength code lengths of the length limited code
+     * @return a report of the average code lengths and the loss
+     */
+    public static String report(long[] freq, byte[] huffmanLength, byte[] limitedLength){
+
+        long total = 0;
+        for (long f : freq){
+            if (f > 0){
+                total += f;
+            }
+        }
+        long huffmanBits = encodedBits(freq, huffmanLength);
+        long limitedBits = encodedBits(freq, limitedLength);
+        double loss = huffmanBits == 0 ? 0 : 100.0 * (limitedBits - huffmanBits) / huffmanBits;
+
+        return String.format("Longest code %d bits, limited to %d bits.%n"
+                + "Average code length %.4f bits, unconstrained %.4f bits.%n"
+                + "Compression lost to the length limit: %.3f%%",
+                maxCodeLength(huffmanLength), maxCodeLength(limitedLength),
+                total == 0 ? 0 : (double) limitedBits / total,
+                total == 0 ? 0 : (double) huffmanBits / total, loss);
+    }
+}
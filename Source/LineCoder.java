@@ -0,0 +1,25 @@
+package huffmanencoding;
+
+/**
+ * LineCoder is the line by line encode and decode API shared by the fixed
+ * HuffmanCode and the single pass AdaptiveHuffmanCode, so that the text file
+ * loops of HuffmanEncoding can run with either.
+ *
+ * @author W. Sam Arrington
+ */
+public interface LineCoder {
+
+    /**
+     * Takes a plain text and encodes it
+     * @param clearLine String of plain text
+     * @return encoded version of input text
+     */
+    String encodeLine(String clearLine);
+
+    /**
+     * Decodes a line of encoded text
+     * @param code encoded text
+     * @return decoded text, or an error message if the code is not valid
+     */
+    String decodeLine(String code);
+}
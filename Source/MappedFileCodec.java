@@ -0,0 +1,237 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedFileCodec encodes and decodes whole files as bytes, with no charset
+ * decoding and no line splitting.  The input file is memory mapped a chunk at a
+ * time, so files larger than 2 GB are handled, and the output is gathered in a
+ * direct ByteBuffer and written with FileChannel.write.  Files are written in
+ * the same layout as HuffmanOutputStream, so either can read what the other wrote.
+ *
+ * @author W. Sam Arrington
+ */
+public final class MappedFileCodec {
+
+    /**
+     * Largest part of a file mapped at once.
+     */
+    public static final int CHUNK_SIZE = 1 << 30;
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private final HuffmanCode code;
+
+    // Key for each byte value, -1 for bytes that are ignored
+    private final int[] keyOf;
+
+    /**
+     * Creates a file codec for text.  Files are encoded with the canonical form
+     * of the code, letters in upper case and every other byte ignored.
+     * @param code HuffmanCode whose code lengths are used to encode
+     * @throws IllegalArgumentException if a code is longer than
+     * HuffmanOutputStream.MAX_STREAM_CODE_LENGTH
+     */
+    public MappedFileCodec(HuffmanCode code){
+        this(code, false);
+    }
+
+    /**
+     * Creates a file codec for text or for any bytes.  Files are encoded with
+     * the canonical form of the code.
+     * @param code HuffmanCode whose code lengths are used to encode
+     * @param allBytes true to encode every byte of a file as its own key, as
+     * for binary or log data with a code from SymbolCode.countBytes, false to
+     * encode letters in upper case and ignore every other byte
+     * @throws IllegalArgumentException if a code is longer than
+     * HuffmanOutputStream.MAX_STREAM_CODE_LENGTH
+     */
+    public MappedFileCodec(HuffmanCode code, boolean allBytes){
+
+        if (LengthLimitedCode.maxCodeLength(code.codeLength)
+                > HuffmanOutputStream.MAX_STREAM_CODE_LENGTH){
+            throw new IllegalArgumentException("Codes longer than "
+                    + HuffmanOutputStream.MAX_STREAM_CODE_LENGTH
+                    + " bits cannot be written, limit them with LengthLimitedCode.");
+        }
+        this.code = code.canonical();
+
+        keyOf = (allBytes ? Alphabet.BYTES : Alphabet.LETTERS).keyOf;
+    }
+
+    /**
+     * Encodes a file.
+     * @param inFile plain text file
+     * @param outFile encoded file to write
+     * @return number of bytes written
+     * @throws IOException if a letter is not in the code or the files cannot be used
+     */
+    public long encodeFile(Path inFile, Path outFile) throws IOException{
+
+        long[] codeBits = code.codeBits;
+        byte[] codeLength = code.codeLength;
+        long startNanos = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        long symbols = 0;
+        long totalBits = 0;
+
+        try (FileChannel in = FileChannel.open(inFile, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(outFile, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+            writeHeader(buffer);
+            BitWriter bits = new BitWriter(buffer);
+
+            long size = in.size();
+            for (long start = 0; start < size; start += CHUNK_SIZE){
+
+                MappedByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(CHUNK_SIZE, size - start));
+                while (chunk.hasRemaining()){
+
+                    int key = keyOf[chunk.get() & 0xFF];
+                    if (key < 0){
+                        continue;
+                    }
+                    int length = key < codeLength.length ? codeLength[key] : 0;
+                    if (length == 0){
+                        throw new IOException("Key " + HuffmanCode.keyName(key)
+                                + " is not in the code.");
+                    }
+
+                    if (buffer.remaining() < 8){
+                        drain(buffer, out);
+                    }
+                    bits.write(codeBits[key], length);
+                    symbols++;
+                    totalBits += length;
+                }
+            }
+
+            // Pads the last byte and writes the trailer
+            if (buffer.remaining() < 9){
+                drain(buffer, out);
+            }
+            buffer.put((byte) bits.finish());
+            drain(buffer, out);
+            CodecMetrics.recordEncode("mapped", symbols, totalBits, startNanos, event);
+            return out.size();
+        }
+    }
+
+    /**
+     * Decodes a file written by encodeFile or HuffmanOutputStream.
+     * @param inFile encoded file
+     * @param outFile file the decoded bytes are written to
+     * @return number of bytes decoded
+     * @throws IOException if the encoded file is not valid or the files cannot be used
+     */
+    public static long decodeFile(Path inFile, Path outFile) throws IOException{
+
+        try (FileChannel in = FileChannel.open(inFile, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(outFile, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+            // Reads the header straight from the channel so its position marks the data
+            DataInputStream header = new DataInputStream(Channels.newInputStream(in));
+            if (header.readInt() != HuffmanOutputStream.STREAM_MAGIC){
+                throw new IOException("Not a Huffman stream.");
+            }
+            byte[] codeLength = CanonicalCode.readLengths(header);
+            if (LengthLimitedCode.maxCodeLength(codeLength)
+                    > HuffmanOutputStream.MAX_STREAM_CODE_LENGTH){
+                throw new IOException("Huffman stream header is corrupt.");
+            }
+            TableDecoder decoder = HuffmanCode.fromCodeLengths(codeLength).tableDecoder;
+
+            // The last byte of the file is the padding of the byte before it
+            long dataStart = in.position();
+            long dataEnd = in.size() - 1;
+            if (dataEnd < dataStart){
+                throw new EOFException("Huffman stream is missing its trailer.");
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(1);
+            in.read(trailer, dataEnd);
+            int padding = trailer.get(0) & 0xFF;
+            if (padding > 7 || (dataEnd == dataStart && padding != 0)){
+                throw new IOException("Huffman stream trailer is corrupt.");
+            }
+            long bitsLeft = (dataEnd - dataStart) * 8 - padding;
+            long startNanos = CodecMetrics.start();
+            Object event = CodecMetrics.beginDecode();
+            long totalBits = bitsLeft;
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+            long decodedCount = 0;
+            long window = 0;
+            int windowBits = 0;
+            long next = dataStart;
+            MappedByteBuffer chunk = null;
+
+            while (bitsLeft > 0 || windowBits > 0){
+
+                // Tops up the window a byte at a time, mapping the next chunk as needed
+                while (windowBits <= HuffmanOutputStream.MAX_STREAM_CODE_LENGTH && bitsLeft > 0){
+                    if (chunk == null || !chunk.hasRemaining()){
+                        chunk = in.map(FileChannel.MapMode.READ_ONLY, next,
+                                Math.min(CHUNK_SIZE, dataEnd - next));
+                        next += chunk.capacity();
+                    }
+                    int bits = (int) Math.min(8, bitsLeft);
+                    long b = (chunk.get() & 0xFF) >>> (8 - bits);
+                    window |= b << (64 - windowBits - bits);
+                    windowBits += bits;
+                    bitsLeft -= bits;
+                }
+
+                long decoded = decoder.decodeFirst(window, windowBits);
+                if (decoded < 0){
+                    throw new IOException("Huffman stream ends inside a code.");
+                }
+                int length = (int) (decoded >>> 32);
+                window <<= length;
+                windowBits -= length;
+
+                if (!buffer.hasRemaining()){
+                    drain(buffer, out);
+                }
+                buffer.put((byte) decoded);
+                decodedCount++;
+            }
+            drain(buffer, out);
+            CodecMetrics.recordDecode("mapped", totalBits, decodedCount, startNanos, event);
+            return decodedCount;
+        }
+    }
+
+    /**
+     * Puts the stream header in the output buffer.
+     */
+    private void writeHeader(ByteBuffer buffer) throws IOException{
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(HuffmanOutputStream.STREAM_MAGIC);
+        CanonicalCode.writeLengths(code.codeLength, headerOut);
+        buffer.put(header.toByteArray());
+    }
+
+    /**
+     * Writes everything in the buffer to the channel and clears it.
+     */
+    private static void drain(ByteBuffer buffer, FileChannel out) throws IOException{
+
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
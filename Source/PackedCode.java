@@ -0,0 +1,385 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * PackedCode writes Huffman encoded text as a packed bitstream, eight bits to a
+ * byte, instead of one '0' or '1' character per bit.  Every packed message starts
+ * with a small header so that it can be decoded without the frequency table:
+ *
+ * 'HUF1' magic number, or 'HUF2' for a canonical code
+ * int number of symbols encoded
+ * byte number of padding bits at the end of the last data byte
+ * the code: for 'HUF1' a short number of code table entries, then for each
+ * entry the key as a char, the code length as a byte and the code bits packed
+ * into whole bytes; for 'HUF2' only the code lengths as written by
+ * CanonicalCode.writeLengths
+ * int number of data bytes, then the data bytes
+ *
+ * All bits are packed most significant bit first.
+ *
+ * @author W. Sam Arrington
+ */
+public final class PackedCode {
+
+    /**
+     * First four bytes of every packed message.
+     */
+    public static final int MAGIC = 0x48554631;
+
+    /**
+     * First four bytes of a packed message with a canonical code.
+     */
+    public static final int CANONICAL_MAGIC = 0x48554632;
+
+    private PackedCode(){
+    }
+
+    /**
+     * Encodes plain text into a packed message.
+     * @param code HuffmanCode used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @return the packed message
+     */
+    public static byte[] encode(HuffmanCode code, String clearText){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(code, clearText, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes plain text and writes the packed message to a stream.
+     * @param code HuffmanCode used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @param out stream the packed message is written to
+     * @throws IOException
+     */
+    public static void encode(HuffmanCode code, String clearText, OutputStream out)
+            throws IOException{
+        writeMessage(code, clearText, out, false);
+    }
+
+    /**
+     * Encodes plain text into a packed message with the canonical form of a code,
+     * whose header holds only the code lengths.
+     * @param code HuffmanCode whose code lengths are used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @return the packed message
+     */
+    public static byte[] encodeCanonical(HuffmanCode code, String clearText){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encodeCanonical(code, clearText, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes plain text with the canonical form of a code and writes the packed
+     * message, whose header holds only the code lengths, to a stream.
+     * @param code HuffmanCode whose code lengths are used to encode the text
+     * @param clearText plain text, non-letters are ignored
+     * @param out stream the packed message is written to
+     * @throws IOException
+     */
+    public static void encodeCanonical(HuffmanCode code, String clearText, OutputStream out)
+            throws IOException{
+        writeMessage(code.canonical(), clearText, out, true);
+    }
+
+    /**
+     * Encodes plain text and writes the header and data of a packed message.
+     */
+    private static void writeMessage(HuffmanCode code, String clearText, OutputStream out,
+            boolean canonical) throws IOException{
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        String cleanLine = cleanText(clearText, 0, clearText.length());
+        BitWriter data = new BitWriter(cleanLine.length() / 2 + 8);
+        int padding = packBits(code, cleanLine, data);
+        CodecMetrics.recordEncode("packed", cleanLine.length(), data.size() * 8L - padding,
+                start, event);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(canonical ? CANONICAL_MAGIC : MAGIC);
+        dataOut.writeInt(cleanLine.length());
+        dataOut.writeByte(padding);
+        if (canonical){
+            CanonicalCode.writeLengths(code.codeLength, dataOut);
+        }else{
+            writeCodeTable(code, dataOut);
+        }
+        dataOut.writeInt(data.size());
+        data.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Keeps the letters of part of a text in upper case and drops everything
+     * else, the same as HuffmanCode.encodeLine does.
+     * @param text plain text
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return the letters in upper case
+     */
+    static String cleanText(CharSequence text, int from, int to){
+
+        int[] keyOf = Alphabet.LETTERS.keyOf;
+        StringBuilder clean = new StringBuilder(to - from);
+        for (int i = from; i < to; i++){
+            char c = text.charAt(i);
+            int key = c < keyOf.length ? keyOf[c] : -1;
+            if (key >= 0){
+                clean.append((char) key);
+            }
+        }
+        return clean.toString();
+    }
+
+    /**
+     * Packs the codes of each symbol of a cleaned text, most significant bit
+     * first, padding the last byte with 0s.
+     * @param code HuffmanCode used to encode the text
+     * @param cleanLine text holding only keys of the code
+     * @param data receives the packed bytes
+     * @return the number of padding bits in the last byte
+     */
+    static int packBits(HuffmanCode code, CharSequence cleanLine, BitWriter data){
+
+        long[] codeBits = code.codeBits;
+        byte[] codeLength = code.codeLength;
+        for (int i = 0; i < cleanLine.length(); i++){
+            char key = cleanLine.charAt(i);
+            int length = key < codeLength.length ? codeLength[key] : 0;
+            if (length == 0){
+                throw new IllegalArgumentException("Key " + key + " is not in the code.");
+            }
+            data.write(codeBits[key], length);
+        }
+        return data.finish();
+    }
+
+    /**
+     * Reads packed data bytes for the table decoder.  Long data is read a
+     * megabyte at a time into a growing array, so a corrupt length runs out of
+     * input before it runs out of memory.
+     * @param in stream positioned at the data
+     * @param dataLength number of data bytes
+     * @return the data bytes
+     * @throws IOException if the stream ends early
+     */
+    static byte[] readData(DataInputStream in, int dataLength) throws IOException{
+
+        byte[] data = new byte[Math.min(dataLength, 1 << 20)];
+        try {
+            for (int read = 0; read < dataLength;){
+                if (read == data.length){
+                    data = Arrays.copyOf(data, (int) Math.min(dataLength, data.length * 2L));
+                }
+                in.readFully(data, read, data.length - read);
+                read = data.length;
+            }
+        } catch (EOFException e){
+            throw new EOFException("Packed message is cut off.");
+        }
+        return data;
+    }
+
+    /**
+     * Decodes a packed message.
+     * @param packed the packed message
+     * @return decoded text
+     * @throws IOException if the message is not a valid packed message
+     */
+    public static String decode(byte[] packed) throws IOException{
+        return decode(new ByteArrayInputStream(packed));
+    }
+
+    /**
+     * Reads a packed message from a stream and decodes it.
+     * @param in stream containing the packed message
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid packed message
+     */
+    public static String decode(InputStream in) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        return decode(dataIn.readInt(), dataIn);
+    }
+
+    /**
+     * Reads a packed message from a stream and decodes it, taking a canonical
+     * code from a registry so that messages sent with the same code lengths
+     * share one code and its decode tables.
+     * @param in stream containing the packed message
+     * @param registry registry the canonical code is taken from
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid packed message
+     */
+    public static String decode(InputStream in, CodecRegistry registry) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        return decode(dataIn.readInt(), dataIn, registry);
+    }
+
+    /**
+     * Decodes a packed message whose magic number has already been read.
+     * @param magic the magic number of the message
+     * @param dataIn stream positioned after the magic number
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid packed message
+     */
+    static String decode(int magic, DataInputStream dataIn) throws IOException{
+        return decode(magic, dataIn, null);
+    }
+
+    /**
+     * Decodes a packed message whose magic number has already been read.
+     * @param magic the magic number of the message
+     * @param dataIn stream positioned after the magic number
+     * @param registry registry a canonical code is taken from, or null to build it
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid packed message
+     */
+    private static String decode(int magic, DataInputStream dataIn, CodecRegistry registry)
+            throws IOException{
+
+        if (magic == ParallelEncoder.BLOCK_MAGIC || magic == ParallelEncoder.SYNC_MAGIC){
+            return new ParallelDecoder(1).decodeBlocks(magic, dataIn);
+        }
+        if (magic == InterleavedCode.INTERLEAVED_MAGIC){
+            return InterleavedCode.decodeStreams(dataIn);
+        }
+        if (magic == IndexedCode.INDEXED_MAGIC){
+            return IndexedCode.decodeMessage(dataIn, registry);
+        }
+        if (magic == ContextCode.CONTEXT_MAGIC){
+            return ContextCode.decodeMessage(dataIn);
+        }
+        if (magic == BlockCode.BLOCK_CODE_MAGIC){
+            return new String(BlockCode.decodeMessage(dataIn), StandardCharsets.ISO_8859_1);
+        }
+        if (magic != MAGIC && magic != CANONICAL_MAGIC){
+            throw new IOException("Not a packed Huffman message.");
+        }
+        int symbolCount = dataIn.readInt();
+        int padding = dataIn.readUnsignedByte();
+        HuffmanCode code;
+        if (magic == CANONICAL_MAGIC){
+            byte[] codeLength = CanonicalCode.readLengths(dataIn);
+            code = registry != null ? registry.getCanonical(codeLength)
+                    : HuffmanCode.fromCodeLengths(codeLength);
+        }else{
+            code = readCodeTable(dataIn);
+        }
+        int dataLength = dataIn.readInt();
+        // Every code is at least a bit long, so more symbols than bits is corrupt
+        if (symbolCount < 0 || padding > 7 || dataLength < 0
+                || dataLength > Integer.MAX_VALUE / 8 || (dataLength == 0 && padding != 0)
+                || symbolCount > dataLength * 8L - padding){
+            throw new IOException("Packed message header is corrupt.");
+        }
+
+        BitReader data = new BitReader(readData(dataIn, dataLength));
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        StringBuilder clearText = new StringBuilder(symbolCount);
+        code.tableDecoder.decode(data, dataLength * 8L - padding, clearText);
+        CodecMetrics.recordDecode("packed", data.position(), clearText.length(), start, event);
+        if (clearText.length() != symbolCount){
+            throw new IOException("Packed message decoded to " + clearText.length()
+                    + " symbols, expected " + symbolCount + ".");
+        }
+        return clearText.toString();
+    }
+
+    /**
+     * Writes the key and code of every entry of a HuffmanCode.
+     */
+    private static void writeCodeTable(HuffmanCode code, DataOutputStream out)
+            throws IOException{
+
+        int entries = 0;
+        for (byte length : code.codeLength){
+            if (length > 0){
+                entries++;
+            }
+        }
+        // Keys and the number of entries are written as chars
+        if (code.codeLength.length > Character.MAX_VALUE + 1 || entries > Character.MAX_VALUE){
+            throw new IllegalArgumentException("Codes with keys past 65535 can only be"
+                    + " sent as canonical code lengths.");
+        }
+
+        out.writeShort(entries);
+        for (int key = 0; key < code.codeLength.length; key++){
+            int length = code.codeLength[key];
+            if (length == 0){
+                continue;
+            }
+            // Left aligns the code and writes it a byte at a time
+            long bits = code.codeBits[key] << (64 - length);
+            out.writeChar(key);
+            out.writeByte(length);
+            for (int i = 0; i < length; i += 8){
+                out.writeByte((int) (bits >>> (56 - i)));
+            }
+        }
+    }
+
+    /**
+     * Reads a code table and makes the HuffmanCode for it.
+     */
+    private static HuffmanCode readCodeTable(DataInputStream in) throws IOException{
+
+        int entries = in.readUnsignedShort();
+        char[] keys = new char[entries];
+        long[] bits = new long[entries];
+        byte[] lengths = new byte[entries];
+        int maxKey = 0;
+
+        for (int e = 0; e < entries; e++){
+
+            keys[e] = in.readChar();
+            int length = in.readUnsignedByte();
+            if (length == 0 || length > HuffmanCode.MAX_CODE_LENGTH){
+                throw new IOException("Code table has a code of length " + length + ".");
+            }
+
+            // Reads the left aligned code a byte at a time and right aligns it
+            long code = 0;
+            for (int i = 0; i < length; i += 8){
+                code |= (long) in.readUnsignedByte() << (56 - i);
+            }
+            bits[e] = code >>> (64 - length);
+            lengths[e] = (byte) length;
+            maxKey = Math.max(maxKey, keys[e]);
+        }
+
+        long[] codeBits = new long[maxKey + 1];
+        byte[] codeLength = new byte[maxKey + 1];
+        for (int e = 0; e < entries; e++){
+            codeBits[keys[e]] = bits[e];
+            codeLength[keys[e]] = lengths[e];
+        }
+
+        try {
+            return new HuffmanCode(codeBits, codeLength);
+        } catch (IllegalArgumentException e){
+            throw new IOException("Code table is corrupt. " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelDecoder decodes block messages written by ParallelEncoder with sync
+ * points on several threads.  The sync points give the first bit and number of
+ * symbols of every block, so the whole output can be allocated up front and each
+ * block decoded on its own straight into its slice of the output.  Block
+ * messages without sync points are decoded a block after another, and messages
+ * of any other kind are decoded by PackedCode, on the calling thread.
+ *
+ * Decoded text in memory cannot be longer than a String.  A block file of any
+ * size is decoded to a stream instead, mapped a window of blocks at a time, one
+ * block for each thread, with the blocks of each window written in order.
+ *
+ * @author W. Sam Arrington
+ */
+public final class ParallelDecoder {
+
+    // Longest array the JVM can make
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int parallelism;
+
+    /**
+     * Creates a parallel decoder.
+     * @param parallelism number of threads to decode with
+     */
+    public ParallelDecoder(int parallelism){
+
+        if (parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Decodes a packed message.
+     * @param packed the packed message
+     * @return decoded text
+     * @throws IOException if the message is not a valid packed message
+     */
+    public String decode(byte[] packed) throws IOException{
+        return decode(new ByteArrayInputStream(packed));
+    }
+
+    /**
+     * Reads a packed message from a stream and decodes it.
+     * @param in stream containing the packed message
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid packed message
+     */
+    public String decode(InputStream in) throws IOException{
+
+        DataInputStream dataIn = new DataInputStream(in);
+        int magic = dataIn.readInt();
+        if (magic != ParallelEncoder.BLOCK_MAGIC && magic != ParallelEncoder.SYNC_MAGIC){
+            return PackedCode.decode(magic, dataIn);
+        }
+        return decodeBlocks(magic, dataIn);
+    }
+
+    /**
+     * Decodes a packed file and writes the decoded text to a stream, a byte a
+     * symbol.  Block messages are decoded a window of blocks at a time, so the
+     * file can be larger than the memory, and other messages are decoded in memory.
+     * @param inFile packed file holding one message
+     * @param out stream the decoded text is written to
+     * @return number of symbols decoded
+     * @throws IOException if the file cannot be read or is not a valid packed message
+     */
+    public long decode(Path inFile, OutputStream out) throws IOException{
+
+        try (FileChannel in = FileChannel.open(inFile, StandardOpenOption.READ)){
+            // The channel is closed here, closing the stream would close it early
+            HeaderInputStream headerBytes = new HeaderInputStream(new BufferedInputStream(
+                    Channels.newInputStream(in)));
+            DataInputStream header = new DataInputStream(headerBytes);
+            int magic = header.readInt();
+            if (magic != ParallelEncoder.BLOCK_MAGIC && magic != ParallelEncoder.SYNC_MAGIC){
+                String clearText = PackedCode.decode(magic, header);
+                for (int i = 0; i < clearText.length(); i++){
+                    out.write(clearText.charAt(i));
+                }
+                return clearText.length();
+            }
+
+            BlockIndex index = new BlockIndex(magic, header, in.size() - headerBytes.count);
+            long dataStart = headerBytes.count;
+            if (in.size() - dataStart < index.dataLength){
+                throw new EOFException("Block message is cut off.");
+            }
+            long start = CodecMetrics.start();
+            Object event = CodecMetrics.beginDecode();
+            long symbolTotal = 0;
+            int blockCount = index.startBit.length;
+            byte[][] decoded = new byte[parallelism][];
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int first = 0; first < blockCount;){
+                    // A window is one block for each thread, and no more than can be mapped at once
+                    long fromByte = index.startBit[first] / 8;
+                    int last = first + 1;
+                    while (last < blockCount && last - first < parallelism
+                            && (index.endBit[last] + 7) / 8 - fromByte <= MappedFileCodec.CHUNK_SIZE){
+                        last++;
+                    }
+                    long toByte = (index.endBit[last - 1] + 7) / 8;
+                    if (toByte - fromByte > Integer.MAX_VALUE){
+                        throw new IOException("Block " + first + " is too large to decode.");
+                    }
+                    ByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, dataStart + fromByte,
+                            toByte - fromByte);
+                    pool.invoke(new DecodeFileBlocks(index, data, fromByte * 8, decoded, first,
+                            first, last));
+                    for (int b = first; b < last; b++){
+                        out.write(decoded[b - first]);
+                        symbolTotal += decoded[b - first].length;
+                        decoded[b - first] = null;
+                    }
+                    first = last;
+                }
+            } catch (UncheckedIOException e){
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+            CodecMetrics.recordDecode(index.symbols != null ? "sync blocks" : "blocks",
+                    index.dataBits(), symbolTotal, start, event);
+            return symbolTotal;
+        }
+    }
+
+    /**
+     * Decodes a block message in memory.
+     * @param magic the magic number of the message, with or without sync points
+     * @param in stream positioned after the magic number
+     * @return decoded text
+     * @throws IOException if the stream does not hold a valid block message or
+     * its text is too long for a String
+     */
+    String decodeBlocks(int magic, DataInputStream in) throws IOException{
+
+        BlockIndex index = new BlockIndex(magic, in, Long.MAX_VALUE);
+        if (index.dataLength > MAX_ARRAY_LENGTH){
+            throw new IOException("Block message is too large to decode in memory,"
+                    + " decode it to a stream.");
+        }
+        byte[] data = PackedCode.readData(in, (int) index.dataLength);
+        return index.symbols != null ? decodeSyncBlocks(index, data)
+                : decodeBlocks(index, data);
+    }
+
+    /**
+     * Decodes the blocks of a block message without sync points one after another.
+     */
+    private static String decodeBlocks(BlockIndex index, byte[] data) throws IOException{
+
+        BitReader reader = new BitReader(data);
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        StringBuilder clearText = new StringBuilder();
+        for (int b = 0; b < index.startBit.length; b++){
+            if (clearText.length() > MAX_ARRAY_LENGTH - index.maxBlockSymbols(b)){
+                throw new IOException("Block message is too large to decode in memory,"
+                        + " decode it to a stream.");
+            }
+            reader.seek(index.startBit[b]);
+            index.code.tableDecoder.decode(reader, index.endBit[b], clearText);
+        }
+        CodecMetrics.recordDecode("blocks", index.dataBits(), clearText.length(), start, event);
+        return clearText.toString();
+    }
+
+    /**
+     * Decodes the blocks of a block message with sync points on the pool, each
+     * straight into its place in the output.
+     */
+    private String decodeSyncBlocks(BlockIndex index, byte[] data) throws IOException{
+
+        int blockCount = index.startBit.length;
+        int[] outStart = new int[blockCount + 1];
+        long symbolTotal = 0;
+        for (int b = 0; b < blockCount; b++){
+            outStart[b] = (int) symbolTotal;
+            symbolTotal += index.symbols[b];
+            if (symbolTotal > MAX_ARRAY_LENGTH){
+                throw new IOException("Block message is too large to decode in memory,"
+                        + " decode it to a stream.");
+            }
+        }
+        outStart[blockCount] = (int) symbolTotal;
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        char[] out = new char[(int) symbolTotal];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DecodeBlocks(index, data, out, outStart, 0, blockCount));
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        CodecMetrics.recordDecode("sync blocks", index.dataBits(), symbolTotal, start, event);
+        return new String(out);
+    }
+
+    /**
+     * The code and block index of a block message, with or without sync points,
+     * as the bits each block starts and ends at in the data.
+     */
+    private static final class BlockIndex {
+
+        final HuffmanCode code;
+        final long[] startBit;
+        final long[] endBit;
+
+        // Number of symbols in each block, null without sync points
+        final int[] symbols;
+
+        final long dataLength;
+
+        /**
+         * Reads the code and the index, checking every block lies inside the data.
+         * The index arrays grow as entries are read, so a corrupt block count
+         * runs out of input before it runs out of memory.
+         * @param magic the magic number of the message
+         * @param in stream positioned after the magic number
+         * @param bytesLeft bytes of the message after the magic number, or
+         * Long.MAX_VALUE if not known
+         * @throws IOException if the index is corrupt
+         */
+        BlockIndex(int magic, DataInputStream in, long bytesLeft) throws IOException{
+
+            HeaderInputStream headerBytes = new HeaderInputStream(in);
+            DataInputStream header = new DataInputStream(headerBytes);
+            code = HuffmanCode.fromCodeLengths(CanonicalCode.readLengths(header));
+            int blockCount = header.readInt();
+            boolean sync = magic == ParallelEncoder.SYNC_MAGIC;
+
+            // Each block has an entry of 9 or 12 bytes, then the data length follows
+            if (blockCount < 0 || (long) blockCount * (sync ? 12 : 9) + 8
+                    > bytesLeft - headerBytes.count){
+                throw new IOException("Block message header is corrupt.");
+            }
+            int capacity = Math.min(blockCount, 1 << 16);
+            long[] startBit = new long[capacity];
+            int[] symbols = new int[capacity];
+            int[] padding = new int[capacity];
+            for (int b = 0; b < blockCount; b++){
+                if (b == capacity){
+                    capacity = (int) Math.min(blockCount, capacity * 2L);
+                    startBit = Arrays.copyOf(startBit, capacity);
+                    symbols = Arrays.copyOf(symbols, capacity);
+                    padding = Arrays.copyOf(padding, capacity);
+                }
+                if (sync){
+                    startBit[b] = header.readLong();
+                    symbols[b] = header.readInt();
+                }else{
+                    long offset = header.readLong();
+                    if (offset < 0 || offset > Long.MAX_VALUE / 8){
+                        throw new IOException("Block index is corrupt.");
+                    }
+                    startBit[b] = offset * 8;
+                    padding[b] = header.readUnsignedByte();
+                }
+            }
+            this.startBit = startBit;
+            this.endBit = new long[blockCount];
+            this.symbols = sync ? symbols : null;
+            dataLength = header.readLong();
+            if (dataLength < 0 || dataLength > Long.MAX_VALUE / 8){
+                throw new IOException("Block message header is corrupt.");
+            }
+
+            // Each block ends where the next starts, less its padding
+            for (int b = 0; b < blockCount; b++){
+                long next = b + 1 < blockCount ? startBit[b + 1] : dataLength * 8;
+                endBit[b] = next - padding[b];
+                if (startBit[b] < 0 || startBit[b] > next || padding[b] > 7
+                        || (startBit[b] == next && padding[b] != 0)
+                        || (sync && (symbols[b] < 0 || symbols[b] > endBit[b] - startBit[b]))){
+                    throw new IOException("Block index is corrupt.");
+                }
+            }
+        }
+
+        /**
+         * @return most symbols block b can hold, a symbol a bit
+         */
+        long maxBlockSymbols(int b){
+            return endBit[b] - startBit[b];
+        }
+
+        long dataBits(){
+
+            long bits = 0;
+            for (int b = 0; b < startBit.length; b++){
+                bits += endBit[b] - startBit[b];
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * Counts the bytes of the header read through it, which is where the data
+     * of a block or indexed message starts in its file.
+     */
+    static final class HeaderInputStream extends FilterInputStream {
+
+        long count;
+
+        HeaderInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException{
+
+            int b = in.read();
+            if (b >= 0){
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException{
+
+            int n = in.read(b, off, len);
+            if (n > 0){
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Decodes a range of blocks, splitting the range in half until one block is left.
+     */
+    @SuppressWarnings("serial")
+    private static final class DecodeBlocks extends RecursiveAction {
+
+        private final BlockIndex index;
+        private final byte[] data;
+        private final char[] out;
+        private final int[] outStart;
+        private final int from;
+        private final int to;
+
+        DecodeBlocks(BlockIndex index, byte[] data, char[] out, int[] outStart, int from,
+                int to){
+            this.index = index;
+            this.data = data;
+            this.out = out;
+            this.outStart = outStart;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+
+            if (to - from > 1){
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecodeBlocks(index, data, out, outStart, from, middle),
+                        new DecodeBlocks(index, data, out, outStart, middle, to));
+                return;
+            }
+
+            BitReader in = new BitReader(data);
+            for (int b = from; b < to; b++){
+                int symbols = outStart[b + 1] - outStart[b];
+                in.seek(index.startBit[b]);
+                int decoded = index.code.tableDecoder.decode(in, index.endBit[b], out,
+                        outStart[b], symbols);
+                if (decoded != symbols){
+                    throw new UncheckedIOException(new IOException("Block " + b + " decoded to "
+                            + decoded + " symbols, expected " + symbols + "."));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a range of the blocks of a window of a mapped file, splitting the
+     * range in half until one block is left, each block into an array of its own.
+     */
+    @SuppressWarnings("serial")
+    private static final class DecodeFileBlocks extends RecursiveAction {
+
+        private final BlockIndex index;
+        private final ByteBuffer data;
+        private final long dataBit;
+        private final byte[][] decoded;
+        private final int first;
+        private final int from;
+        private final int to;
+
+        /**
+         * @param data the mapped window
+         * @param dataBit bit of the message data the window starts at
+         * @param decoded receives the text of block b at index b - first
+         * @param first the first block of the window
+         */
+        DecodeFileBlocks(BlockIndex index, ByteBuffer data, long dataBit, byte[][] decoded,
+                int first, int from, int to){
+            this.index = index;
+            this.data = data;
+            this.dataBit = dataBit;
+            this.decoded = decoded;
+            this.first = first;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+
+            if (to - from > 1){
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecodeFileBlocks(index, data, dataBit, decoded, first, from, middle),
+                        new DecodeFileBlocks(index, data, dataBit, decoded, first, middle, to));
+                return;
+            }
+
+            BitReader in = new BitReader(data);
+            int[] chunk = new int[4096];
+            for (int b = from; b < to; b++){
+                long endBit = index.endBit[b] - dataBit;
+                in.seek(index.startBit[b] - dataBit);
+                ByteArrayOutputStream text = new ByteArrayOutputStream(index.symbols != null
+                        ? index.symbols[b] : (int) Math.min(MAX_ARRAY_LENGTH,
+                        index.maxBlockSymbols(b) / 2 + 16));
+                // A block with a sync point ends at a byte boundary after its padding
+                long left = index.symbols != null ? index.symbols[b] : Long.MAX_VALUE;
+                long slack = index.symbols != null ? 7 : 0;
+                int n;
+                while (left > 0 && (n = index.code.tableDecoder.decode(in, endBit, chunk, 0,
+                        (int) Math.min(chunk.length, left))) > 0){
+                    for (int i = 0; i < n; i++){
+                        text.write(chunk[i]);
+                    }
+                    left -= n;
+                }
+                if (endBit - in.position() > slack
+                        || (index.symbols != null && text.size() != index.symbols[b])){
+                    throw new UncheckedIOException(new IOException("Block " + b + " decoded to "
+                            + text.size() + " symbols in " + (in.position() + dataBit
+                            - index.startBit[b]) + " bits, expected "
+                            + (index.symbols != null ? index.symbols[b] + " symbols in " : "")
+                            + (index.endBit[b] - index.startBit[b]) + " bits."));
+                }
+                decoded[b - first] = text.toByteArray();
+            }
+        }
+    }
+}
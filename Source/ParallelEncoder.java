@@ -0,0 +1,350 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelEncoder encodes large plain text on several threads.  The text is
+ * split into blocks of a fixed number of characters, each block is cleaned and
+ * packed on its own by a ForkJoinPool, and the packed blocks are joined in order
+ * behind an index of where each block starts.  Every block starts on a byte
+ * boundary, so the output is the same whatever the number of threads.
+ *
+ * Text in memory is encoded all at once.  A file is encoded a window of blocks
+ * at a time, one block for each thread, and each window is written before the
+ * next is mapped, so files of any size are encoded in the memory of a window.
+ *
+ * The block message is laid out as:
+ *
+ * 'HUFB' magic number
+ * the code lengths of the canonical code as written by CanonicalCode.writeLengths
+ * int number of blocks
+ * for each block a long offset of its first byte in the data and a byte number
+ * of padding bits at the end of its last byte
+ * long number of data bytes, then the data bytes
+ *
+ * With sync points turned on the magic number is 'HUFS' and each entry of the
+ * index instead holds a long position of the block's first bit in the data and
+ * an int number of symbols in the block, so that ParallelDecoder can decode the
+ * blocks on separate threads straight into their place in the output.
+ *
+ * @author W. Sam Arrington
+ */
+public final class ParallelEncoder {
+
+    /**
+     * First four bytes of a block message.
+     */
+    public static final int BLOCK_MAGIC = 0x48554642;
+
+    /**
+     * First four bytes of a block message with sync points.
+     */
+    public static final int SYNC_MAGIC = 0x48554653;
+
+    /**
+     * Default number of plain text characters in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final HuffmanCode code;
+    private final int blockSize;
+    private final int parallelism;
+    private boolean syncPoints;
+
+    /**
+     * Creates a parallel encoder.  Text is encoded with the canonical form of the code.
+     * @param code HuffmanCode whose code lengths are used to encode
+     * @param blockSize number of plain text characters in a block
+     * @param parallelism number of threads to encode with
+     */
+    public ParallelEncoder(HuffmanCode code, int blockSize, int parallelism){
+
+        if (blockSize < 1){
+            throw new IllegalArgumentException("Block size must be at least 1.");
+        }
+        if (parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.code = code.canonical();
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Chooses whether the block index records sync points, the first bit and
+     * number of symbols of each block, for parallel decoding.
+     * @param syncPoints true to record sync points
+     */
+    public void setSyncPoints(boolean syncPoints){
+        this.syncPoints = syncPoints;
+    }
+
+    /**
+     * Encodes plain text into a block message.
+     * @param clearText plain text, non-letters are ignored
+     * @return the block message
+     */
+    public byte[] encode(CharSequence clearText){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(clearText, out);
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes plain text and writes the block message to a stream.
+     * @param clearText plain text, non-letters are ignored
+     * @param out stream the block message is written to
+     * @throws IOException
+     */
+    public void encode(CharSequence clearText, OutputStream out) throws IOException{
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        int blockCount = (int) (((long) clearText.length() + blockSize - 1) / blockSize);
+        BitWriter[] blocks = new BitWriter[blockCount];
+        int[] padding = new int[blockCount];
+        int[] symbols = new int[blockCount];
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new EncodeBlocks(clearText, null, blocks, padding, symbols, 0,
+                    blockCount));
+        } finally {
+            pool.shutdown();
+        }
+        long symbolTotal = 0;
+        long[] offset = new long[blockCount + 1];
+        for (int b = 0; b < blockCount; b++){
+            symbolTotal += symbols[b];
+            offset[b + 1] = offset[b] + blocks[b].size();
+        }
+        CodecMetrics.recordEncode("blocks", symbolTotal, dataBits(offset, padding), start, event);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        writeHeader(blockCount, dataOut);
+        writeIndex(offset, padding, symbols, dataOut);
+        for (BitWriter block : blocks){
+            block.writeTo(dataOut);
+        }
+        dataOut.flush();
+    }
+
+    /**
+     * Encodes a plain text file and writes the block message to a file, with
+     * neither file held in memory.  The text is mapped a window of blocks at a
+     * time and the packed blocks of each window are written in order before the
+     * next window is mapped.  Room for the index is left after the header and
+     * the index is written last.  Each byte of the file is a character, so an
+     * ASCII file is encoded into the same blocks as its text in memory.
+     * @param inFile plain text file, non-letters are ignored
+     * @param outFile block message file to write
+     * @throws IOException if the files cannot be used
+     * @throws IllegalArgumentException if a letter is not in the code
+     */
+    public void encodeFile(Path inFile, Path outFile) throws IOException{
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        try (FileChannel in = FileChannel.open(inFile, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(outFile, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+            long size = in.size();
+            long blocks = (size + blockSize - 1) / blockSize;
+            if (blocks >= Integer.MAX_VALUE){
+                throw new IOException(inFile + " has too many blocks, use larger blocks.");
+            }
+            int blockCount = (int) blocks;
+            long[] offset = new long[blockCount + 1];
+            int[] padding = new int[blockCount];
+            int[] symbols = new int[blockCount];
+
+            // The header goes first and the data after the room left for the index
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            writeHeader(blockCount, new DataOutputStream(header));
+            writeFully(out, ByteBuffer.wrap(header.toByteArray()), 0);
+            long indexStart = header.size();
+            out.position(indexStart + (long) blockCount * (syncPoints ? 12 : 9) + 8);
+            OutputStream data = new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16);
+
+            // A window is one block for each thread, and no more than can be mapped at once
+            int window = Math.max(1, Math.min(parallelism,
+                    MappedFileCodec.CHUNK_SIZE / blockSize));
+            BitWriter[] windowBlocks = new BitWriter[window];
+            int[] windowPadding = new int[window];
+            int[] windowSymbols = new int[window];
+            long symbolTotal = 0;
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int first = 0; first < blockCount; first += window){
+                    int count = Math.min(window, blockCount - first);
+                    long from = (long) first * blockSize;
+                    ByteBuffer text = in.map(FileChannel.MapMode.READ_ONLY, from,
+                            Math.min((long) count * blockSize, size - from));
+                    pool.invoke(new EncodeBlocks(null, text, windowBlocks, windowPadding,
+                            windowSymbols, 0, count));
+                    for (int b = 0; b < count; b++){
+                        windowBlocks[b].writeTo(data);
+                        offset[first + b + 1] = offset[first + b] + windowBlocks[b].size();
+                        padding[first + b] = windowPadding[b];
+                        symbols[first + b] = windowSymbols[b];
+                        symbolTotal += windowSymbols[b];
+                        windowBlocks[b] = null;
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+            data.flush();
+
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            writeIndex(offset, padding, symbols, new DataOutputStream(index));
+            writeFully(out, ByteBuffer.wrap(index.toByteArray()), indexStart);
+            CodecMetrics.recordEncode("blocks", symbolTotal, dataBits(offset, padding), start,
+                    event);
+        }
+    }
+
+    /**
+     * Writes the magic number, the code lengths and the number of blocks.
+     */
+    private void writeHeader(int blockCount, DataOutputStream out) throws IOException{
+
+        out.writeInt(syncPoints ? SYNC_MAGIC : BLOCK_MAGIC);
+        CanonicalCode.writeLengths(code.codeLength, out);
+        out.writeInt(blockCount);
+    }
+
+    /**
+     * Writes the entry of each block and the number of data bytes.
+     * @param offset first byte of each block in the data, and the number of
+     * data bytes after the last block
+     */
+    private void writeIndex(long[] offset, int[] padding, int[] symbols, DataOutputStream out)
+            throws IOException{
+
+        for (int b = 0; b < padding.length; b++){
+            if (syncPoints){
+                out.writeLong(offset[b] * 8);
+                out.writeInt(symbols[b]);
+            }else{
+                out.writeLong(offset[b]);
+                out.writeByte(padding[b]);
+            }
+        }
+        out.writeLong(offset[padding.length]);
+        out.flush();
+    }
+
+    private static long dataBits(long[] offset, int[] padding){
+
+        long bits = offset[padding.length] * 8;
+        for (int pad : padding){
+            bits -= pad;
+        }
+        return bits;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer bytes, long position)
+            throws IOException{
+
+        while (bytes.hasRemaining()){
+            position += out.write(bytes, position);
+        }
+    }
+
+    /**
+     * Encodes a range of blocks, splitting the range in half until one block is
+     * left.  Block b is the characters of the text, or the bytes of the mapped
+     * file, from b times the block size, and its results go to index b.
+     */
+    @SuppressWarnings("serial")
+    private final class EncodeBlocks extends RecursiveAction {
+
+        private final CharSequence clearText;
+        private final ByteBuffer bytes;
+        private final BitWriter[] blocks;
+        private final int[] padding;
+        private final int[] symbols;
+        private final int from;
+        private final int to;
+
+        EncodeBlocks(CharSequence clearText, ByteBuffer bytes, BitWriter[] blocks,
+                int[] padding, int[] symbols, int from, int to){
+            this.clearText = clearText;
+            this.bytes = bytes;
+            this.blocks = blocks;
+            this.padding = padding;
+            this.symbols = symbols;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+
+            if (to - from > 1){
+                int middle = (from + to) >>> 1;
+                invokeAll(new EncodeBlocks(clearText, bytes, blocks, padding, symbols, from,
+                        middle),
+                        new EncodeBlocks(clearText, bytes, blocks, padding, symbols, middle, to));
+                return;
+            }
+
+            for (int b = from; b < to; b++){
+                long start = (long) b * blockSize;
+                if (clearText != null){
+                    int end = (int) Math.min(start + blockSize, clearText.length());
+                    String cleanLine = PackedCode.cleanText(clearText, (int) start, end);
+                    blocks[b] = new BitWriter(cleanLine.length() / 2 + 8);
+                    padding[b] = PackedCode.packBits(code, cleanLine, blocks[b]);
+                    symbols[b] = cleanLine.length();
+                }else{
+                    int end = (int) Math.min(start + blockSize, bytes.limit());
+                    blocks[b] = new BitWriter((end - (int) start) / 2 + 8);
+                    symbols[b] = packBytes((int) start, end, blocks[b]);
+                    padding[b] = blocks[b].finish();
+                }
+            }
+        }
+
+        /**
+         * Packs the codes of the letters of part of the mapped file.
+         * @return the number of letters
+         */
+        private int packBytes(int start, int end, BitWriter data){
+
+            int[] keyOf = Alphabet.LETTERS.keyOf;
+            long[] codeBits = code.codeBits;
+            byte[] codeLength = code.codeLength;
+            int count = 0;
+            for (int i = start; i < end; i++){
+                int key = keyOf[bytes.get(i) & 0xFF];
+                if (key < 0){
+                    continue;
+                }
+                int length = key < codeLength.length ? codeLength[key] : 0;
+                if (length == 0){
+                    throw new IllegalArgumentException("Key " + HuffmanCode.keyName(key)
+                            + " is not in the code.");
+                }
+                data.write(codeBits[key], length);
+                count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package huffmanencoding;
+
+import java.io.*;
+
+/**
+ * SymbolCode Huffman encodes arrays of symbols from any alphabet instead of
+ * letters of text: every one of the 256 byte values of binary or log data, or
+ * int symbols such as the ids of a word token alphabet of tens of thousands of
+ * keys.  Nothing is filtered out.  The code is either given or built from the
+ * symbols counted in the data, with 64-bit counts, and is sent as the code
+ * lengths of its canonical code, which holds keys up to CanonicalCode.MAX_KEY.
+ *
+ * A symbol message is laid out as:
+ *
+ * 'HUFA' magic number
+ * byte width of a symbol, 1 for bytes or 4 for ints
+ * int number of symbols encoded
+ * the code lengths of the canonical code as written by CanonicalCode.writeLengths
+ * byte number of padding bits at the end of the last data byte
+ * int number of data bytes, then the data bytes
+ *
+ * @author W. Sam Arrington
+ */
+public final class SymbolCode {
+
+    /**
+     * First four bytes of a symbol message.
+     */
+    public static final int SYMBOL_MAGIC = 0x48554641;
+
+    // Symbols decoded at a time when decoding bytes
+    private static final int DECODE_CHUNK = 4096;
+
+    private SymbolCode(){
+    }
+
+    /**
+     * Counts how many times each byte value occurs in part of an array.
+     * @param data the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return count of each byte value indexed by its unsigned value
+     */
+    public static long[] countBytes(byte[] data, int offset, int length){
+
+        long[] counts = new long[256];
+        for (int i = offset; i < offset + length; i++){
+            counts[data[i] & 0xFF]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Counts how many times each symbol occurs in part of an array.
+     * @param symbols the symbols, none negative
+     * @param offset index of the first symbol
+     * @param length number of symbols
+     * @return count of each symbol indexed by symbol
+     * @throws IllegalArgumentException if a symbol is negative or larger than
+     * CanonicalCode.MAX_KEY
+     */
+    public static long[] countSymbols(int[] symbols, int offset, int length){
+
+        int max = 0;
+        for (int i = offset; i < offset + length; i++){
+            if (symbols[i] < 0 || symbols[i] > CanonicalCode.MAX_KEY){
+                throw new IllegalArgumentException("Symbol " + symbols[i] + " is not between 0"
+                        + " and " + CanonicalCode.MAX_KEY + ".");
+            }
+            max = Math.max(max, symbols[i]);
+        }
+        long[] counts = new long[max + 1];
+        for (int i = offset; i < offset + length; i++){
+            counts[symbols[i]]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Encodes bytes with the Huffman code of their own byte counts.
+     * @param data the bytes, at least one
+     * @return the symbol message
+     */
+    public static byte[] encode(byte[] data){
+        return encode(HuffmanCode.fromCounts(countBytes(data, 0, data.length)), data, 0,
+                data.length);
+    }
+
+    /**
+     * Encodes part of a byte array with the canonical form of a code whose keys
+     * are byte values.
+     * @param code HuffmanCode whose code lengths are used to encode the bytes
+     * @param data the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return the symbol message
+     * @throws IllegalArgumentException if a byte value is not in the code
+     */
+    public static byte[] encode(HuffmanCode code, byte[] data, int offset, int length){
+
+        HuffmanCode canonical = code.canonical();
+        long[] codeBits = canonical.codeBits;
+        byte[] codeLength = canonical.codeLength;
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        BitWriter bits = new BitWriter(length / 2 + 8);
+        for (int i = offset; i < offset + length; i++){
+            int key = data[i] & 0xFF;
+            int keyLength = key < codeLength.length ? codeLength[key] : 0;
+            if (keyLength == 0){
+                throw new IllegalArgumentException("Byte " + key + " is not in the code.");
+            }
+            bits.write(codeBits[key], keyLength);
+        }
+        CodecMetrics.recordEncode("bytes", length, bits.bitCount(), start, event);
+        return writeMessage(canonical, 1, length, bits);
+    }
+
+    /**
+     * Encodes int symbols with the Huffman code of their own counts.
+     * @param symbols the symbols, at least one and none negative
+     * @return the symbol message
+     */
+    public static byte[] encode(int[] symbols){
+        return encode(HuffmanCode.fromCounts(countSymbols(symbols, 0, symbols.length)), symbols,
+                0, symbols.length);
+    }
+
+    /**
+     * Encodes part of an int array of symbols with the canonical form of a code.
+     * @param code HuffmanCode whose code lengths are used to encode the symbols
+     * @param symbols the symbols
+     * @param offset index of the first symbol
+     * @param length number of symbols
+     * @return the symbol message
+     * @throws IllegalArgumentException if a symbol is not in the code
+     */
+    public static byte[] encode(HuffmanCode code, int[] symbols, int offset, int length){
+
+        HuffmanCode canonical = code.canonical();
+        long[] codeBits = canonical.codeBits;
+        byte[] codeLength = canonical.codeLength;
+
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginEncode();
+        BitWriter bits = new BitWriter(length + 8);
+        for (int i = offset; i < offset + length; i++){
+            int key = symbols[i];
+            int keyLength = key >= 0 && key < codeLength.length ? codeLength[key] : 0;
+            if (keyLength == 0){
+                throw new IllegalArgumentException("Symbol " + key + " is not in the code.");
+            }
+            bits.write(codeBits[key], keyLength);
+        }
+        CodecMetrics.recordEncode("symbols", length, bits.bitCount(), start, event);
+        return writeMessage(canonical, 4, length, bits);
+    }
+
+    /**
+     * Decodes a symbol message of bytes.
+     * @param message the symbol message
+     * @return the decoded bytes
+     * @throws IOException if the message is not a valid symbol message of bytes
+     */
+    public static byte[] decodeBytes(byte[] message) throws IOException{
+        return decodeBytes(new ByteArrayInputStream(message));
+    }
+
+    /**
+     * Reads a symbol message of bytes from a stream and decodes it.
+     * @param in stream containing the symbol message
+     * @return the decoded bytes
+     * @throws IOException if the stream does not hold a valid symbol message of bytes
+     */
+    public static byte[] decodeBytes(InputStream in) throws IOException{
+
+        Message message = readMessage(new DataInputStream(in), 1);
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        byte[] decoded = new byte[message.symbolCount];
+        int[] chunk = new int[Math.min(DECODE_CHUNK, decoded.length)];
+        int count = 0;
+        while (count < decoded.length){
+            int n = message.code.tableDecoder.decode(message.data, message.dataBits, chunk, 0,
+                    Math.min(chunk.length, decoded.length - count));
+            if (n == 0){
+                break;
+            }
+            for (int i = 0; i < n; i++){
+                decoded[count++] = (byte) chunk[i];
+            }
+        }
+        CodecMetrics.recordDecode("bytes", message.data.position(), count, start, event);
+        checkEnd(message, count);
+        return decoded;
+    }
+
+    /**
+     * Decodes a symbol message of int symbols.
+     * @param message the symbol message
+     * @return the decoded symbols
+     * @throws IOException if the message is not a valid symbol message of ints
+     */
+    public static int[] decodeSymbols(byte[] message) throws IOException{
+        return decodeSymbols(new ByteArrayInputStream(message));
+    }
+
+    /**
+     * Reads a symbol message of int symbols from a stream and decodes it.
+     * @param in stream containing the symbol message
+     * @return the decoded symbols
+     * @throws IOException if the stream does not hold a valid symbol message of ints
+     */
+    public static int[] decodeSymbols(InputStream in) throws IOException{
+
+        Message message = readMessage(new DataInputStream(in), 4);
+        long start = CodecMetrics.start();
+        Object event = CodecMetrics.beginDecode();
+        int[] decoded = new int[message.symbolCount];
+        int count = message.code.tableDecoder.decode(message.data, message.dataBits, decoded, 0,
+                decoded.length);
+        CodecMetrics.recordDecode("symbols", message.data.position(), count, start, event);
+        checkEnd(message, count);
+        return decoded;
+    }
+
+    /**
+     * Writes the header and data of a symbol message.
+     */
+    private static byte[] writeMessage(HuffmanCode canonical, int width, int symbolCount,
+            BitWriter bits){
+
+        int padding = bits.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bits.size() + 64);
+        try {
+            DataOutputStream dataOut = new DataOutputStream(out);
+            dataOut.writeInt(SYMBOL_MAGIC);
+            dataOut.writeByte(width);
+            dataOut.writeInt(symbolCount);
+            CanonicalCode.writeLengths(canonical.codeLength, dataOut);
+            dataOut.writeByte(padding);
+            dataOut.writeInt(bits.size());
+            bits.writeTo(dataOut);
+            dataOut.flush();
+        } catch (IOException e){
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the header and data of a symbol message.
+     */
+    private static Message readMessage(DataInputStream in, int width) throws IOException{
+
+        if (in.readInt() != SYMBOL_MAGIC){
+            throw new IOException("Not a Huffman symbol message.");
+        }
+        int messageWidth = in.readUnsignedByte();
+        if (messageWidth != width){
+            throw new IOException("Symbol message holds " + (messageWidth == 1 ? "bytes"
+                    : "int symbols") + ", not " + (width == 1 ? "bytes." : "int symbols."));
+        }
+        int symbolCount = in.readInt();
+        byte[] codeLength = CanonicalCode.readLengths(in);
+        int padding = in.readUnsignedByte();
+        int dataLength = in.readInt();
+        if (symbolCount < 0 || padding > 7 || dataLength < 0
+                || dataLength > Integer.MAX_VALUE / 8 || (dataLength == 0 && padding != 0)
+                || (width == 1 && codeLength.length > 256)
+                || symbolCount > dataLength * 8L - padding){
+            throw new IOException("Symbol message header is corrupt.");
+        }
+
+        Message message = new Message();
+        message.code = HuffmanCode.fromCodeLengths(codeLength);
+        message.symbolCount = symbolCount;
+        message.data = new BitReader(PackedCode.readData(in, dataLength));
+        message.dataBits = dataLength * 8L - padding;
+        return message;
+    }
+
+    /**
+     * Checks that every symbol was decoded and that the data holds nothing more.
+     */
+    private static void checkEnd(Message message, int count) throws IOException{
+
+        if (count != message.symbolCount || message.data.position() != message.dataBits){
+            throw new IOException("Symbol message decoded to " + count + " symbols in "
+                    + message.data.position() + " bits, expected " + message.symbolCount
+                    + " symbols in " + message.dataBits + " bits.");
+        }
+    }
+
+    /**
+     * The code and data of a symbol message whose header has been read.
+     */
+    private static final class Message {
+
+        HuffmanCode code;
+        int symbolCount;
+        BitReader data;
+        long dataBits;
+    }
+}
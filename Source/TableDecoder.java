@@ -0,0 +1,559 @@
+package huffmanencoding;
+
+import java.util.Arrays;
+
+/**
+ * TableDecoder decodes Huffman encoded text with lookup tables built from a
+ * Huffman tree, or from the code of each key, instead of walking the tree one
+ * bit at a time.  Each probe of the primary table peeks at a fixed number of
+ * bits and resolves every complete symbol that fits in them, up to four symbols
+ * per probe.  Codes longer than the lookup width continue in second-level tables
+ * built for the internal node reached after the first probe, and so on for very
+ * long codes.  The tables are built from a small trie held in int arrays, so no
+ * TreeNode graph is needed once they are made.
+ *
+ * @author W. Sam Arrington
+ */
+public final class TableDecoder {
+
+    /**
+     * Default number of bits resolved by a single table probe.
+     */
+    public static final int DEFAULT_LOOKUP_BITS = 10;
+
+    /**
+     * Largest number of bits a table may be indexed by.
+     */
+    public static final int MAX_LOOKUP_BITS = 16;
+
+    // Most symbols resolved by a single table entry
+    private static final int MAX_SYMBOLS = 4;
+
+    // Symbols decoded at a time into ints before they are copied out as chars
+    private static final int CHUNK = 1024;
+
+    private final int lookupBits;
+
+    /* Trie of the code used while building the tables.  Node 0 is the root, the
+    children of node n are trieChild[2n] for 0 and trieChild[2n + 1] for 1, and
+    trieSymbol[n] is the key of a leaf or -1 for an internal node.
+    */
+    private int[] trieChild;
+    private int[] trieSymbol;
+    private int trieSize;
+
+    // Table t occupies entries tableBase[t] to tableBase[t] + 2^tableBits[t] - 1
+    private int[] tableBase;
+    private int[] tableBits;
+    private int[] tableStart;
+    private int tableCount;
+
+    /* For every entry the number of symbols it resolves, or 0 when the entry
+    links to the table in entryLink.  The symbols and the bit position at the
+    end of each symbol are stored MAX_SYMBOLS to an entry.
+    */
+    private int[] entryCount;
+    private int[] entryLink;
+    private int[] entrySymbol;
+    private byte[] entryEnd;
+    private int entryTotal;
+
+    // Table that starts at each trie node, -1 if there is none yet
+    private int[] tableOf;
+
+    /**
+     * Builds the decoding tables for a Huffman tree using the default lookup width.
+     * @param huffTree Huffman tree used to generate the tables
+     */
+    public TableDecoder(BinaryTree huffTree){
+        this(huffTree, DEFAULT_LOOKUP_BITS);
+    }
+
+    /**
+     * Builds the decoding tables for a Huffman tree.
+     * @param huffTree Huffman tree used to generate the tables
+     * @param lookupBits number of bits peeked by each probe, 1 to 16
+     */
+    public TableDecoder(BinaryTree huffTree, int lookupBits){
+        this(FlatTree.of(huffTree), lookupBits);
+    }
+
+    /**
+     * Builds the decoding tables for a flat Huffman tree using the default lookup width.
+     * @param tree Huffman tree used to generate the tables
+     */
+    public TableDecoder(FlatTree tree){
+        this(tree, DEFAULT_LOOKUP_BITS);
+    }
+
+    /**
+     * Builds the decoding tables for a flat Huffman tree.
+     * @param tree Huffman tree used to generate the tables
+     * @param lookupBits number of bits peeked by each probe, 1 to 16
+     */
+    public TableDecoder(FlatTree tree, int lookupBits){
+
+        this.lookupBits = checkLookupBits(lookupBits);
+        if (tree.isLeaf(tree.root)){
+            throw new IllegalArgumentException("A Huffman tree needs at least two "
+                    + "keys to be decoded.");
+        }
+
+        newTrie(tree.size());
+        copyTree(tree, tree.root, 0);
+        buildTables();
+    }
+
+    /**
+     * Builds the decoding tables for a code given as the code of each key.
+     * @param codeBits code of each key indexed by key, right aligned
+     * @param codeLength length of the code of each key, 0 if the key is not in the code
+     * @param lookupBits number of bits peeked by each probe, 1 to 16
+     * @throws IllegalArgumentException if the code is not prefix free and complete
+     */
+    public TableDecoder(long[] codeBits, byte[] codeLength, int lookupBits){
+
+        this.lookupBits = checkLookupBits(lookupBits);
+
+        int keys = 0;
+        for (byte length : codeLength){
+            if (length > 0){
+                keys++;
+            }
+        }
+        if (keys < 2){
+            throw new IllegalArgumentException("A code needs at least two keys to be decoded.");
+        }
+
+        newTrie(keys * 2);
+        for (int key = 0; key < codeLength.length; key++){
+            if (codeLength[key] > 0){
+                insertCode(key, codeBits[key], codeLength[key]);
+            }
+        }
+        // Every internal node needs both children for the code to be complete
+        for (int node = 0; node < trieSize; node++){
+            if (trieSymbol[node] < 0 && (trieChild[2 * node] == 0 || trieChild[2 * node + 1] == 0)){
+                throw new IllegalArgumentException("Code is not complete.");
+            }
+        }
+        buildTables();
+    }
+
+    private static int checkLookupBits(int lookupBits){
+
+        if (lookupBits < 1 || lookupBits > MAX_LOOKUP_BITS){
+            throw new IllegalArgumentException("Lookup bits must be between 1 and "
+                    + MAX_LOOKUP_BITS + ".");
+        }
+        return lookupBits;
+    }
+
+    /**
+     * Fills the tables starting with the root table, filling a table may queue
+     * more tables.  The trie is dropped afterwards.
+     */
+    private void buildTables(){
+
+        tableBase = new int[4];
+        tableBits = new int[4];
+        tableStart = new int[4];
+        entryCount = new int[1 << lookupBits];
+        entryLink = new int[entryCount.length];
+        entrySymbol = new int[entryCount.length * MAX_SYMBOLS];
+        entryEnd = new byte[entryCount.length * MAX_SYMBOLS];
+        tableOf = new int[trieSize];
+        Arrays.fill(tableOf, -1);
+
+        tableFor(0);
+        for (int t = 0; t < tableCount; t++){
+            fillTable(t);
+        }
+
+        tableOf = null;
+        trieChild = null;
+        trieSymbol = null;
+    }
+
+    private void newTrie(int capacity){
+
+        trieChild = new int[2 * capacity];
+        trieSymbol = new int[capacity];
+        trieSymbol[0] = -1;
+        trieSize = 1;
+    }
+
+    private int newTrieNode(int symbol){
+
+        if (trieSize == trieSymbol.length){
+            trieChild = Arrays.copyOf(trieChild, trieChild.length * 2);
+            trieSymbol = Arrays.copyOf(trieSymbol, trieSymbol.length * 2);
+        }
+        trieSymbol[trieSize] = symbol;
+        return trieSize++;
+    }
+
+    /**
+     * Copies the subtree under a tree node into the trie below a trie node.
+     */
+    private void copyTree(FlatTree tree, int node, int trieNode){
+
+        if (tree.isLeaf(node)){
+            trieSymbol[trieNode] = tree.symbol[node];
+            return;
+        }
+        int left = newTrieNode(-1);
+        trieChild[2 * trieNode] = left;
+        copyTree(tree, tree.left[node], left);
+        int right = newTrieNode(-1);
+        trieChild[2 * trieNode + 1] = right;
+        copyTree(tree, tree.right[node], right);
+    }
+
+    /**
+     * Adds the path of one code to the trie.
+     */
+    private void insertCode(int key, long bits, int length){
+
+        int node = 0;
+        for (int i = length - 1; i >= 0; i--){
+            if (trieSymbol[node] >= 0){
+                throw new IllegalArgumentException("Code is not prefix free.");
+            }
+            int slot = 2 * node + (int) ((bits >>> i) & 1);
+            int next = trieChild[slot];
+            if (next == 0){
+                next = newTrieNode(i == 0 ? key : -1);
+                trieChild[slot] = next;
+            }else if (i == 0){
+                throw new IllegalArgumentException("Code is not prefix free.");
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Number of bits peeked by a probe of the primary table.
+     * @return the lookup width
+     */
+    public int getLookupBits(){
+        return lookupBits;
+    }
+
+    /**
+     * Decodes a line of encoded text made up of 1s and 0s.
+     * @param code encoded text
+     * @return decoded text, or null if the code contains anything other than 1s and 0s
+     */
+    public String decode(String code){
+
+        int length = code.length();
+        BitWriter bits = new BitWriter((length >>> 3) + 1);
+
+        // Packs the text into bytes, most significant bit first
+        for (int i = 0; i < length; i++){
+            int bit = code.charAt(i) - '0';
+            if ((bit & ~1) != 0){
+                return null;
+            }
+            bits.write(bit, 1);
+        }
+        bits.finish();
+
+        StringBuilder clearText = new StringBuilder(length / 2);
+        decode(new BitReader(bits.toByteArray()), length, clearText);
+        return clearText.toString();
+    }
+
+    /**
+     * Decodes bits from a reader up to a bit position.  A code that is cut off
+     * at the end of the bits is ignored.
+     * @param in reader positioned at the first bit to decode
+     * @param toBit position after the last bit to decode
+     * @param out receives the decoded symbols
+     */
+    void decode(BitReader in, long toBit, StringBuilder out){
+
+        int[] chunk = new int[CHUNK];
+        int n;
+        while ((n = decode(in, toBit, chunk, 0, chunk.length)) > 0){
+            for (int i = 0; i < n; i++){
+                out.append((char) chunk[i]);
+            }
+        }
+    }
+
+    /**
+     * Decodes up to a number of symbols from a reader, writing them into an
+     * array.  Decoding stops when the symbols have been decoded or the bits
+     * run out, whichever is first, with the reader after the last symbol.
+     * @param in reader positioned at the first bit to decode
+     * @param toBit position after the last bit to decode
+     * @param out receives the decoded symbols
+     * @param outPos index in out of the first decoded symbol
+     * @param maxSymbols most symbols to decode
+     * @return number of symbols decoded
+     */
+    int decode(BitReader in, long toBit, char[] out, int outPos, int maxSymbols){
+
+        int[] chunk = new int[Math.max(0, Math.min(CHUNK, maxSymbols))];
+        int written = 0;
+        while (written < maxSymbols){
+            int n = decode(in, toBit, chunk, 0, Math.min(chunk.length, maxSymbols - written));
+            if (n == 0){
+                break;
+            }
+            for (int i = 0; i < n; i++){
+                out[outPos + written + i] = (char) chunk[i];
+            }
+            written += n;
+        }
+        return written;
+    }
+
+    /**
+     * Decodes up to a number of symbols from a reader into an int array, for
+     * alphabets whose keys do not fit in a char, such as token ids.  Decoding
+     * stops when the symbols have been decoded or the bits run out, whichever
+     * is first, with the reader after the last symbol.  This is the loop every
+     * other decode of a range of bits goes through, a chunk at a time.
+     * @param in reader positioned at the first bit to decode
+     * @param toBit position after the last bit to decode
+     * @param out receives the decoded symbols
+     * @param outPos index in out of the first decoded symbol
+     * @param maxSymbols most symbols to decode
+     * @return number of symbols decoded
+     */
+    int decode(BitReader in, long toBit, int[] out, int outPos, int maxSymbols){
+
+        int table = 0;
+        int written = 0;
+
+        // Bits of the current code consumed by links to longer tables
+        int linked = 0;
+
+        while (in.position() < toBit && written < maxSymbols){
+
+            long remaining = toBit - in.position();
+            int bits = tableBits[table];
+            int entry = tableBase[table] + (int) in.peek(bits);
+            int count = entryCount[entry];
+
+            // Entry links to a table for a longer code
+            if (count == 0){
+                if (bits > remaining){
+                    break;
+                }
+                in.consume(bits);
+                linked += bits;
+                table = entryLink[entry];
+                continue;
+            }
+
+            int slot = entry * MAX_SYMBOLS;
+            int k = 0;
+            while (k < count && written < maxSymbols && entryEnd[slot + k] <= remaining){
+                out[outPos + written++] = entrySymbol[slot + k++];
+            }
+            // Code cut off by the end of the input or enough symbols decoded,
+            // the reader is left after the last symbol decoded
+            if (k < count){
+                if (k > 0){
+                    in.consume(entryEnd[slot + k - 1]);
+                    linked = 0;
+                }
+                break;
+            }
+            in.consume(entryEnd[slot + count - 1]);
+            table = 0;
+            linked = 0;
+        }
+        // A code cut off after a link is given back, so a later call starts at it
+        if (linked > 0){
+            in.seek(in.position() - linked);
+        }
+        return written;
+    }
+
+    /**
+     * Decodes symbols dealt in turn to 2 or more streams, so that symbol i is in
+     * stream i % streams.  Each pass of the loop takes one symbol from every
+     * stream, and as the streams do not depend on each other their table probes
+     * can be worked on at the same time.
+     * @param in a reader for each stream, positioned at its first bit
+     * @param out receives the decoded symbols, as many as it holds
+     */
+    void decodeInterleaved(BitReader[] in, char[] out){
+
+        int streams = in.length;
+        int whole = out.length - out.length % streams;
+        int o = 0;
+        if (streams == 4){
+            BitReader in0 = in[0];
+            BitReader in1 = in[1];
+            BitReader in2 = in[2];
+            BitReader in3 = in[3];
+            for (; o < whole; o += 4){
+                out[o] = (char) decodeNext(in0);
+                out[o + 1] = (char) decodeNext(in1);
+                out[o + 2] = (char) decodeNext(in2);
+                out[o + 3] = (char) decodeNext(in3);
+            }
+        }else if (streams == 2){
+            BitReader in0 = in[0];
+            BitReader in1 = in[1];
+            for (; o < whole; o += 2){
+                out[o] = (char) decodeNext(in0);
+                out[o + 1] = (char) decodeNext(in1);
+            }
+        }
+        // The last symbols, and every symbol for other numbers of streams
+        for (; o < out.length; o++){
+            out[o] = (char) decodeNext(in[o % streams]);
+        }
+    }
+
+    /**
+     * Decodes one symbol from a reader.  Bits past the end of the data read as
+     * 0s, so the caller checks the reader's position afterwards.
+     * @param in reader positioned at the start of a code
+     * @return the symbol
+     */
+    int decodeNext(BitReader in){
+
+        int table = 0;
+        while (true){
+
+            int bits = tableBits[table];
+            int entry = tableBase[table] + (int) in.peek(bits);
+
+            // Entry links to a table for a longer code
+            if (entryCount[entry] == 0){
+                in.consume(bits);
+                table = entryLink[entry];
+                continue;
+            }
+
+            int slot = entry * MAX_SYMBOLS;
+            in.consume(entryEnd[slot]);
+            return entrySymbol[slot];
+        }
+    }
+
+    /**
+     * Decodes the first symbol held in the top bits of a window of bits.
+     * @param window bits to decode, most significant bit first
+     * @param available number of valid bits at the top of the window
+     * @return the length of the code shifted left 32 bits ORed with the symbol,
+     * or -1 if the valid bits hold only the start of a code
+     */
+    long decodeFirst(long window, int available){
+
+        int pos = 0;
+        int table = 0;
+
+        while (true){
+
+            int bits = tableBits[table];
+            int entry = tableBase[table] + (int) ((window << pos) >>> (64 - bits));
+
+            // Entry links to a table for a longer code
+            if (entryCount[entry] == 0){
+                pos += bits;
+                if (pos > available){
+                    return -1;
+                }
+                table = entryLink[entry];
+                continue;
+            }
+
+            int slot = entry * MAX_SYMBOLS;
+            int end = pos + entryEnd[slot];
+            if (end > available){
+                return -1;
+            }
+            return ((long) end << 32) | entrySymbol[slot];
+        }
+    }
+
+    /**
+     * Returns the table that starts decoding from a node, queueing a new table
+     * if there is none yet.
+     */
+    private int tableFor(int start){
+
+        if (tableOf[start] >= 0){
+            return tableOf[start];
+        }
+
+        if (tableCount == tableBase.length){
+            tableBase = Arrays.copyOf(tableBase, tableCount * 2);
+            tableBits = Arrays.copyOf(tableBits, tableCount * 2);
+            tableStart = Arrays.copyOf(tableStart, tableCount * 2);
+        }
+
+        int bits = Math.min(lookupBits, height(start));
+        int size = 1 << bits;
+        if (entryTotal + size > entryCount.length){
+            int capacity = Math.max(entryCount.length * 2, entryTotal + size);
+            entryCount = Arrays.copyOf(entryCount, capacity);
+            entryLink = Arrays.copyOf(entryLink, capacity);
+            entrySymbol = Arrays.copyOf(entrySymbol, capacity * MAX_SYMBOLS);
+            entryEnd = Arrays.copyOf(entryEnd, capacity * MAX_SYMBOLS);
+        }
+
+        tableBase[tableCount] = entryTotal;
+        tableBits[tableCount] = bits;
+        tableStart[tableCount] = start;
+        entryTotal += size;
+        tableOf[start] = tableCount;
+        return tableCount++;
+    }
+
+    /**
+     * Fills every entry of a table by walking the tree along the bits of its index.
+     */
+    private void fillTable(int table){
+
+        int bits = tableBits[table];
+        int base = tableBase[table];
+
+        for (int index = 0; index < (1 << bits); index++){
+
+            int entry = base + index;
+            int slot = entry * MAX_SYMBOLS;
+            int count = 0;
+            int check = tableStart[table];
+
+            for (int i = 0; i < bits && count < MAX_SYMBOLS; i++){
+
+                check = trieChild[2 * check + ((index >>> (bits - 1 - i)) & 1)];
+
+                if (trieSymbol[check] >= 0){
+                    entrySymbol[slot + count] = trieSymbol[check];
+                    entryEnd[slot + count] = (byte) (i + 1);
+                    count++;
+                    check = 0;
+                }
+            }
+
+            entryCount[entry] = count;
+            // No symbol completes within the table bits, continue at a deeper table
+            if (count == 0){
+                int link = tableFor(check);
+                entryLink[entry] = link;
+            }
+        }
+    }
+
+    /**
+     * Returns the depth of the deepest leaf below a trie node.
+     */
+    private int height(int node){
+
+        if (trieSymbol[node] >= 0){
+            return 0;
+        }
+        return 1 + Math.max(height(trieChild[2 * node]), height(trieChild[2 * node + 1]));
+    }
+}
@@ -4,7 +4,9 @@ package huffmanencoding;
 /**
  * TreeNode is a class for the nodes in a Huffman Tree.  Each node has a key and
  * and a frequency associated with that key.  Each node also has a pointer to
- * left child and a pointer to the right child.
+ * left child and a pointer to the right child.  Internal nodes keep the number
+ * of keys below them and the smallest of those keys to break frequency ties,
+ * their key string is only filled in when a report asks for it.
  * 
  * @author W. Sam Arrington
  */
@@ -13,21 +15,94 @@ public class TreeNode {
     
     // Attributes
     public String key;
-    public int freq;
+    public long freq;
     public TreeNode left;
     public TreeNode right;
+    public int keyCount;
+    public char minKey;
     
     /*Constructor:  The key and frequency are set during construction but may be
     altered after construction.  The left and right nodes can be set later.
     */
     
-    TreeNode(String key, int freq){
+    TreeNode(String key, long freq){
             
         this.key = key;
         this.freq = freq;
         this.left = null;
         this.right = null;
+        this.keyCount = key == null ? 0 : key.length();
+        this.minKey = key == null || key.isEmpty() ? 0 : key.charAt(0);
         
     }
+
+    /*Constructor:  Creates the internal node joining two nodes.  The frequency
+    is the sum of the children's and the key is left null until asked for.
+    */
+
+    TreeNode(TreeNode left, TreeNode right){
+
+        this.key = null;
+        this.freq = left.freq + right.freq;
+        this.left = left;
+        this.right = right;
+        this.keyCount = left.keyCount + right.keyCount;
+        this.minKey = (char) Math.min(left.minKey, right.minKey);
+    }
+
+    /**
+     * Checks to see if the node is a leaf.
+     * @return true if the node has no children
+     */
+    public boolean isLeaf(){
+        return left == null && right == null;
+    }
+
+    /**
+     * Returns the keys of every leaf below the node in alphabetical order,
+     * filling in the key of internal nodes on the way.
+     * @return the key of the node
+     */
+    public String keys(){
+
+        if (key != null){
+            return key;
+        }
+
+        String leftKeys = left.keys();
+        String rightKeys = right.keys();
+
+        // Merges the two sorted key strings
+        StringBuilder merged = new StringBuilder(leftKeys.length() + rightKeys.length());
+        int i = 0;
+        int j = 0;
+        while (i < leftKeys.length() || j < rightKeys.length()){
+            if (j == rightKeys.length() || (i < leftKeys.length()
+                    && leftKeys.charAt(i) <= rightKeys.charAt(j))){
+                merged.append(leftKeys.charAt(i++));
+            }else{
+                merged.append(rightKeys.charAt(j++));
+            }
+        }
+        key = merged.toString();
+        return key;
+    }
+
+    /**
+     * Orders nodes the way a HuffmanQueue does: by frequency, then by number of
+     * keys, then by smallest key.
+     * @param other node to compare with
+     * @return true if this node comes out of the queue before the other
+     */
+    public boolean before(TreeNode other){
+
+        if (freq != other.freq){
+            return freq < other.freq;
+        }
+        if (keyCount != other.keyCount){
+            return keyCount < other.keyCount;
+        }
+        return minKey < other.minKey;
+    }
     
 }
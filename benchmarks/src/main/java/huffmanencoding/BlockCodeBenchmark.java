@@ -0,0 +1,66 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * BlockCodeBenchmark times encoding and decoding Corpus.SYMBOLS letters with
+ * BlockCode, which picks for each block between a new code, the last code and
+ * raw storage, for small and large blocks.  Each operation is one symbol, so
+ * the score is in ns/symbol.  The choices made are printed at setup.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockCodeBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    @Param({"4096", "65536"})
+    public int blockSize;
+
+    private BlockCode blockCode;
+    private byte[] text;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException{
+
+        text = corpus.text().getBytes(StandardCharsets.US_ASCII);
+        blockCode = new BlockCode(Alphabet.LETTERS, blockSize);
+        encoded = blockCode.encode(text, 0, text.length);
+        if (!new String(BlockCode.decode(encoded), StandardCharsets.US_ASCII)
+                .equals(corpus.text())){
+            throw new IllegalStateException("Decoded text does not match the corpus.");
+        }
+        System.out.println(blockCode.blocks(BlockCode.Choice.NEW_TABLE) + " new, "
+                + blockCode.blocks(BlockCode.Choice.REUSE) + " reused, "
+                + blockCode.blocks(BlockCode.Choice.RAW) + " raw, " + encoded.length + " bytes");
+    }
+
+    /**
+     * Encodes the corpus, choosing how to send each block.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public byte[] encode(){
+        return blockCode.encode(text, 0, text.length);
+    }
+
+    /**
+     * Decodes the corpus.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public byte[] decode() throws IOException{
+        return BlockCode.decode(encoded);
+    }
+}
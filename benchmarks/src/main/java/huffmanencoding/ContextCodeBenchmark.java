@@ -0,0 +1,62 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * ContextCodeBenchmark times encoding and decoding Corpus.SYMBOLS letters
+ * with order-1 context codes of at most 1, 8 or 27 codes, 1 being the cost
+ * of switching tables with nothing gained.  Each operation is one symbol, so
+ * the score is in ns/symbol.  The size of each message is printed at setup.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextCodeBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    @Param({"1", "8", "27"})
+    public int maxTables;
+
+    private String text;
+    private ContextCode code;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException{
+
+        text = corpus.text();
+        code = ContextCode.build(text, maxTables);
+        encoded = code.encode(text);
+        if (!ContextCode.decode(encoded).equals(text)){
+            throw new IllegalStateException("Decoded text does not match the corpus.");
+        }
+        System.out.println(code.tableCount() + " codes, " + encoded.length + " bytes");
+    }
+
+    /**
+     * Encodes the corpus, switching codes by the previous letter.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public byte[] encode(){
+        return code.encode(text);
+    }
+
+    /**
+     * Decodes the corpus a symbol at a time, switching codes by the previous letter.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public String decode() throws IOException{
+        return ContextCode.decode(encoded);
+    }
+}
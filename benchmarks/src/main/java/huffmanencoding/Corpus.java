@@ -0,0 +1,123 @@
+package huffmanencoding;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Corpus builds the frequency tables and texts the benchmarks run on.  The
+ * uniform and skewed corpora are generated, and the text corpus repeats
+ * Test/Input/ClearText.txt with the code from Test/Input/FreqTable.txt.
+ *
+ * @author W. Sam Arrington
+ */
+public enum Corpus {
+
+    /**
+     * Every letter equally likely, so every code is 4 or 5 bits.
+     */
+    UNIFORM,
+
+    /**
+     * Letter frequencies falling off geometrically, so codes run from 1 bit to
+     * the depth of the alphabet.
+     */
+    SKEWED,
+
+    /**
+     * The sample text and frequency table from Test/Input.
+     */
+    TEXT;
+
+    /**
+     * Number of symbols in the generated texts.
+     */
+    public static final int SYMBOLS = 1 << 20;
+
+    private static final long SEED = 0x48554631L;
+
+    /**
+     * Makes the Huffman code for this corpus.
+     * @return the code
+     * @throws IOException if Test/Input cannot be read
+     */
+    public HuffmanCode code() throws IOException{
+
+        if (this == TEXT){
+            return new HuffmanCode(HuffmanEncoding.MakeHuffmanTree(
+                    new HuffmanQueue(inputFile("FreqTable.txt").toString())));
+        }
+        return new HuffmanCode(HuffmanEncoding.MakeHuffmanTree(new HuffmanQueue(leaves())));
+    }
+
+    /**
+     * Makes a text of SYMBOLS letters drawn from this corpus.
+     * @return the text
+     * @throws IOException if Test/Input cannot be read
+     */
+    public String text() throws IOException{
+
+        StringBuilder text = new StringBuilder(SYMBOLS);
+        if (this == TEXT){
+            String sample = new String(Files.readAllBytes(inputFile("ClearText.txt")), "US-ASCII");
+            sample = PackedCode.cleanText(sample, 0, sample.length());
+            while (text.length() < SYMBOLS){
+                text.append(sample, 0, Math.min(sample.length(), SYMBOLS - text.length()));
+            }
+            return text.toString();
+        }
+
+        // Draws letters in proportion to their frequencies
+        TreeNode[] leaves = leaves();
+        long[] cumulative = new long[leaves.length];
+        long total = 0;
+        for (int i = 0; i < leaves.length; i++){
+            total += leaves[i].freq;
+            cumulative[i] = total;
+        }
+        Random random = new Random(SEED);
+        for (int s = 0; s < SYMBOLS; s++){
+            long pick = (long) (random.nextDouble() * total);
+            int i = 0;
+            while (cumulative[i] <= pick){
+                i++;
+            }
+            text.append(leaves[i].key);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Makes leaves for the letters A to Z with this corpus' frequencies.
+     */
+    private TreeNode[] leaves(){
+
+        TreeNode[] leaves = new TreeNode[26];
+        for (int i = 0; i < leaves.length; i++){
+            int freq = this == UNIFORM ? 1000 : (int) Math.max(1, 1000000 * Math.pow(0.6, i));
+            leaves[i] = new TreeNode(String.valueOf((char) ('A' + i)), freq);
+        }
+        return leaves;
+    }
+
+    /**
+     * Finds a file in Test/Input, from the directory named by the huffman.input
+     * property or from the project or benchmarks directory.
+     * @param name file name
+     * @return path of the file
+     * @throws FileNotFoundException if the file is not found
+     */
+    static Path inputFile(String name) throws FileNotFoundException{
+
+        String[] dirs = {System.getProperty("huffman.input", "Test/Input"), "../Test/Input"};
+        for (String dir : dirs){
+            Path path = Paths.get(dir, name);
+            if (Files.isReadable(path)){
+                return path;
+            }
+        }
+        throw new FileNotFoundException(name + " not found, set -Dhuffman.input to the Test/Input directory.");
+    }
+}
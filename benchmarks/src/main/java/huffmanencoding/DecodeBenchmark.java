@@ -0,0 +1,53 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * DecodeBenchmark times decoding Corpus.SYMBOLS letters written as 1s and 0s
+ * with each decode engine.  Each operation is one symbol, so the score is in
+ * ns/symbol, and since every symbol is one byte of plain text, 1000 divided by
+ * the score is the throughput in MB/s.  Packed and buffer decoding always use
+ * the lookup tables and are timed by PackedDecodeBenchmark.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    @Param({"TABLE", "TREE"})
+    public HuffmanCode.DecodeEngine engine;
+
+    private HuffmanCode code;
+    private String encoded;
+
+    @Setup
+    public void setup() throws IOException{
+
+        code = corpus.code();
+        code.setDecodeEngine(engine);
+        String text = corpus.text();
+        encoded = code.encodeLine(text);
+        if (!code.decodeLine(encoded).equals(text)){
+            throw new IllegalStateException("Decoded text does not match the corpus.");
+        }
+    }
+
+    /**
+     * Decodes a line of 1s and 0s.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public String decodeLine(){
+        return code.decodeLine(encoded);
+    }
+}
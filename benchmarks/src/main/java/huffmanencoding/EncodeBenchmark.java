@@ -0,0 +1,68 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * EncodeBenchmark times encoding Corpus.SYMBOLS letters.  Each operation is one
+ * symbol, so the score is in ns/symbol, and since every symbol is one byte of
+ * plain text, 1000 divided by the score is the throughput in MB/s.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodeBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    private HuffmanCode code;
+    private String text;
+    private BufferCodec bufferCodec;
+    private byte[] textBytes;
+    private byte[] encodedBytes;
+
+    @Setup
+    public void setup() throws IOException{
+
+        code = corpus.code();
+        text = corpus.text();
+        bufferCodec = new BufferCodec(code, Alphabet.LETTERS);
+        textBytes = text.getBytes(StandardCharsets.US_ASCII);
+        encodedBytes = new byte[(int) bufferCodec.maxEncodedBytes(textBytes.length)];
+    }
+
+    /**
+     * Encodes the text as a line of 1s and 0s.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public String encodeLine(){
+        return code.encodeLine(text);
+    }
+
+    /**
+     * Encodes the text into a packed message.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public byte[] encodePacked(){
+        return PackedCode.encode(code, text);
+    }
+
+    /**
+     * Encodes the text's bytes into a buffer that is used again, allocating nothing.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public long encodeBuffer(){
+        return bufferCodec.encode(textBytes, 0, textBytes.length, encodedBytes, 0);
+    }
+}
@@ -0,0 +1,61 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * HistogramBenchmark times counting the letters of Corpus.SYMBOLS bytes of
+ * text with a Histogram, on one thread or several, counting every block or
+ * a sample of them.  Each operation is one input byte, so the score is in
+ * ns/byte.  Blocks are 64 KB so that the corpus splits into enough of them.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistogramBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"1", "8"})
+    public int sampling;
+
+    private Histogram histogram;
+    private byte[] text;
+
+    @Setup
+    public void setup() throws IOException{
+
+        text = corpus.text().getBytes(StandardCharsets.US_ASCII);
+        histogram = new Histogram(Alphabet.LETTERS, 1 << 16, threads);
+        histogram.setSampling(sampling);
+    }
+
+    /**
+     * Counts the text, scaling sampled counts up to its length.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public long[] count(){
+        return histogram.count(text, 0, text.length);
+    }
+
+    /**
+     * Counts the text and builds its code, the whole first pass of a job.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public HuffmanCode countAndBuild(){
+        return HuffmanCode.fromCounts(histogram.count(text, 0, text.length));
+    }
+}
@@ -0,0 +1,50 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * InterleavedDecodeBenchmark times decoding Corpus.SYMBOLS letters packed as
+ * one canonical bitstream or as 2 or 4 interleaved bitstreams.  Each operation
+ * is one symbol, so the score is in ns/symbol.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterleavedDecodeBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    @Param({"1", "2", "4"})
+    public int streams;
+
+    private byte[] packed;
+
+    @Setup
+    public void setup() throws IOException{
+
+        HuffmanCode code = corpus.code();
+        String text = corpus.text();
+        packed = streams == 1 ? PackedCode.encodeCanonical(code, text)
+                : InterleavedCode.encode(code, text, streams);
+        if (!PackedCode.decode(packed).equals(text)){
+            throw new IllegalStateException("Decoded text does not match the corpus.");
+        }
+    }
+
+    /**
+     * Decodes the packed message, 1 stream being a plain canonical message.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public String decode() throws IOException{
+        return PackedCode.decode(packed);
+    }
+}
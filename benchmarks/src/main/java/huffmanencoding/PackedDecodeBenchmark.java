@@ -0,0 +1,69 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * PackedDecodeBenchmark times decoding Corpus.SYMBOLS letters from a packed
+ * message and from a caller's buffer.  Both always decode with the lookup
+ * tables, so unlike DecodeBenchmark there is no engine to choose.  Each
+ * operation is one symbol, so the score is in ns/symbol, and 1000 divided by
+ * the score is the throughput in MB/s.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PackedDecodeBenchmark {
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    private byte[] packed;
+    private BufferCodec bufferCodec;
+    private byte[] encodedBytes;
+    private long encodedBits;
+    private byte[] decodedBytes;
+
+    @Setup
+    public void setup() throws IOException{
+
+        HuffmanCode code = corpus.code();
+        String text = corpus.text();
+        packed = PackedCode.encode(code, text);
+        if (!PackedCode.decode(packed).equals(text)){
+            throw new IllegalStateException("Decoded text does not match the corpus.");
+        }
+
+        bufferCodec = new BufferCodec(code, Alphabet.LETTERS);
+        byte[] textBytes = text.getBytes(StandardCharsets.US_ASCII);
+        encodedBytes = new byte[(int) bufferCodec.maxEncodedBytes(textBytes.length)];
+        encodedBits = bufferCodec.encode(textBytes, 0, textBytes.length, encodedBytes, 0);
+        decodedBytes = new byte[textBytes.length];
+    }
+
+    /**
+     * Decodes a packed message.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public String decodePacked() throws IOException{
+        return PackedCode.decode(packed);
+    }
+
+    /**
+     * Decodes into a buffer that is used again, allocating nothing.
+     */
+    @Benchmark
+    @OperationsPerInvocation(Corpus.SYMBOLS)
+    public int decodeBuffer(){
+        return bufferCodec.decode(encodedBytes, 0, encodedBits, decodedBytes, 0,
+                decodedBytes.length);
+    }
+}
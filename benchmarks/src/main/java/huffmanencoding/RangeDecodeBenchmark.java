@@ -0,0 +1,57 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * RangeDecodeBenchmark times decoding RANGE letters from the middle of an
+ * indexed message of Corpus.SYMBOLS letters, for checkpoint intervals from
+ * dense to sparse.  Each operation is one decoded symbol, so the score is in
+ * ns/symbol and includes the symbols skipped after the checkpoint.  The index
+ * of each message takes 8 bytes per checkpoint.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeDecodeBenchmark {
+
+    // Symbols decoded by each operation
+    private static final int RANGE = 1000;
+
+    @Param({"UNIFORM", "SKEWED", "TEXT"})
+    public Corpus corpus;
+
+    @Param({"64", "1024", "16384"})
+    public int interval;
+
+    private IndexedReader reader;
+    private long from;
+
+    @Setup
+    public void setup() throws IOException{
+
+        String text = corpus.text();
+        reader = new IndexedReader(IndexedCode.encode(corpus.code(), text, interval));
+        // Starts just before a checkpoint, the most symbols to skip
+        from = (Corpus.SYMBOLS / 2 / interval + 1) * (long) interval - 1;
+        if (!reader.decodeRange(from, from + RANGE).equals(
+                text.substring((int) from, (int) from + RANGE))){
+            throw new IllegalStateException("Decoded range does not match the corpus.");
+        }
+    }
+
+    /**
+     * Decodes the range, seeking to the checkpoint before it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(RANGE)
+    public String decodeRange() throws IOException{
+        return reader.decodeRange(from, from + RANGE);
+    }
+}
@@ -0,0 +1,119 @@
+package huffmanencoding;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * TreeBuildBenchmark times building the Huffman queue, tree and code for
+ * alphabets of several sizes, fetching the built code from a CodecRegistry, and
+ * reading the frequency table file.
+ *
+ * @author W. Sam Arrington
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeBuildBenchmark {
+
+    @Param({"4", "26", "64", "256"})
+    public int alphabetSize;
+
+    private String[] keys;
+    private int[] symbols;
+    private int[] freqs;
+    private String freqTableFile;
+    private long[] freqByKey;
+    private CodecRegistry registry;
+
+    @Setup
+    public void setup() throws IOException{
+
+        // Zipf-like frequencies shuffled over the alphabet
+        Random random = new Random(alphabetSize);
+        keys = new String[alphabetSize];
+        symbols = new int[alphabetSize];
+        freqs = new int[alphabetSize];
+        for (int i = 0; i < alphabetSize; i++){
+            keys[i] = String.valueOf((char) i);
+            symbols[i] = i;
+            freqs[i] = 1000000 / (i + 1) + random.nextInt(100);
+        }
+        for (int i = alphabetSize - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int swap = freqs[i];
+            freqs[i] = freqs[j];
+            freqs[j] = swap;
+        }
+        freqTableFile = Corpus.inputFile("FreqTable.txt").toString();
+
+        freqByKey = new long[alphabetSize];
+        for (int i = 0; i < alphabetSize; i++){
+            freqByKey[i] = freqs[i];
+        }
+        registry = new CodecRegistry(16);
+        registry.get(freqByKey);
+    }
+
+    /**
+     * Makes the leaves, queues them and builds the tree.
+     */
+    @Benchmark
+    public BinaryTree buildTree(){
+        return HuffmanEncoding.MakeHuffmanTree(new HuffmanQueue(leaves()));
+    }
+
+    /**
+     * Builds the tree and the code tables and lookup tables made from it.
+     */
+    @Benchmark
+    public HuffmanCode buildCode(){
+        return new HuffmanCode(HuffmanEncoding.MakeHuffmanTree(new HuffmanQueue(leaves())));
+    }
+
+    /**
+     * Builds the same tree as flat arrays with no TreeNodes.
+     */
+    @Benchmark
+    public FlatTree buildFlatTree(){
+        return FlatTree.build(symbols, freqs);
+    }
+
+    /**
+     * Builds the flat tree and the code tables and lookup tables made from it.
+     */
+    @Benchmark
+    public HuffmanCode buildFlatCode(){
+        return new HuffmanCode(FlatTree.build(symbols, freqs));
+    }
+
+    /**
+     * Fetches the same code from a registry that already holds it, which
+     * fingerprints the frequency table and skips the build.
+     */
+    @Benchmark
+    public HuffmanCode cachedCode(){
+        return registry.get(freqByKey);
+    }
+
+    /**
+     * Reads Test/Input/FreqTable.txt into a queue, which does not depend on alphabetSize.
+     */
+    @Benchmark
+    public HuffmanQueue parseFrequencyTable() throws IOException{
+        return new HuffmanQueue(freqTableFile);
+    }
+
+    private TreeNode[] leaves(){
+
+        TreeNode[] leaves = new TreeNode[alphabetSize];
+        for (int i = 0; i < alphabetSize; i++){
+            leaves[i] = new TreeNode(keys[i], freqs[i]);
+        }
+        return leaves;
+    }
+}
@@ -0,0 +1,73 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * AdaptiveHuffmanCodeTest round trips text through a pair of adaptive codes,
+ * one encoding and one decoding, and checks that invalid codes are reported.
+ *
+ * @author W. Sam Arrington
+ */
+class AdaptiveHuffmanCodeTest {
+
+    private static final String INVALID = "Not a valid code.  Only 1s or 0s allowed.";
+
+    @Test
+    void linesDecodeToTheLettersOfTheText() throws IOException{
+
+        AdaptiveHuffmanCode encoder = new AdaptiveHuffmanCode();
+        AdaptiveHuffmanCode decoder = new AdaptiveHuffmanCode();
+        for (String line : PackedCodeTest.clearText().split("\\R")){
+            assertEquals(PackedCode.cleanText(line, 0, line.length()),
+                    decoder.decodeLine(encoder.encodeLine(line)));
+        }
+        assertEquals(encoder.getEncode(), decoder.getEncode());
+    }
+
+    @Test
+    void firstLetterIsSentRaw(){
+
+        // The tree starts as the NYT node alone, whose code is empty
+        assertEquals("00111", new AdaptiveHuffmanCode().encodeLine("h"));
+    }
+
+    @Test
+    void frequentLetterGetsTheShortestCode(){
+
+        AdaptiveHuffmanCode code = new AdaptiveHuffmanCode();
+        code.encodeLine("EEEEEEEETAEEEEEEEEOEEEEEE");
+        // Entries are in the form 'E = 1'
+        for (String entry : code.getEncode().split("\\R")){
+            assertTrue(entry.startsWith("E") ? entry.length() == 5 : entry.length() > 5, entry);
+        }
+    }
+
+    @Test
+    void resetForgetsEverySymbol(){
+
+        AdaptiveHuffmanCode code = new AdaptiveHuffmanCode();
+        String first = code.encodeLine("HELLO");
+        code.reset();
+        assertEquals("", code.getEncode());
+        assertEquals(first, code.encodeLine("HELLO"));
+    }
+
+    @Test
+    void codeCutOffAtTheEndIsIgnored(){
+
+        String encoded = new AdaptiveHuffmanCode().encodeLine("HELLO");
+        assertEquals("HELL", new AdaptiveHuffmanCode().decodeLine(
+                encoded.substring(0, encoded.length() - 1)));
+    }
+
+    @Test
+    void invalidCodesAreReported(){
+
+        assertEquals(INVALID, new AdaptiveHuffmanCode().decodeLine("00120"));
+        // Index 26 is past the last letter
+        assertEquals(INVALID, new AdaptiveHuffmanCode().decodeLine("11010"));
+    }
+}
@@ -0,0 +1,95 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * BatchCoderTest round trips a manifest of files through BatchCoder and checks
+ * that files are never written to the same output.
+ *
+ * @author W. Sam Arrington
+ */
+class BatchCoderTest {
+
+    @TempDir
+    Path dir;
+
+    private final ByteArrayOutputStream report = new ByteArrayOutputStream();
+
+    private PrintStream report(){
+        return new PrintStream(report, true);
+    }
+
+    private Path write(String name, String text) throws IOException{
+
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(Path file) throws IOException{
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+    }
+
+    @Test
+    void filesOfTheSameNameKeepTheirDirectories() throws IOException{
+
+        Path table = HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toAbsolutePath();
+        write("in/a/x.txt", "HELLO");
+        write("in/b/x.txt", "WORLD");
+        Path manifest = write("in/files.txt", "a/x.txt\nb/x.txt\n");
+
+        BatchCoder coder = new BatchCoder(2);
+        assertEquals(0, coder.encode(manifest, table, dir.resolve("packed"), report()));
+        Path packedManifest = write("packed/files.txt", "a/x.txt.huf\nb/x.txt.huf\n");
+        assertEquals(0, coder.decode(packedManifest, dir.resolve("clear"), report()));
+
+        assertEquals("HELLO", read(dir.resolve("clear/a/x.txt")));
+        assertEquals("WORLD", read(dir.resolve("clear/b/x.txt")));
+    }
+
+    @Test
+    void directoryFilesRoundTrip() throws IOException{
+
+        Path table = HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toAbsolutePath();
+        write("in/one.txt", "HELLO");
+        write("in/two.txt", PackedCodeTest.clearText());
+
+        BatchCoder coder = new BatchCoder(1);
+        assertEquals(0, coder.encode(dir.resolve("in"), table, dir.resolve("packed"), report()));
+        assertEquals(0, coder.decode(dir.resolve("packed"), dir.resolve("clear"), report()));
+
+        String text = PackedCodeTest.clearText();
+        assertEquals("HELLO", read(dir.resolve("clear/one.txt")));
+        assertEquals(PackedCode.cleanText(text, 0, text.length()), read(dir.resolve("clear/two.txt")));
+    }
+
+    @Test
+    void filesWrittenToTheSameOutputFail() throws IOException{
+
+        Path table = HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toAbsolutePath();
+        write("in/a/x.txt", "HELLO");
+        write("in/b/x.txt", "WORLD");
+        write("other/x.txt", "AGAIN");
+        // The same file twice, and a file outside the manifest's directory
+        Path manifest = write("in/files.txt", "a/x.txt\n./a/x.txt\nb/x.txt\n../other/x.txt\n");
+
+        assertEquals(2, new BatchCoder(2).encode(manifest, table, dir.resolve("packed"),
+                report()));
+        String summary = new String(report.toByteArray(), StandardCharsets.US_ASCII);
+        assertEquals(2, Arrays.stream(summary.split("\\R"))
+                .filter(line -> line.startsWith("FAILED")).count());
+        assertFalse(Files.exists(dir.resolve("packed/a/x.txt.huf")));
+        assertTrue(Files.exists(dir.resolve("packed/b/x.txt.huf")));
+        assertTrue(Files.exists(dir.resolve("packed/x.txt.huf")));
+    }
+}
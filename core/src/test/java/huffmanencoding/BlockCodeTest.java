@@ -0,0 +1,188 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BlockCodeTest checks that CostEstimator sizes code tables exactly, and that
+ * BlockCode sends blocks raw, with a new code and with the code before as
+ * their histograms say, round tripping each.
+ *
+ * @author W. Sam Arrington
+ */
+class BlockCodeTest {
+
+    private static final int BLOCK = 1024;
+
+    /**
+     * @return bytes CanonicalCode.writeLengths writes for code lengths
+     */
+    private static int writtenBytes(byte[] codeLength) throws IOException{
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CanonicalCode.writeLengths(codeLength, new DataOutputStream(out));
+        return out.size();
+    }
+
+    @Test
+    void tableBytesAreTheBytesWritten() throws IOException{
+
+        Random random = new Random(24);
+        for (int keys : new int[] {1, 2, 26, 255, 256, 70000}){
+            long[] counts = new long[keys];
+            // Few keys counted, many counted and a first key past 0
+            for (int trial = 0; trial < 3; trial++){
+                Arrays.fill(counts, 0);
+                for (int key = trial == 2 ? keys / 2 : 0; key < keys; key++){
+                    counts[key] = trial == 0 && key % 7 != 0 ? 0 : 1 + random.nextInt(1000);
+                }
+                counts[keys - 1] = Math.max(counts[keys - 1], 1);
+                byte[] codeLength = HuffmanCode.codeLengths(counts);
+                assertEquals(writtenBytes(codeLength), CostEstimator.tableBytes(codeLength),
+                        keys + " keys");
+                assertTrue(CostEstimator.minTableBytes(counts)
+                        <= CostEstimator.tableBytes(codeLength));
+            }
+        }
+
+        // Codes longer than 15 bits take a byte each
+        long[] fibonacci = new long[40];
+        fibonacci[0] = 1;
+        fibonacci[1] = 1;
+        for (int key = 2; key < fibonacci.length; key++){
+            fibonacci[key] = fibonacci[key - 1] + fibonacci[key - 2];
+        }
+        byte[] codeLength = HuffmanCode.codeLengths(fibonacci);
+        assertTrue(LengthLimitedCode.maxCodeLength(codeLength) > 15);
+        assertEquals(writtenBytes(codeLength), CostEstimator.tableBytes(codeLength));
+        assertEquals(writtenBytes(new byte[5]), CostEstimator.tableBytes(new byte[5]));
+    }
+
+    @Test
+    void codedBitsAreTheBitsWritten(){
+
+        long[] counts = {0, 5, 3, 1, 1};
+        byte[] codeLength = HuffmanCode.codeLengths(counts);
+        BitWriter bits = new BitWriter(16);
+        HuffmanCode code = HuffmanCode.fromCodeLengths(codeLength);
+        for (int key = 0; key < counts.length; key++){
+            for (long n = 0; n < counts[key]; n++){
+                bits.write(code.codeBits[key], code.codeLength[key]);
+            }
+        }
+        assertEquals(bits.bitCount(), CostEstimator.codedBits(counts, codeLength));
+        assertEquals(-1, CostEstimator.codedBits(new long[] {1, 0, 0, 0, 0, 1}, codeLength));
+        assertTrue(CostEstimator.entropyBits(counts) <= bits.bitCount());
+    }
+
+    @Test
+    void eachChoiceIsMadeAndRoundTrips() throws IOException{
+
+        // Skewed letters, the same letters again, then bytes no code can shrink
+        Random random = new Random(16);
+        byte[] data = new byte[3 * BLOCK];
+        for (int i = 0; i < 2 * BLOCK; i++){
+            data[i] = (byte) ('A' + Integer.numberOfTrailingZeros(random.nextInt() | 1 << 8));
+        }
+        for (int i = 2 * BLOCK; i < data.length; i++){
+            data[i] = (byte) random.nextInt();
+        }
+
+        BlockCode coder = new BlockCode(Alphabet.BYTES, BLOCK);
+        byte[] message = coder.encode(data, 0, data.length);
+        assertEquals(1, coder.blocks(BlockCode.Choice.NEW_TABLE));
+        assertEquals(1, coder.blocks(BlockCode.Choice.REUSE));
+        assertEquals(1, coder.blocks(BlockCode.Choice.RAW));
+        assertArrayEquals(data, BlockCode.decode(message));
+        assertEquals(new String(data, StandardCharsets.ISO_8859_1), PackedCode.decode(message));
+
+        // A block of new letters needs a new code again
+        byte[] more = Arrays.copyOf(data, 4 * BLOCK);
+        Arrays.fill(more, 3 * BLOCK, more.length, (byte) 'Z');
+        more[more.length - 1] = 'Y';
+        message = coder.encode(more, 0, more.length);
+        assertEquals(2, coder.blocks(BlockCode.Choice.NEW_TABLE));
+        assertArrayEquals(more, BlockCode.decode(message));
+    }
+
+    @Test
+    void framingOfACodedBlockIsCounted() throws IOException{
+
+        // A code where A takes 1 bit, then a short last block of As.  Reused,
+        // 6 As take 1 data byte and 5 bytes of framing, no less than 6 raw
+        // bytes, while 7 As take the same 6 bytes against 7 raw bytes.
+        byte[] first = new byte[BLOCK];
+        Arrays.fill(first, (byte) 'A');
+        for (int i = 0; i < BLOCK; i += 10){
+            first[i] = (byte) ('B' + i % 3);
+        }
+        for (int last = 6; last <= 7; last++){
+            byte[] data = Arrays.copyOf(first, BLOCK + last);
+            Arrays.fill(data, BLOCK, data.length, (byte) 'A');
+            BlockCode coder = new BlockCode(Alphabet.BYTES, BLOCK);
+            byte[] message = coder.encode(data, 0, data.length);
+            assertEquals(1, coder.blocks(BlockCode.Choice.NEW_TABLE));
+            assertEquals(last == 6 ? 1 : 0, coder.blocks(BlockCode.Choice.RAW));
+            assertEquals(last == 6 ? 0 : 1, coder.blocks(BlockCode.Choice.REUSE));
+            assertArrayEquals(data, BlockCode.decode(message));
+
+            // The last block takes its kind, its symbol count and the smaller size
+            byte[] firstOnly = coder.encode(first, 0, BLOCK);
+            assertEquals(firstOnly.length + 5 + Math.min(last, 6), message.length);
+        }
+    }
+
+    @Test
+    void lettersOfTextRoundTrip() throws IOException{
+
+        String text = PackedCodeTest.clearText();
+        String clean = PackedCode.cleanText(text, 0, text.length());
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        for (int blockSize : new int[] {1, 7, BLOCK, BlockCode.DEFAULT_BLOCK_SIZE}){
+            byte[] message = new BlockCode(Alphabet.LETTERS, blockSize)
+                    .encode(bytes, 0, bytes.length);
+            assertEquals(clean, new String(BlockCode.decode(message),
+                    StandardCharsets.US_ASCII), "block size " + blockSize);
+        }
+        assertArrayEquals(new byte[0],
+                BlockCode.decode(new BlockCode(Alphabet.LETTERS, BLOCK).encode(bytes, 0, 0)));
+    }
+
+    @Test
+    void blockSizeBelowOneIsRefused(){
+
+        assertThrows(IllegalArgumentException.class, () -> new BlockCode(Alphabet.BYTES, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BlockCode(Alphabet.BYTES, -1));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> new BlockCode(Alphabet.BYTES, BLOCK).encode(new byte[4], 2, 3));
+    }
+
+    @Test
+    void corruptMessageIsRejected() throws IOException{
+
+        byte[] data = new byte[2 * BLOCK];
+        Arrays.fill(data, (byte) 'E');
+        data[0] = 'T';
+        byte[] message = new BlockCode(Alphabet.BYTES, BLOCK).encode(data, 0, data.length);
+
+        // The first block reuses a code, then claims a fourth way to be sent
+        byte[] reuse = message.clone();
+        reuse[8] = (byte) BlockCode.Choice.REUSE.ordinal();
+        IOException e = assertThrows(IOException.class, () -> BlockCode.decode(reuse));
+        assertEquals("Block 0 reuses a code that was never sent.", e.getMessage());
+        byte[] kind = message.clone();
+        kind[8] = 3;
+        e = assertThrows(IOException.class, () -> BlockCode.decode(kind));
+        assertEquals("Block code message header is corrupt.", e.getMessage());
+
+        assertThrows(IOException.class,
+                () -> BlockCode.decode(Arrays.copyOf(message, message.length - 1)));
+    }
+}
@@ -0,0 +1,99 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CanonicalCodeTest round trips packed messages with a canonical code
+ * ('HUF2') and their code length headers, and checks that corrupt headers are
+ * rejected with an IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class CanonicalCodeTest {
+
+    // Index of the first code length header byte of a 'HUF2' message
+    private static final int LENGTHS = 9;
+
+    @Test
+    void canonicalMessageDecodesToTheLettersOfTheText() throws IOException{
+
+        String text = PackedCodeTest.clearText();
+        HuffmanCode code = PackedCodeTest.tableCode();
+        byte[] packed = PackedCode.encodeCanonical(code, text);
+
+        assertEquals(PackedCode.CANONICAL_MAGIC, ByteBuffer.wrap(packed).getInt());
+        assertEquals(PackedCode.cleanText(text, 0, text.length()), PackedCode.decode(packed));
+        assertTrue(packed.length < PackedCode.encode(code, text).length);
+    }
+
+    @Test
+    void canonicalCodeKeepsTheCodeLengths() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        assertArrayEquals(code.getCodeLengths(), code.canonical().getCodeLengths());
+    }
+
+    @Test
+    void codeLengthsRoundTripNarrowAndWide() throws IOException{
+
+        byte[] narrow = new byte['Z' + 1];
+        narrow['A'] = 1;
+        narrow['B'] = 2;
+        narrow['Z'] = 2;
+        byte[] wide = new byte[70001];
+        wide[3] = 1;
+        wide[70000] = 1;
+        byte[] long16 = new byte[18];
+        for (int key = 0; key < 17; key++){
+            long16[key] = (byte) (key + 1);
+        }
+        long16[17] = 17;
+
+        for (byte[] lengths : new byte[][] {narrow, wide, long16}){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CanonicalCode.writeLengths(lengths, new DataOutputStream(out));
+            byte[] read = CanonicalCode.readLengths(new DataInputStream(
+                    new ByteArrayInputStream(out.toByteArray())));
+            assertArrayEquals(lengths, read);
+        }
+    }
+
+    @Test
+    void incompleteCodeIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encodeCanonical(PackedCodeTest.tableCode(), "HELLO");
+        // Drops the first key from the code
+        packed[LENGTHS + 5] &= 0x0F;
+        IOException e = assertThrows(IOException.class, () -> PackedCode.decode(packed));
+        assertTrue(e.getMessage().startsWith("Code length header is corrupt."));
+    }
+
+    @Test
+    void lastKeyBeforeTheFirstIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encodeCanonical(PackedCodeTest.tableCode(), "HELLO");
+        ByteBuffer.wrap(packed).putChar(LENGTHS + 2, (char) 1);
+        assertThrows(IOException.class, () -> PackedCode.decode(packed));
+    }
+
+    @Test
+    void codeLengthPastTheLongestCodeIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encodeCanonical(PackedCodeTest.tableCode(), "HELLO");
+        packed[LENGTHS + 4] = (byte) (HuffmanCode.MAX_CODE_LENGTH + 1);
+        assertThrows(IOException.class, () -> PackedCode.decode(packed));
+    }
+
+    @Test
+    void cutOffHeaderIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encodeCanonical(PackedCodeTest.tableCode(), "HELLO");
+        assertThrows(EOFException.class, () -> PackedCode.decode(
+                Arrays.copyOf(packed, LENGTHS + 6)));
+    }
+}
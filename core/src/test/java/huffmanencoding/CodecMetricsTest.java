@@ -0,0 +1,41 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CodecMetricsTest checks that a tree of TreeNodes and the same tree built
+ * flat record the same tree build metrics.
+ *
+ * @author W. Sam Arrington
+ */
+class CodecMetricsTest {
+
+    @Test
+    void nodeTreeAndFlatTreeRecordTheSameBuild() throws IOException{
+
+        CodecMetrics metrics = CodecMetrics.global();
+        HuffmanQueue queue = new HuffmanQueue(
+                HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toString());
+        int[] keys = new int[queue.size];
+        long[] freqs = new long[queue.size];
+        for (int i = 0; i < queue.size; i++){
+            keys[i] = queue.array[i].key.charAt(0);
+            freqs[i] = queue.array[i].freq;
+        }
+
+        HuffmanEncoding.MakeHuffmanTree(queue);
+        int nodeKeys = metrics.getLastTreeKeys();
+        double nodeLength = metrics.getLastAverageCodeLength();
+        double nodeEntropy = metrics.getLastEntropy();
+
+        FlatTree.build(keys, freqs);
+        assertEquals(keys.length, nodeKeys);
+        assertEquals(metrics.getLastTreeKeys(), nodeKeys);
+        assertEquals(metrics.getLastAverageCodeLength(), nodeLength, 1e-9);
+        assertEquals(metrics.getLastEntropy(), nodeEntropy, 1e-9);
+        assertTrue(nodeEntropy > 0 && nodeEntropy <= nodeLength);
+    }
+}
@@ -0,0 +1,129 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CodecRegistryTest checks that the registry hands out one frozen code per
+ * table, drops the least recently used code first, and that its codes can be
+ * shared between threads.
+ *
+ * @author W. Sam Arrington
+ */
+class CodecRegistryTest {
+
+    /**
+     * @return a frequency table of the letters A to A + keys - 1
+     */
+    private static long[] table(int keys, long first){
+
+        long[] freq = new long['Z' + 1];
+        Arrays.fill(freq, -1);
+        for (int k = 0; k < keys; k++){
+            freq['A' + k] = first + k;
+        }
+        return freq;
+    }
+
+    @Test
+    void sameTableGivesTheSameFrozenCode() throws IOException{
+
+        CodecRegistry registry = new CodecRegistry(4);
+        HuffmanCode code = registry.get(new HuffmanQueue(
+                HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toString()));
+        HuffmanCode again = registry.get(new HuffmanQueue(
+                HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toString()));
+
+        assertSame(code, again);
+        assertTrue(code.isFrozen());
+        assertEquals(1, registry.misses());
+        assertEquals(1, registry.hits());
+        String text = PackedCodeTest.clearText();
+        assertEquals(PackedCodeTest.tableCode().encodeLine(text), code.encodeLine(text));
+    }
+
+    @Test
+    void leastRecentlyUsedCodeIsDroppedFirst(){
+
+        CodecRegistry registry = new CodecRegistry(2);
+        HuffmanCode a = registry.get(table(3, 1));
+        HuffmanCode b = registry.get(table(4, 1));
+        assertSame(a, registry.get(table(3, 1)));
+        registry.get(table(5, 1));
+
+        assertEquals(2, registry.size());
+        assertEquals(1, registry.evictions());
+        assertSame(a, registry.get(table(3, 1)));
+        assertNotSame(b, registry.get(table(4, 1)));
+    }
+
+    @Test
+    void trailingAbsentKeysShareACanonicalCode(){
+
+        CodecRegistry registry = new CodecRegistry(2);
+        byte[] lengths = {0, 1, 2, 2};
+        assertSame(registry.getCanonical(lengths),
+                registry.getCanonical(Arrays.copyOf(lengths, 10)));
+    }
+
+    @Test
+    void frozenCodeCannotBeChanged(){
+
+        HuffmanCode code = new CodecRegistry(1).get(table(6, 3));
+        assertThrows(IllegalStateException.class,
+                () -> code.setDecodeEngine(HuffmanCode.DecodeEngine.TREE));
+        assertThrows(IllegalStateException.class, code::sort);
+
+        // The array handed out is a copy
+        String[][] encoding = code.getEncoding();
+        String first = encoding[0][0];
+        encoding[0] = encoding[encoding.length - 1];
+        encoding[1][1] = "";
+        assertEquals(first, code.getEncoding()[0][0]);
+        assertNotEquals("", code.getEncoding()[1][1]);
+    }
+
+    @Test
+    void sharedCodeDecodesOnManyThreads() throws Exception{
+
+        CodecRegistry registry = new CodecRegistry(4);
+        String text = PackedCodeTest.clearText();
+        byte[] packed = PackedCode.encodeCanonical(PackedCodeTest.tableCode(), text);
+        String clean = PackedCode.cleanText(text, 0, text.length());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> decoded = new ArrayList<>();
+            for (int i = 0; i < 16; i++){
+                decoded.add(pool.submit(() -> PackedCode.decode(
+                        new ByteArrayInputStream(packed), registry)));
+            }
+            for (Future<String> result : decoded){
+                assertEquals(clean, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void badTablesAreRejected(){
+
+        assertThrows(IllegalArgumentException.class, () -> new CodecRegistry(0));
+        CodecRegistry registry = new CodecRegistry(1);
+        assertThrows(IllegalArgumentException.class, () -> registry.get(table(1, 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.getCanonical(new byte[] {1, 2}));
+        assertEquals(0, registry.size());
+    }
+}
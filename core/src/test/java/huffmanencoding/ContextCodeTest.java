@@ -0,0 +1,90 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ContextCodeTest round trips context messages ('HUFC'), including text with
+ * no letters, and checks that corrupt headers are rejected with an IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class ContextCodeTest {
+
+    @Test
+    void contextMessageDecodesToTheLettersOfTheText() throws IOException{
+
+        String text = PackedCodeTest.clearText();
+        String clean = PackedCode.cleanText(text, 0, text.length());
+        for (int maxTables : new int[] {1, ContextCode.DEFAULT_MAX_TABLES, ContextCode.MAX_TABLES}){
+            ContextCode code = ContextCode.build(text, maxTables);
+            assertTrue(code.tableCount() >= 1 && code.tableCount() <= maxTables);
+            byte[] message = code.encode(text);
+            assertEquals(ContextCode.CONTEXT_MAGIC, ByteBuffer.wrap(message).getInt());
+            assertEquals(clean, ContextCode.decode(message));
+            assertEquals(clean, PackedCode.decode(message));
+        }
+        assertEquals("Q", ContextCode.decode(ContextCode.build("Q", 1).encode("Q")));
+    }
+
+    @Test
+    void textWithNoLettersMakesAnEmptyMessage() throws IOException{
+
+        for (String text : new String[] {"", "1, 2, 3."}){
+            ContextCode code = ContextCode.build(text, ContextCode.DEFAULT_MAX_TABLES);
+            assertEquals(0, code.tableCount());
+            byte[] message = code.encode(text);
+            assertEquals("", ContextCode.decode(message));
+            assertEquals("", PackedCode.decode(message));
+            assertThrows(IllegalArgumentException.class, () -> code.encode("HELLO"));
+        }
+    }
+
+    @Test
+    void lettersOutsideTheTextAreRefused(){
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ContextCode.build("HELLO", 1).encode("WORLD"));
+        assertThrows(IllegalArgumentException.class, () -> ContextCode.build("HELLO", 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> ContextCode.build("HELLO", ContextCode.MAX_TABLES + 1));
+    }
+
+    @Test
+    void corruptHeaderIsRejected() throws IOException{
+
+        byte[] message = ContextCode.build("HELLO", 1).encode("HELLO");
+
+        byte[] tables = message.clone();
+        tables[4] = (byte) (ContextCode.MAX_TABLES + 1);
+        IOException e = assertThrows(IOException.class, () -> ContextCode.decode(tables));
+        assertEquals("Context message header is corrupt.", e.getMessage());
+
+        // No codes, yet the symbols and data of a message with letters
+        byte[] empty = ContextCode.build("", 1).encode("");
+        byte[] noCodes = Arrays.copyOf(empty, empty.length + 1);
+        ByteBuffer.wrap(noCodes).putInt(empty.length - 9, 1).put(empty.length - 5, (byte) 0)
+                .putInt(empty.length - 4, 1);
+        e = assertThrows(IOException.class, () -> ContextCode.decode(noCodes));
+        assertEquals("Context message header is corrupt.", e.getMessage());
+
+        byte[] magic = message.clone();
+        magic[0] ^= 1;
+        assertThrows(IOException.class, () -> ContextCode.decode(magic));
+    }
+
+    @Test
+    void cutOffMessageIsRejected() throws IOException{
+
+        String text = PackedCodeTest.clearText();
+        byte[] message = ContextCode.build(text, 4).encode(text);
+        assertThrows(EOFException.class,
+                () -> ContextCode.decode(Arrays.copyOf(message, message.length - 1)));
+        assertThrows(EOFException.class, () -> ContextCode.decode(Arrays.copyOf(message, 6)));
+    }
+}
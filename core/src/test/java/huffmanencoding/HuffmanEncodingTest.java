@@ -0,0 +1,110 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * HuffmanEncodingTest runs the command line on the files in Test/Input and
+ * checks its output against the files in Test/Output.
+ *
+ * @author W. Sam Arrington
+ */
+class HuffmanEncodingTest {
+
+    /**
+     * Directory holding the input fixtures.
+     */
+    static final Path INPUT = Paths.get("..", "Test", "Input");
+
+    /**
+     * Directory holding the expected output of the input fixtures.
+     */
+    static final Path OUTPUT = Paths.get("..", "Test", "Output");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void textFilesMatchTheExpectedOutput() throws IOException{
+
+        HuffmanEncoding.main(new String[] {INPUT.resolve("FreqTable.txt").toString(),
+                dir.resolve("te.txt").toString(), INPUT.resolve("ClearText.txt").toString(),
+                dir.resolve("enc.txt").toString(), INPUT.resolve("Encoded.txt").toString(),
+                dir.resolve("dec.txt").toString()});
+
+        assertEquals(read(OUTPUT.resolve("transversalEncoding.txt")), read(dir.resolve("te.txt")));
+        assertEquals(read(OUTPUT.resolve("outputEncode.txt")), read(dir.resolve("enc.txt")));
+        assertEquals(read(OUTPUT.resolve("outputDecode.txt")), read(dir.resolve("dec.txt")));
+    }
+
+    @Test
+    void tableDecoderAndTreeDecoderAgree() throws IOException{
+
+        for (String engine : new String[] {"-decoder=table", "-decoder=tree"}){
+            HuffmanEncoding.main(new String[] {INPUT.resolve("FreqTable.txt").toString(),
+                    dir.resolve("te.txt").toString(), INPUT.resolve("ClearText.txt").toString(),
+                    dir.resolve("enc.txt").toString(), INPUT.resolve("Encoded.txt").toString(),
+                    dir.resolve("dec.txt").toString(), engine});
+            assertEquals(read(OUTPUT.resolve("outputDecode.txt")), read(dir.resolve("dec.txt")),
+                    engine);
+        }
+    }
+
+    @Test
+    void tableDeeperThanTheCodesIsLimited() throws IOException{
+
+        // Fibonacci frequencies make a tree one level deeper for every key
+        StringBuilder table = new StringBuilder();
+        long previous = 1;
+        long frequency = 1;
+        for (int key = 11; key < 91; key++){
+            table.append('#').append(key).append(" - ").append(frequency).append('\n');
+            long next = previous + frequency;
+            previous = frequency;
+            frequency = next;
+        }
+        Path tableFile = Files.write(dir.resolve("deep.txt"),
+                table.toString().getBytes(StandardCharsets.US_ASCII));
+        assertTrue(FlatTree.of(HuffmanEncoding.MakeHuffmanTree(new HuffmanQueue(
+                tableFile.toString()))).depth() > HuffmanCode.MAX_CODE_LENGTH);
+
+        for (String mode : new String[] {"-packed", "-canonical"}){
+            HuffmanEncoding.main(new String[] {tableFile.toString(),
+                    dir.resolve("te.txt").toString(), INPUT.resolve("ClearText.txt").toString(),
+                    dir.resolve("enc").toString(), dir.resolve("enc").toString(),
+                    dir.resolve("dec.txt").toString(), "-maxlen=15", mode});
+            String text = read(INPUT.resolve("ClearText.txt"));
+            assertEquals(PackedCode.cleanText(text, 0, text.length()),
+                    read(dir.resolve("dec.txt")).replaceAll("\\s", ""), mode);
+            assertTrue(read(dir.resolve("te.txt")).contains("levels deep"), mode);
+        }
+    }
+
+    @Test
+    void contextFileOfTextWithNoLettersIsEmpty() throws IOException{
+
+        for (String text : new String[] {"", "1, 2, 3.\n"}){
+            Path clearText = Files.write(dir.resolve("clear.txt"),
+                    text.getBytes(StandardCharsets.US_ASCII));
+            HuffmanEncoding.main(new String[] {INPUT.resolve("FreqTable.txt").toString(),
+                    dir.resolve("te.txt").toString(), clearText.toString(),
+                    dir.resolve("enc").toString(), dir.resolve("enc").toString(),
+                    dir.resolve("dec.txt").toString(), "-context"});
+            assertEquals("", read(dir.resolve("dec.txt")).trim());
+        }
+    }
+
+    /**
+     * Reads a text file with its line ends made the same.
+     */
+    static String read(Path file) throws IOException{
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+}
@@ -0,0 +1,119 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HuffmanStreamTest round trips Huffman streams ('HUFZ') through
+ * HuffmanOutputStream and HuffmanInputStream, and checks that corrupt streams
+ * are rejected with an IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class HuffmanStreamTest {
+
+    private static byte[] encode(HuffmanCode code, String text) throws IOException{
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HuffmanOutputStream huffOut = new HuffmanOutputStream(out, code)){
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            // Half a byte at a time and half an array at a time, with a flush between
+            for (int i = 0; i < bytes.length / 2; i++){
+                huffOut.write(bytes[i]);
+            }
+            huffOut.flush();
+            huffOut.write(bytes, bytes.length / 2, bytes.length - bytes.length / 2);
+        }
+        return out.toByteArray();
+    }
+
+    private static String decode(byte[] stream) throws IOException{
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HuffmanInputStream huffIn = new HuffmanInputStream(
+                new ByteArrayInputStream(stream))){
+            int b;
+            while ((b = huffIn.read()) >= 0){
+                out.write(b);
+            }
+        }
+        return out.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    @Test
+    void streamDecodesToTheLettersOfTheText() throws IOException{
+
+        StringBuilder text = new StringBuilder();
+        // Longer than the buffers of both streams
+        for (int i = 0; i < 10; i++){
+            text.append(PackedCodeTest.clearText());
+        }
+        byte[] stream = encode(PackedCodeTest.tableCode(), text.toString());
+
+        assertEquals(HuffmanOutputStream.STREAM_MAGIC,
+                new DataInputStream(new ByteArrayInputStream(stream)).readInt());
+        assertEquals(PackedCode.cleanText(text, 0, text.length()), decode(stream));
+    }
+
+    @Test
+    void arrayReadsMatchByteReads() throws IOException{
+
+        String text = PackedCodeTest.clearText();
+        byte[] stream = encode(PackedCodeTest.tableCode(), text);
+        byte[] read = new byte[text.length()];
+        int n = 0;
+        try (HuffmanInputStream huffIn = new HuffmanInputStream(
+                new ByteArrayInputStream(stream))){
+            int r;
+            while ((r = huffIn.read(read, n, Math.min(7, read.length - n))) > 0){
+                n += r;
+            }
+        }
+        assertEquals(decode(stream), new String(read, 0, n, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void emptyTextDecodesToNothing() throws IOException{
+        assertEquals("", decode(encode(PackedCodeTest.tableCode(), "1, 2, 3.")));
+    }
+
+    @Test
+    void writingAfterFinishIsRejected() throws IOException{
+
+        HuffmanOutputStream huffOut = new HuffmanOutputStream(new ByteArrayOutputStream(),
+                PackedCodeTest.tableCode());
+        huffOut.finish();
+        assertThrows(IOException.class, () -> huffOut.write('A'));
+    }
+
+    @Test
+    void wrongMagicNumberIsRejected() throws IOException{
+
+        byte[] stream = encode(PackedCodeTest.tableCode(), "HELLO");
+        stream[3] = 'Q';
+        IOException e = assertThrows(IOException.class, () -> decode(stream));
+        assertEquals("Not a Huffman stream.", e.getMessage());
+    }
+
+    @Test
+    void corruptTrailerIsRejected() throws IOException{
+
+        byte[] stream = encode(PackedCodeTest.tableCode(), "HELLO");
+        stream[stream.length - 1] = 8;
+        IOException e = assertThrows(IOException.class, () -> decode(stream));
+        assertEquals("Huffman stream trailer is corrupt.", e.getMessage());
+    }
+
+    @Test
+    void cutOffStreamIsRejected() throws IOException{
+
+        byte[] stream = encode(PackedCodeTest.tableCode(), PackedCodeTest.clearText());
+        assertThrows(IOException.class,
+                () -> decode(Arrays.copyOf(stream, stream.length - 1)));
+        assertThrows(EOFException.class, () -> decode(Arrays.copyOf(stream, 6)));
+    }
+}
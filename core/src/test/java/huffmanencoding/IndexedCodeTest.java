@@ -0,0 +1,208 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * IndexedCodeTest decodes ranges of indexed messages ('HUFX') with readers of
+ * arrays and of files, around the checkpoints and at the ends of the message,
+ * and checks that corrupt headers and indexes are rejected with an IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class IndexedCodeTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * @return index of the symbol count of an indexed message, after the
+     * magic number and the code lengths
+     */
+    private static int countAt(HuffmanCode code) throws IOException{
+
+        ByteArrayOutputStream lengths = new ByteArrayOutputStream();
+        CanonicalCode.writeLengths(code.canonical().getCodeLengths(),
+                new DataOutputStream(lengths));
+        return 4 + lengths.size();
+    }
+
+    private static String cleanText() throws IOException{
+
+        String text = PackedCodeTest.clearText();
+        return PackedCode.cleanText(text, 0, text.length());
+    }
+
+    /**
+     * @return a reader of the message in memory and one of the message in a file
+     */
+    private IndexedReader[] readers(byte[] message) throws IOException{
+
+        Path file = Files.write(dir.resolve("indexed" + message.length + ".huf"), message);
+        return new IndexedReader[] {new IndexedReader(message), new IndexedReader(file)};
+    }
+
+    @Test
+    void rangesAroundEveryCheckpointDecode() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        String clean = cleanText();
+        // 7 leaves a last interval shorter than the rest
+        for (int interval : new int[] {1, 7, 64, IndexedCode.DEFAULT_INTERVAL}){
+            byte[] message = IndexedCode.encode(code, clean, interval);
+            assertEquals(clean, PackedCode.decode(message));
+            for (IndexedReader reader : readers(message)){
+                try (IndexedReader r = reader){
+                    assertEquals(clean.length(), r.symbolCount());
+                    assertEquals(interval, r.interval());
+                    for (int b = 0; b <= clean.length(); b += interval){
+                        int[][] ranges = {{b - 1, b}, {b, b + 1}, {b - 1, b + 1},
+                                {b, b + interval}, {b + 1, b + interval - 1}, {0, b}};
+                        for (int[] range : ranges){
+                            int from = Math.min(clean.length(), Math.max(0, range[0]));
+                            int to = Math.min(clean.length(), Math.max(from, range[1]));
+                            assertEquals(clean.substring(from, to), r.decodeRange(from, to),
+                                    "interval " + interval + " range " + from + " to " + to);
+                        }
+                    }
+                    assertEquals(clean, r.decodeRange(0, clean.length()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void everyRangeOfAShortTextDecodes() throws IOException{
+
+        String clean = cleanText().substring(0, 23);
+        for (int interval : new int[] {1, 5}){
+            for (IndexedReader reader : readers(
+                    IndexedCode.encode(PackedCodeTest.tableCode(), clean, interval))){
+                try (IndexedReader r = reader){
+                    for (int from = 0; from <= clean.length(); from++){
+                        for (int to = from; to <= clean.length(); to++){
+                            assertEquals(clean.substring(from, to), r.decodeRange(from, to));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptyRangesAndMessagesDecode() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        String clean = cleanText();
+        for (IndexedReader reader : readers(IndexedCode.encode(code, clean, 7))){
+            try (IndexedReader r = reader){
+                assertEquals("", r.decodeRange(0, 0));
+                assertEquals("", r.decodeRange(7, 7));
+                assertEquals("", r.decodeRange(clean.length(), clean.length()));
+            }
+        }
+        for (IndexedReader reader : readers(IndexedCode.encode(code, "1, 2, 3.", 7))){
+            try (IndexedReader r = reader){
+                assertEquals(0, r.symbolCount());
+                assertEquals("", r.decodeRange(0, 0));
+                assertThrows(IndexOutOfBoundsException.class, () -> r.decodeRange(0, 1));
+            }
+        }
+    }
+
+    @Test
+    void rangesOutsideTheMessageAreRefused() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        assertThrows(IllegalArgumentException.class, () -> IndexedCode.encode(code, "HELLO", 0));
+        for (IndexedReader reader : readers(IndexedCode.encode(code, "HELLO", 2))){
+            try (IndexedReader r = reader){
+                assertThrows(IndexOutOfBoundsException.class, () -> r.decodeRange(-1, 2));
+                assertThrows(IndexOutOfBoundsException.class, () -> r.decodeRange(3, 2));
+                assertThrows(IndexOutOfBoundsException.class, () -> r.decodeRange(0, 6));
+            }
+        }
+    }
+
+    @Test
+    void corruptHeaderIsRejected() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        byte[] message = IndexedCode.encode(code, cleanText(), 7);
+        int countAt = countAt(code);
+
+        byte[] wrongCount = message.clone();
+        ByteBuffer.wrap(wrongCount).putInt(countAt + 12, 1);
+        IOException e = assertThrows(IOException.class, () -> new IndexedReader(wrongCount));
+        assertEquals("Indexed message header is corrupt.", e.getMessage());
+
+        byte[] noInterval = message.clone();
+        ByteBuffer.wrap(noInterval).putInt(countAt + 8, 0);
+        assertThrows(IOException.class, () -> new IndexedReader(noInterval));
+
+        byte[] magic = message.clone();
+        magic[0] ^= 1;
+        e = assertThrows(IOException.class, () -> new IndexedReader(magic));
+        assertEquals("Not an indexed Huffman message.", e.getMessage());
+    }
+
+    @Test
+    void corruptIndexIsRejected() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        byte[] message = IndexedCode.encode(code, cleanText(), 7);
+        int indexAt = countAt(code) + 16;
+
+        // Checkpoints not at the first bit, going backwards and past the data
+        byte[] first = message.clone();
+        ByteBuffer.wrap(first).putLong(indexAt, 1);
+        byte[] backwards = message.clone();
+        ByteBuffer.wrap(backwards).putLong(indexAt + 16, 0);
+        byte[] pastData = message.clone();
+        ByteBuffer.wrap(pastData).putLong(indexAt + 8, Long.MAX_VALUE / 2);
+        for (byte[] corrupt : new byte[][] {first, backwards, pastData}){
+            IOException e = assertThrows(IOException.class, () -> new IndexedReader(corrupt));
+            assertEquals("Indexed message index is corrupt.", e.getMessage());
+            assertThrows(IOException.class, () -> readers(corrupt));
+            assertThrows(IOException.class, () -> PackedCode.decode(corrupt));
+        }
+    }
+
+    @Test
+    void hugeCheckpointCountIsRejectedWithoutAllocatingIt() throws IOException{
+
+        // A header claiming 2^31 - 1 checkpoints, followed by only a few
+        HuffmanCode code = PackedCodeTest.tableCode();
+        byte[] message = IndexedCode.encode(code, cleanText(), 7);
+        ByteBuffer header = ByteBuffer.wrap(message);
+        int countAt = countAt(code);
+        header.putLong(countAt, Integer.MAX_VALUE);
+        header.putInt(countAt + 8, 1);
+        header.putInt(countAt + 12, Integer.MAX_VALUE);
+
+        assertThrows(EOFException.class, () -> new IndexedReader(message));
+        assertThrows(EOFException.class, () -> PackedCode.decode(message));
+    }
+
+    @Test
+    void cutOffMessageIsRejected() throws IOException{
+
+        byte[] message = IndexedCode.encode(PackedCodeTest.tableCode(), cleanText(), 7);
+        byte[] cutOff = Arrays.copyOf(message, message.length - 1);
+        for (byte[] corrupt : new byte[][] {cutOff, Arrays.copyOf(message, 10)}){
+            assertThrows(IOException.class, () -> new IndexedReader(corrupt));
+            assertThrows(IOException.class, () -> readers(corrupt));
+            assertThrows(EOFException.class, () -> PackedCode.decode(corrupt));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * InterleavedCodeTest round trips interleaved messages ('HUFI') of 2 and 4
+ * streams and checks that corrupt headers and jump tables are rejected with an
+ * IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class InterleavedCodeTest {
+
+    /**
+     * @return index of the symbol count of an interleaved message, after the
+     * magic number and the code lengths
+     */
+    private static int countAt(HuffmanCode code) throws IOException{
+
+        ByteArrayOutputStream lengths = new ByteArrayOutputStream();
+        CanonicalCode.writeLengths(code.canonical().getCodeLengths(),
+                new DataOutputStream(lengths));
+        return 4 + lengths.size();
+    }
+
+    @Test
+    void interleavedMessageDecodesToTheLettersOfTheText() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        String text = PackedCodeTest.clearText();
+        String clean = PackedCode.cleanText(text, 0, text.length());
+        for (int streams : new int[] {2, 4}){
+            byte[] packed = InterleavedCode.encode(code, text, streams);
+            assertEquals(InterleavedCode.INTERLEAVED_MAGIC, ByteBuffer.wrap(packed).getInt());
+            assertEquals(clean, InterleavedCode.decode(packed));
+            assertEquals(clean, PackedCode.decode(packed));
+        }
+    }
+
+    @Test
+    void textShorterThanTheStreamsDecodes() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        for (String text : new String[] {"", "1, 2, 3.", "H", "HEL"}){
+            assertEquals(text.replaceAll("[^A-Z]", ""),
+                    InterleavedCode.decode(InterleavedCode.encode(code, text, 4)));
+        }
+    }
+
+    @Test
+    void otherStreamCountsAreRefused() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        assertThrows(IllegalArgumentException.class,
+                () -> InterleavedCode.encode(code, "HELLO", 3));
+
+        byte[] packed = InterleavedCode.encode(code, "HELLO", 2);
+        packed[countAt(code) + 4] = 3;
+        IOException e = assertThrows(IOException.class, () -> InterleavedCode.decode(packed));
+        assertEquals("Interleaved message header is corrupt.", e.getMessage());
+    }
+
+    @Test
+    void moreSymbolsThanDataBitsIsRejected() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        byte[] packed = InterleavedCode.encode(code, "HELLO", 2);
+        ByteBuffer.wrap(packed).putInt(countAt(code), 1000);
+        IOException e = assertThrows(IOException.class, () -> InterleavedCode.decode(packed));
+        assertEquals("Interleaved message header is corrupt.", e.getMessage());
+    }
+
+    @Test
+    void corruptJumpTableIsRejected() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        String text = PackedCodeTest.clearText();
+        byte[] packed = InterleavedCode.encode(code, text, 2);
+        int jumpAt = countAt(code) + 5;
+
+        byte[] negative = packed.clone();
+        ByteBuffer.wrap(negative).putInt(jumpAt, -1);
+        assertThrows(IOException.class, () -> InterleavedCode.decode(negative));
+
+        // Moves a byte from the second stream to the first
+        byte[] moved = packed.clone();
+        ByteBuffer jump = ByteBuffer.wrap(moved);
+        jump.putInt(jumpAt, jump.getInt(jumpAt) + 1);
+        jump.putInt(jumpAt + 4, jump.getInt(jumpAt + 4) - 1);
+        assertThrows(IOException.class, () -> InterleavedCode.decode(moved));
+    }
+
+    @Test
+    void cutOffMessageIsRejected() throws IOException{
+
+        byte[] packed = InterleavedCode.encode(PackedCodeTest.tableCode(),
+                PackedCodeTest.clearText(), 4);
+        assertThrows(EOFException.class,
+                () -> InterleavedCode.decode(Arrays.copyOf(packed, packed.length - 1)));
+        assertThrows(EOFException.class,
+                () -> InterleavedCode.decode(Arrays.copyOf(packed, 3)));
+    }
+}
@@ -0,0 +1,55 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * LengthLimitedCodeTest checks that limited codes stay within their limit and
+ * that limits no code can meet are refused.
+ *
+ * @author W. Sam Arrington
+ */
+class LengthLimitedCodeTest {
+
+    @Test
+    void limitedCodeFitsTheLimitAndDecodes(){
+
+        String text = TableDecoderTest.skewedText(4000, 6);
+        HuffmanCode code = TableDecoderTest.codeFor(text);
+        HuffmanCode limited = LengthLimitedCode.limit(code, 6);
+
+        assertEquals(6, LengthLimitedCode.maxCodeLength(limited.getCodeLengths()));
+        assertEquals(text, limited.decodeLine(limited.encodeLine(text)));
+    }
+
+    @Test
+    void shallowCodeIsKept(){
+
+        HuffmanCode code = TableDecoderTest.codeFor(TableDecoderTest.skewedText(4000, 7));
+        assertSame(code, LengthLimitedCode.limit(code, HuffmanCode.MAX_CODE_LENGTH));
+    }
+
+    @Test
+    void shortestLimitCoversEveryKey() throws IOException{
+
+        byte[] lengths = PackedCodeTest.tableCode().getCodeLengths();
+        int shortest = LengthLimitedCode.shortestLimit(lengths);
+
+        assertEquals(5, shortest);
+        assertThrows(IllegalArgumentException.class,
+                () -> LengthLimitedCode.limit(PackedCodeTest.tableCode(), shortest - 1));
+        assertTrue(LengthLimitedCode.maxCodeLength(
+                LengthLimitedCode.limit(PackedCodeTest.tableCode(), shortest).getCodeLengths())
+                <= shortest);
+    }
+
+    @Test
+    void codeWithoutATreeCannotBeLimited(){
+
+        HuffmanCode canonical = TableDecoderTest.codeFor(TableDecoderTest.skewedText(4000, 8))
+                .canonical();
+        assertThrows(IllegalArgumentException.class, () -> LengthLimitedCode.limit(canonical, 8));
+    }
+}
@@ -0,0 +1,92 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * PackedCodeTest round trips packed messages with a code table ('HUF1') and
+ * checks that corrupt headers are rejected with an IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class PackedCodeTest {
+
+    /**
+     * @return the code of Test/Input/FreqTable.txt
+     */
+    static HuffmanCode tableCode() throws IOException{
+        return new HuffmanCode(HuffmanEncoding.MakeHuffmanTree(new HuffmanQueue(
+                HuffmanEncodingTest.INPUT.resolve("FreqTable.txt").toString())));
+    }
+
+    /**
+     * @return the text of Test/Input/ClearText.txt
+     */
+    static String clearText() throws IOException{
+        return HuffmanEncodingTest.read(HuffmanEncodingTest.INPUT.resolve("ClearText.txt"));
+    }
+
+    @Test
+    void packedMessageDecodesToTheLettersOfTheText() throws IOException{
+
+        String text = clearText();
+        byte[] packed = PackedCode.encode(tableCode(), text);
+
+        assertEquals(PackedCode.MAGIC, ByteBuffer.wrap(packed).getInt());
+        assertEquals(PackedCode.cleanText(text, 0, text.length()), PackedCode.decode(packed));
+    }
+
+    @Test
+    void emptyTextDecodesToNothing() throws IOException{
+        assertEquals("", PackedCode.decode(PackedCode.encode(tableCode(), "1, 2, 3.")));
+    }
+
+    @Test
+    void wrongMagicNumberIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encode(tableCode(), "HELLO");
+        packed[3] = 'Q';
+        IOException e = assertThrows(IOException.class, () -> PackedCode.decode(packed));
+        assertEquals("Not a packed Huffman message.", e.getMessage());
+    }
+
+    @Test
+    void moreSymbolsThanDataBitsIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encode(tableCode(), "HELLO");
+        ByteBuffer.wrap(packed).putInt(4, Integer.MAX_VALUE);
+        IOException e = assertThrows(IOException.class, () -> PackedCode.decode(packed));
+        assertEquals("Packed message header is corrupt.", e.getMessage());
+    }
+
+    @Test
+    void paddingOfAWholeByteIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encode(tableCode(), "HELLO");
+        packed[8] = 8;
+        assertThrows(IOException.class, () -> PackedCode.decode(packed));
+    }
+
+    @Test
+    void cutOffMessageIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encode(tableCode(), clearText());
+        assertThrows(EOFException.class,
+                () -> PackedCode.decode(Arrays.copyOf(packed, packed.length - 1)));
+        assertThrows(EOFException.class, () -> PackedCode.decode(Arrays.copyOf(packed, 6)));
+    }
+
+    @Test
+    void fewerSymbolsThanTheHeaderSaysIsRejected() throws IOException{
+
+        byte[] packed = PackedCode.encode(tableCode(), clearText());
+        ByteBuffer header = ByteBuffer.wrap(packed);
+        header.putInt(4, header.getInt(4) + 1);
+        assertThrows(IOException.class, () -> PackedCode.decode(packed));
+    }
+}
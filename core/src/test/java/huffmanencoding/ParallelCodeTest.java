@@ -0,0 +1,119 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ParallelCodeTest round trips block messages ('HUFB' and 'HUFS') in memory
+ * and through files, and checks that a file encoded a window of blocks at a
+ * time is the same as the message encoded in memory.
+ *
+ * @author W. Sam Arrington
+ */
+class ParallelCodeTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * @return the text of Test/Input/ClearText.txt, many times over
+     */
+    private static String longText() throws IOException{
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++){
+            text.append(PackedCodeTest.clearText());
+        }
+        return text.toString();
+    }
+
+    private static byte[] encode(HuffmanCode code, String text, boolean sync) throws IOException{
+
+        ParallelEncoder encoder = new ParallelEncoder(code, 100, 3);
+        encoder.setSyncPoints(sync);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(text, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void blockMessagesDecodeToTheLettersOfTheText() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        String text = longText();
+        String clean = PackedCode.cleanText(text, 0, text.length());
+        for (boolean sync : new boolean[] {false, true}){
+            byte[] packed = encode(code, text, sync);
+            assertEquals(clean, PackedCode.decode(packed));
+            assertEquals(clean, new ParallelDecoder(3).decode(new ByteArrayInputStream(packed)));
+        }
+    }
+
+    @Test
+    void fileEncodedByWindowsMatchesTheMessageInMemory() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        String text = longText();
+        Path in = Files.write(dir.resolve("clear.txt"), text.getBytes(StandardCharsets.US_ASCII));
+        for (boolean sync : new boolean[] {false, true}){
+            for (int threads : new int[] {1, 3}){
+                ParallelEncoder encoder = new ParallelEncoder(code, 100, threads);
+                encoder.setSyncPoints(sync);
+                Path packed = dir.resolve("packed.bin");
+                encoder.encodeFile(in, packed);
+                assertArrayEquals(encode(code, text, sync), Files.readAllBytes(packed));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long symbols = new ParallelDecoder(threads).decode(packed, out);
+                String clean = PackedCode.cleanText(text, 0, text.length());
+                assertEquals(clean.length(), symbols);
+                assertEquals(clean, out.toString(StandardCharsets.US_ASCII.name()));
+            }
+        }
+    }
+
+    @Test
+    void cutOffBlockFileIsRejected() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        for (boolean sync : new boolean[] {false, true}){
+            byte[] packed = encode(code, longText(), sync);
+            Path cut = Files.write(dir.resolve("cut.bin"),
+                    Arrays.copyOf(packed, packed.length - 1));
+            assertThrows(EOFException.class,
+                    () -> new ParallelDecoder(2).decode(cut, new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    void blockCountPastTheEndOfTheMessageIsRejected() throws IOException{
+
+        HuffmanCode code = PackedCodeTest.tableCode();
+        // The block count follows the magic number and the code lengths
+        ByteArrayOutputStream lengths = new ByteArrayOutputStream();
+        CanonicalCode.writeLengths(code.getCodeLengths(), new DataOutputStream(lengths));
+        int countAt = 4 + lengths.size();
+        for (boolean sync : new boolean[] {false, true}){
+            byte[] packed = encode(code, "HELLO", sync);
+            ByteBuffer.wrap(packed).putInt(countAt, Integer.MAX_VALUE);
+            assertThrows(IOException.class, () -> PackedCode.decode(packed));
+
+            Path file = Files.write(dir.resolve("count.bin"), packed);
+            IOException e = assertThrows(IOException.class,
+                    () -> new ParallelDecoder(2).decode(file, new ByteArrayOutputStream()));
+            assertEquals("Block message header is corrupt.", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * SymbolCodeTest round trips symbol messages ('HUFA') of bytes and of int
+ * symbols, and checks that corrupt headers are rejected with an IOException.
+ *
+ * @author W. Sam Arrington
+ */
+class SymbolCodeTest {
+
+    // Index of the symbol count of a symbol message, after the magic number and width
+    private static final int COUNT = 5;
+
+    /**
+     * @return bytes of every value, skewed towards the small ones
+     */
+    private static byte[] skewedBytes(){
+
+        Random random = new Random(19);
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i++){
+            data[i] = (byte) (i < 256 ? i : random.nextInt(1 + random.nextInt(256)));
+        }
+        return data;
+    }
+
+    @Test
+    void everyByteValueRoundTrips() throws IOException{
+
+        byte[] data = skewedBytes();
+        byte[] message = SymbolCode.encode(data);
+
+        assertEquals(SymbolCode.SYMBOL_MAGIC, ByteBuffer.wrap(message).getInt());
+        assertArrayEquals(data, SymbolCode.decodeBytes(message));
+        assertTrue(message.length < data.length);
+    }
+
+    @Test
+    void tokenSymbolsRoundTrip() throws IOException{
+
+        // Ids of a word token alphabet, with a few far past the byte values
+        Random random = new Random(7);
+        int[] symbols = new int[10000];
+        for (int i = 0; i < symbols.length; i++){
+            symbols[i] = i % 100 == 0 ? 60000 + random.nextInt(5000) : random.nextInt(300);
+        }
+        assertArrayEquals(symbols, SymbolCode.decodeSymbols(SymbolCode.encode(symbols)));
+    }
+
+    @Test
+    void singleSymbolRoundTrips() throws IOException{
+
+        byte[] data = new byte[100];
+        Arrays.fill(data, (byte) 0xFF);
+        assertArrayEquals(data, SymbolCode.decodeBytes(SymbolCode.encode(data)));
+        assertArrayEquals(new int[] {70000},
+                SymbolCode.decodeSymbols(SymbolCode.encode(new int[] {70000})));
+    }
+
+    @Test
+    void symbolsOutsideTheAlphabetAreRefused(){
+
+        assertThrows(IllegalArgumentException.class, () -> SymbolCode.encode(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> SymbolCode.encode(new int[] {1, -1}));
+        HuffmanCode code = HuffmanCode.fromCounts(SymbolCode.countBytes(new byte[] {1, 2}, 0, 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> SymbolCode.encode(code, new byte[] {3}, 0, 1));
+    }
+
+    @Test
+    void wrongWidthIsRejected() throws IOException{
+
+        byte[] message = SymbolCode.encode(new int[] {1, 2, 3});
+        IOException e = assertThrows(IOException.class, () -> SymbolCode.decodeBytes(message));
+        assertEquals("Symbol message holds int symbols, not bytes.", e.getMessage());
+    }
+
+    @Test
+    void moreSymbolsThanDataBitsIsRejected() throws IOException{
+
+        byte[] message = SymbolCode.encode(skewedBytes());
+        ByteBuffer.wrap(message).putInt(COUNT, Integer.MAX_VALUE);
+        IOException e = assertThrows(IOException.class, () -> SymbolCode.decodeBytes(message));
+        assertEquals("Symbol message header is corrupt.", e.getMessage());
+    }
+
+    @Test
+    void fewerSymbolsThanTheHeaderSaysIsRejected() throws IOException{
+
+        byte[] message = SymbolCode.encode(skewedBytes());
+        ByteBuffer header = ByteBuffer.wrap(message);
+        header.putInt(COUNT, header.getInt(COUNT) + 1);
+        assertThrows(IOException.class, () -> SymbolCode.decodeBytes(message));
+    }
+
+    @Test
+    void cutOffMessageIsRejected() throws IOException{
+
+        byte[] message = SymbolCode.encode(skewedBytes());
+        assertThrows(EOFException.class,
+                () -> SymbolCode.decodeBytes(Arrays.copyOf(message, message.length - 1)));
+        assertThrows(EOFException.class,
+                () -> SymbolCode.decodeBytes(Arrays.copyOf(message, 7)));
+    }
+}
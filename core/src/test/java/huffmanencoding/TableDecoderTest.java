@@ -0,0 +1,122 @@
+package huffmanencoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * TableDecoderTest checks the lookup table decoder against the tree walk,
+ * with codes long enough to need second level tables and texts longer than a
+ * decoded chunk.
+ *
+ * @author W. Sam Arrington
+ */
+class TableDecoderTest {
+
+    /**
+     * Makes a text of letters whose counts double from Z to A, so the rarest
+     * letters have codes longer than the lookup width.
+     */
+    static String skewedText(int length, long seed){
+
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length){
+            int letter = 0;
+            while (letter < 25 && random.nextBoolean()){
+                letter++;
+            }
+            text.append((char) ('A' + letter));
+        }
+        return text.toString();
+    }
+
+    static HuffmanCode codeFor(String text){
+
+        long[] counts = new long['Z' + 1];
+        for (int i = 0; i < text.length(); i++){
+            counts[text.charAt(i)]++;
+        }
+        for (char c = 'A'; c <= 'Z'; c++){
+            counts[c] = Math.max(counts[c], 1);
+        }
+        return HuffmanCode.fromCounts(counts);
+    }
+
+    @Test
+    void tableAndTreeDecodeTheSameText(){
+
+        String text = skewedText(5000, 1);
+        HuffmanCode code = codeFor(text);
+        assertTrue(LengthLimitedCode.maxCodeLength(code.getCodeLengths())
+                > TableDecoder.DEFAULT_LOOKUP_BITS);
+        String encoded = code.encodeLine(text);
+
+        code.setDecodeEngine(HuffmanCode.DecodeEngine.TABLE);
+        assertEquals(text, code.decodeLine(encoded));
+        code.setDecodeEngine(HuffmanCode.DecodeEngine.TREE);
+        assertEquals(text, code.decodeLine(encoded));
+    }
+
+    @Test
+    void narrowTablesDecodeRandomBitsLikeTheTree(){
+
+        HuffmanCode code = codeFor(skewedText(2000, 4));
+        code.setDecodeEngine(HuffmanCode.DecodeEngine.TREE);
+        Random random = new Random(5);
+        for (int line = 0; line < 200; line++){
+            StringBuilder bits = new StringBuilder();
+            for (int i = random.nextInt(300); i > 0; i--){
+                bits.append(random.nextBoolean() ? '1' : '0');
+            }
+            String expected = code.decodeLine(bits.toString());
+            for (int lookupBits : new int[] {1, 3, 8, 16}){
+                assertEquals(expected, new TableDecoder(code.flatTree, lookupBits)
+                        .decode(bits.toString()), "lookup bits " + lookupBits);
+            }
+        }
+    }
+
+    @Test
+    void codeCutOffAtTheEndIsIgnored(){
+
+        String text = skewedText(3000, 2) + "Z";
+        HuffmanCode code = codeFor(text);
+        String encoded = code.encodeLine(text);
+
+        assertEquals(text.substring(0, text.length() - 1),
+                code.tableDecoder.decode(encoded.substring(0, encoded.length() - 1)));
+    }
+
+    @Test
+    void decodingIntoCharsStopsAfterTheSymbolsAskedFor(){
+
+        String text = skewedText(2500, 3);
+        HuffmanCode code = codeFor(text);
+        byte[] packed = new byte[text.length() * 8];
+        BitWriter bits = new BitWriter(packed.length);
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            bits.write(code.codeBits[c], code.codeLength[c]);
+        }
+        long dataBits = bits.bitCount();
+        bits.finish();
+        BitReader in = new BitReader(bits.toByteArray());
+
+        char[] out = new char[text.length()];
+        int first = code.tableDecoder.decode(in, dataBits, out, 0, 1500);
+        int rest = code.tableDecoder.decode(in, dataBits, out, first, out.length - first);
+
+        assertEquals(1500, first);
+        assertEquals(text.length(), first + rest);
+        assertEquals(dataBits, in.position());
+        assertEquals(text, new String(out));
+    }
+
+    @Test
+    void codeWithOneKeyCannotBeDecoded(){
+        assertThrows(IllegalArgumentException.class,
+                () -> new TableDecoder(new long[] {0}, new byte[] {1}, 8));
+    }
+}